@@ -0,0 +1,97 @@
+/*
+Copyright (c) 2012, Apps4Av Inc. (apps4av.com) 
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+    *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+    *
+    *     THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.ds.avare.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 
+ * @author zkhan
+ * Times a piece of code for the standalone benchmark drivers in this package.
+ * Drivers are in benchmark/src, out of the APK, and are compiled against the classes of the app, like
+ * javac -cp bin/classes:android.jar -d benchmark/bin $(find benchmark/src -name "*.java")
+ * Drivers have a main() and run on a desktop JVM with the classes of the app on the classpath.
+ * Drivers that use android classes run on a device, with the APK and these classes dexed in a jar
+ * as class path, like
+ * adb shell CLASSPATH=/data/app/com.ds.avare-1.apk:/sdcard/benchmark.jar app_process / com.ds.avare.benchmark.ShapeBenchmark
+ */
+public class Benchmark {
+
+    private static final int WARMUP = 5;
+    private static final int ROUNDS = 20;
+
+    /**
+     * One round of work
+     */
+    public interface Task {
+        /**
+         * 
+         * @return a result so the work cannot be optimized away
+         */
+        public long run();
+    }
+
+    /**
+     * Run a task warmed up, print best and average time of a round, and rate of work
+     * @param name
+     * @param task
+     * @param units work done in one round, like number of messages
+     * @param unit name of a unit of work
+     * @return average nanoseconds for a round
+     */
+    public static long time(String name, Task task, long units, String unit) {
+        long sink = 0;
+        for(int i = 0; i < WARMUP; i++) {
+            sink += task.run();
+        }
+        long best = Long.MAX_VALUE;
+        long total = 0;
+        for(int i = 0; i < ROUNDS; i++) {
+            long start = System.nanoTime();
+            sink += task.run();
+            long t = System.nanoTime() - start;
+            best = Math.min(best, t);
+            total += t;
+        }
+        long avg = total / ROUNDS;
+        double rate = avg > 0 ? units * 1e9 / avg : 0;
+        System.out.println(String.format("%-40s best %10.3f ms  avg %10.3f ms  %14.0f %s/s  (%d)",
+                name, best / 1e6, avg / 1e6, rate, unit, sink));
+        return avg;
+    }
+
+    /**
+     * Read a recorded corpus
+     * @param name file name
+     * @return contents
+     * @throws IOException
+     */
+    public static byte[] read(String name) throws IOException {
+        InputStream in = new FileInputStream(name);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte buf[] = new byte[8192];
+            int len;
+            while((len = in.read(buf)) > 0) {
+                out.write(buf, 0, len);
+            }
+            return out.toByteArray();
+        }
+        finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,243 @@
+/*
+Copyright (c) 2012, Apps4Av Inc. (apps4av.com) 
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+    *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+    *
+    *     THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.ds.avare.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import com.ds.avare.adsb.MessageDecoder;
+
+/**
+ * 
+ * @author zkhan
+ * Throughput of binary batches from the helper against one JSON string per message.
+ * Usage: MessageDecoderBenchmark [recorded batch file]
+ * Without a file, a batch of traffic, METAR and NEXRAD frames like a busy ADSB feed is made up.
+ */
+public class MessageDecoderBenchmark {
+
+    private static final int TRAFFIC = 2000;
+    private static final int METARS = 500;
+    private static final int BLOCKS = 200;
+    private static final int COLS = 32;
+    private static final int ROWS = 4;
+
+    /**
+     * Counts messages, touches what it gets
+     */
+    private static class Counter implements MessageDecoder.Listener {
+        long mSum;
+
+        @Override
+        public void onJson(String text) {
+            mSum += text.length();
+        }
+
+        @Override
+        public void onTraffic(String callsign, int address, float lat, float lon, int altitude, 
+                float bearing, int speed, long time) {
+            mSum += address + altitude;
+        }
+
+        @Override
+        public void onOwnship(double lon, double lat, float speed, float bearing, double altitude, long time) {
+            mSum += (long)altitude;
+        }
+
+        @Override
+        public void onNexrad(long time, int block, int[] empty, boolean conus, int[] data, int cols, int rows) {
+            mSum += data.length + empty.length;
+        }
+
+        @Override
+        public void onText(byte type, long time, String location, String data) {
+            mSum += data.length();
+        }
+    }
+
+    /**
+     * 
+     * @param args
+     * @throws Exception
+     */
+    public static void main(String args[]) throws Exception {
+        final byte batch[];
+        if(args.length > 0) {
+            batch = Benchmark.read(args[0]);
+        }
+        else {
+            batch = makeBatch();
+        }
+
+        final MessageDecoder decoder = new MessageDecoder();
+        final Counter counter = new Counter();
+        final int messages = decoder.decode(batch, counter);
+        System.out.println(messages + " messages, " + batch.length + " bytes");
+
+        Benchmark.time("binary batch", new Benchmark.Task() {
+            @Override
+            public long run() {
+                return decoder.decode(batch, counter);
+            }
+        }, messages, "msg");
+
+        if(args.length > 0) {
+            return;
+        }
+
+        /*
+         * Same messages as JSON strings, parsed like the text path does
+         */
+        final String json[] = makeJson();
+        Benchmark.time("JSON strings", new Benchmark.Task() {
+            @Override
+            public long run() {
+                long sum = 0;
+                try {
+                    for(int i = 0; i < json.length; i++) {
+                        JSONObject object = new JSONObject(json[i]);
+                        String type = object.getString("type");
+                        if(type.equals("nexrad")) {
+                            JSONArray data = object.getJSONArray("data");
+                            for(int j = 0; j < data.length(); j++) {
+                                sum += data.getInt(j);
+                            }
+                        }
+                        else {
+                            sum += object.getLong("time");
+                        }
+                    }
+                }
+                catch(JSONException e) {
+                    throw new RuntimeException(e);
+                }
+                return sum;
+            }
+        }, json.length, "msg");
+    }
+
+    /**
+     * 
+     * @return
+     * @throws IOException
+     */
+    private static byte[] makeBatch() throws IOException {
+        Random r = new Random(1);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(out);
+        for(int i = 0; i < TRAFFIC; i++) {
+            ByteArrayOutputStream f = new ByteArrayOutputStream();
+            DataOutputStream frame = new DataOutputStream(f);
+            frame.writeByte(MessageDecoder.TYPE_TRAFFIC);
+            frame.writeLong(i);
+            frame.writeInt(r.nextInt(0xFFFFFF));
+            frame.writeFloat(30 + r.nextFloat() * 10);
+            frame.writeFloat(-100 + r.nextFloat() * 20);
+            frame.writeInt(r.nextInt(40000));
+            frame.writeFloat(r.nextFloat() * 360);
+            frame.writeInt(r.nextInt(500));
+            frame.writeUTF("N" + r.nextInt(99999));
+            write(data, f);
+        }
+        for(int i = 0; i < METARS; i++) {
+            ByteArrayOutputStream f = new ByteArrayOutputStream();
+            DataOutputStream frame = new DataOutputStream(f);
+            frame.writeByte(MessageDecoder.TYPE_METAR);
+            frame.writeLong(i);
+            frame.writeUTF("KBOS");
+            frame.writeUTF("KBOS 181254Z 28015G25KT 10SM FEW050 SCT250 12/M03 A3002 RMK AO2");
+            write(data, f);
+        }
+        for(int i = 0; i < BLOCKS; i++) {
+            ByteArrayOutputStream f = new ByteArrayOutputStream();
+            DataOutputStream frame = new DataOutputStream(f);
+            frame.writeByte(MessageDecoder.TYPE_NEXRAD);
+            frame.writeLong(i);
+            frame.writeInt(i);
+            frame.writeByte(0);
+            frame.writeShort(COLS);
+            frame.writeShort(ROWS);
+            frame.writeInt(0);
+            frame.writeInt(COLS * ROWS);
+            for(int j = 0; j < COLS * ROWS; j++) {
+                frame.writeInt(r.nextInt());
+            }
+            write(data, f);
+        }
+        data.flush();
+        return out.toByteArray();
+    }
+
+    /**
+     * Length prefixed frame
+     */
+    private static void write(DataOutputStream data, ByteArrayOutputStream frame) throws IOException {
+        data.writeInt(frame.size());
+        frame.writeTo(data);
+    }
+
+    /**
+     * 
+     * @return
+     * @throws JSONException
+     */
+    private static String[] makeJson() throws JSONException {
+        Random r = new Random(1);
+        String json[] = new String[TRAFFIC + METARS + BLOCKS];
+        int n = 0;
+        for(int i = 0; i < TRAFFIC; i++) {
+            JSONObject object = new JSONObject();
+            object.put("type", "traffic");
+            object.put("time", (long)i);
+            object.put("address", r.nextInt(0xFFFFFF));
+            object.put("latitude", 30 + r.nextFloat() * 10);
+            object.put("longitude", -100 + r.nextFloat() * 20);
+            object.put("altitude", r.nextInt(40000));
+            object.put("bearing", r.nextFloat() * 360);
+            object.put("speed", r.nextInt(500));
+            object.put("callsign", "N" + r.nextInt(99999));
+            json[n++] = object.toString();
+        }
+        for(int i = 0; i < METARS; i++) {
+            JSONObject object = new JSONObject();
+            object.put("type", "METAR");
+            object.put("time", (long)i);
+            object.put("location", "KBOS");
+            object.put("data", "KBOS 181254Z 28015G25KT 10SM FEW050 SCT250 12/M03 A3002 RMK AO2");
+            json[n++] = object.toString();
+        }
+        for(int i = 0; i < BLOCKS; i++) {
+            JSONObject object = new JSONObject();
+            object.put("type", "nexrad");
+            object.put("time", (long)i);
+            object.put("blocknumber", i);
+            object.put("conus", false);
+            object.put("x", COLS);
+            object.put("y", ROWS);
+            object.put("empty", new JSONArray());
+            JSONArray data = new JSONArray();
+            for(int j = 0; j < COLS * ROWS; j++) {
+                data.put(r.nextInt());
+            }
+            object.put("data", data);
+            json[n++] = object.toString();
+        }
+        return json;
+    }
+}
@@ -0,0 +1,92 @@
+/*
+Copyright (c) 2012, Apps4Av Inc. (apps4av.com) 
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+    *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+    *
+    *     THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.ds.avare.benchmark;
+
+import java.util.ArrayList;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * 
+ * @author zkhan
+ * Time of airport lookups with values put in SQL text and with values bound to one query shape.
+ * Usage: QueryBenchmark main.db [count]
+ * Uses the database downloaded by the app and android.database, so run it on a device with app_process.
+ */
+public class QueryBenchmark {
+
+    private static final int COUNT = 2000;
+
+    /**
+     * 
+     * @param args
+     * @throws Exception
+     */
+    public static void main(String args[]) throws Exception {
+        if(args.length < 1) {
+            System.out.println("Usage: QueryBenchmark main.db [count]");
+            return;
+        }
+        int count = args.length > 1 ? Integer.parseInt(args[1]) : COUNT;
+        final SQLiteDatabase db = SQLiteDatabase.openDatabase(args[0], null, 
+                SQLiteDatabase.OPEN_READONLY | SQLiteDatabase.NO_LOCALIZED_COLLATORS);
+        try {
+            /*
+             * Look up airports that exist
+             */
+            final ArrayList<String> ids = new ArrayList<String>();
+            Cursor c = db.rawQuery("select LocationID from airports limit " + count, null);
+            try {
+                while(c.moveToNext()) {
+                    ids.add(c.getString(0));
+                }
+            }
+            finally {
+                c.close();
+            }
+            System.out.println(ids.size() + " airports");
+
+            Benchmark.time("values in SQL", new Benchmark.Task() {
+                @Override
+                public long run() {
+                    long sum = 0;
+                    for(int i = 0; i < ids.size(); i++) {
+                        Cursor c = db.rawQuery("select * from airports where LocationID=='" + ids.get(i) + "';", null);
+                        sum += c.getCount();
+                        c.close();
+                    }
+                    return sum;
+                }
+            }, ids.size(), "query");
+
+            Benchmark.time("values bound", new Benchmark.Task() {
+                @Override
+                public long run() {
+                    long sum = 0;
+                    String args[] = new String[1];
+                    for(int i = 0; i < ids.size(); i++) {
+                        args[0] = ids.get(i);
+                        Cursor c = db.rawQuery("select * from airports where LocationID==?", args);
+                        sum += c.getCount();
+                        c.close();
+                    }
+                    return sum;
+                }
+            }, ids.size(), "query");
+        }
+        finally {
+            db.close();
+        }
+    }
+}
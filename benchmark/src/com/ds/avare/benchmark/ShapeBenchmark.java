@@ -0,0 +1,155 @@
+/*
+Copyright (c) 2012, Apps4Av Inc. (apps4av.com) 
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+    *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+    *
+    *     THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.ds.avare.benchmark;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import com.ds.avare.gps.GpsParams;
+import com.ds.avare.position.Movement;
+import com.ds.avare.position.Origin;
+import com.ds.avare.position.Pan;
+import com.ds.avare.position.Scale;
+import com.ds.avare.shapes.MetShape;
+import com.ds.avare.shapes.Shape;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Typeface;
+
+/**
+ * 
+ * @author zkhan
+ * Time to draw many TFR / weather like shapes on a canvas, when only panning and when zooming every frame.
+ * Usage: ShapeBenchmark [recorded shapes file]
+ * File has a "longitude,latitude" line per point, and an empty line between shapes.
+ * Without a file, shapes are made up around center of USA.
+ * Uses android.graphics, so run it on a device with app_process.
+ */
+public class ShapeBenchmark {
+
+    private static final int SHAPES = 300;
+    private static final int POINTS = 60;
+    private static final int WIDTH = 1024;
+    private static final int HEIGHT = 1024;
+    private static final double DEGREES_PER_PIXEL = 0.002;
+
+    /**
+     * 
+     * @param args
+     * @throws Exception
+     */
+    public static void main(String args[]) throws Exception {
+        final ArrayList<Shape> shapes;
+        if(args.length > 0) {
+            shapes = readShapes(new String(Benchmark.read(args[0]), "UTF-8"));
+        }
+        else {
+            shapes = makeShapes();
+        }
+        long points = 0;
+        for(Shape s : shapes) {
+            points += s.getNumCoords();
+        }
+        System.out.println(shapes.size() + " shapes, " + points + " points");
+
+        final Canvas canvas = new Canvas(Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888));
+        final Paint paint = new Paint();
+        paint.setStrokeWidth(3);
+        paint.setAntiAlias(true);
+        final GpsParams params = new GpsParams();
+        final Movement movement = new Movement(new double[] {0, 0}, 
+                new double[] {DEGREES_PER_PIXEL, -DEGREES_PER_PIXEL});
+        final Origin origin = new Origin();
+        final Scale scale = new Scale();
+        final Pan pan = new Pan();
+
+        Benchmark.time("pan", new Benchmark.Task() {
+            @Override
+            public long run() {
+                for(int frame = 0; frame < 10; frame++) {
+                    pan.setMove(frame * 10, frame * 5);
+                    origin.update(params, scale, pan, DEGREES_PER_PIXEL, -DEGREES_PER_PIXEL, WIDTH, HEIGHT);
+                    for(Shape s : shapes) {
+                        s.drawShape(canvas, origin, scale, movement, paint, Typeface.DEFAULT, false);
+                    }
+                }
+                return shapes.size();
+            }
+        }, points * 10, "pt");
+
+        Benchmark.time("zoom", new Benchmark.Task() {
+            @Override
+            public long run() {
+                for(int frame = 0; frame < 10; frame++) {
+                    scale.setScaleFactor(1 + frame * 0.05f);
+                    origin.update(params, scale, pan, DEGREES_PER_PIXEL, -DEGREES_PER_PIXEL, WIDTH, HEIGHT);
+                    for(Shape s : shapes) {
+                        s.drawShape(canvas, origin, scale, movement, paint, Typeface.DEFAULT, false);
+                    }
+                }
+                return shapes.size();
+            }
+        }, points * 10, "pt");
+    }
+
+    /**
+     * 
+     * @return
+     */
+    private static ArrayList<Shape> makeShapes() {
+        Random r = new Random(1);
+        ArrayList<Shape> shapes = new ArrayList<Shape>();
+        GpsParams params = new GpsParams();
+        for(int i = 0; i < SHAPES; i++) {
+            Shape s = new MetShape("Shape " + i);
+            double lon = params.getLongitude() + (r.nextDouble() - 0.5) * 2;
+            double lat = params.getLatitude() + (r.nextDouble() - 0.5) * 2;
+            double radius = 0.05 + r.nextDouble() * 0.2;
+            for(int j = 0; j <= POINTS; j++) {
+                double angle = 2 * Math.PI * j / POINTS;
+                s.add(lon + radius * Math.cos(angle), lat + radius * Math.sin(angle), false);
+            }
+            shapes.add(s);
+        }
+        return shapes;
+    }
+
+    /**
+     * 
+     * @param text
+     * @return
+     */
+    private static ArrayList<Shape> readShapes(String text) {
+        ArrayList<Shape> shapes = new ArrayList<Shape>();
+        Shape s = null;
+        for(String line : text.split("\n")) {
+            line = line.trim();
+            if(line.length() == 0) {
+                s = null;
+                continue;
+            }
+            String tokens[] = line.split(",");
+            if(tokens.length < 2) {
+                continue;
+            }
+            if(null == s) {
+                s = new MetShape("Shape " + shapes.size());
+                shapes.add(s);
+            }
+            s.add(Double.parseDouble(tokens[0]), Double.parseDouble(tokens[1]), false);
+        }
+        return shapes;
+    }
+}
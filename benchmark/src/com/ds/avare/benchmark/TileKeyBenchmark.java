@@ -0,0 +1,122 @@
+/*
+Copyright (c) 2012, Apps4Av Inc. (apps4av.com) 
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+    *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+    *
+    *     THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.ds.avare.benchmark;
+
+import java.util.ArrayList;
+
+import com.ds.avare.shapes.TileKey;
+
+/**
+ * 
+ * @author zkhan
+ * Time to make names of the tiles around a center tile, as done for every reload of the map.
+ * Usage: TileKeyBenchmark [recorded tile names file]
+ * File has a center tile name per line. Without a file, names are made up.
+ */
+public class TileKeyBenchmark {
+
+    private static final int CENTERS = 1000;
+    private static final int GRID = 9;
+
+    /**
+     * 
+     * @param args
+     * @throws Exception
+     */
+    public static void main(String args[]) throws Exception {
+        final ArrayList<String> names = new ArrayList<String>();
+        if(args.length > 0) {
+            for(String line : new String(Benchmark.read(args[0]), "UTF-8").split("\n")) {
+                if(line.trim().length() > 0) {
+                    names.add(line.trim());
+                }
+            }
+        }
+        else {
+            for(int i = 0; i < CENTERS; i++) {
+                int row = 2000 + i % 300;
+                int col = 3000 + i / 300;
+                names.add("tiles/0/tiles/vfr/4/" + row + "/1234_" + String.format("%06d", row) + "_" + 
+                        String.format("%06d", col) + ".webp");
+            }
+        }
+        final long count = names.size() * GRID * GRID;
+        System.out.println(names.size() + " centers, " + count + " names");
+
+        Benchmark.time("split and format each name", new Benchmark.Task() {
+            @Override
+            public long run() {
+                long sum = 0;
+                for(String name : names) {
+                    for(int r = -GRID / 2; r <= GRID / 2; r++) {
+                        for(int c = -GRID / 2; c <= GRID / 2; c++) {
+                            sum += incTileName(name, r, c).length();
+                        }
+                    }
+                }
+                return sum;
+            }
+        }, count, "name");
+
+        Benchmark.time("parse key each name", new Benchmark.Task() {
+            @Override
+            public long run() {
+                long sum = 0;
+                for(String name : names) {
+                    for(int r = -GRID / 2; r <= GRID / 2; r++) {
+                        for(int c = -GRID / 2; c <= GRID / 2; c++) {
+                            sum += TileKey.parse(name).getNeighbor(r, c).length();
+                        }
+                    }
+                }
+                return sum;
+            }
+        }, count, "name");
+
+        Benchmark.time("parse key once", new Benchmark.Task() {
+            @Override
+            public long run() {
+                long sum = 0;
+                for(String name : names) {
+                    TileKey k = TileKey.parse(name);
+                    for(int r = -GRID / 2; r <= GRID / 2; r++) {
+                        for(int c = -GRID / 2; c <= GRID / 2; c++) {
+                            sum += k.getNeighbor(r, c).length();
+                        }
+                    }
+                }
+                return sum;
+            }
+        }, count, "name");
+    }
+
+    /**
+     * How neighbor names were made before TileKey, to compare with
+     * @param name
+     * @param rowm
+     * @param colm
+     * @return
+     */
+    private static String incTileName(String name, int rowm, int colm) {
+        String [] tokens = name.split("[/_.]");
+        int row = (Integer.parseInt(tokens[7]) + rowm);
+        int col = (Integer.parseInt(tokens[8]) + colm);
+        int lenr = tokens[7].length();
+        int lenc = tokens[8].length();
+        String rformatted = String.format("%0" + lenr + "d", row);
+        String cformatted = String.format("%0" + lenc + "d", col);
+        String pre = tokens[0] + "/" + tokens[1] + "/" + tokens[2] + "/" + tokens[3] + "/" + tokens[4] + "/" + row + "/";
+        String post = tokens[6] + "_" + rformatted + "_" + cformatted + "." + tokens[9];
+        return(pre + post);
+    }
+}
@@ -0,0 +1,103 @@
+/*
+Copyright (c) 2012, Apps4Av Inc. (apps4av.com) 
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+    *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+    *
+    *     THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.ds.avare.benchmark;
+
+import java.util.ArrayList;
+
+import com.ds.avare.utils.WeatherHelper;
+
+/**
+ * 
+ * @author zkhan
+ * Time to color code and translate METARs and TAFs for the weather briefing.
+ * Usage: WeatherFormatBenchmark [recorded reports file]
+ * File has one report per line, a TAF starts with TAF, station is removed before formatting.
+ * Without a file, a few typical reports are used many times.
+ */
+public class WeatherFormatBenchmark {
+
+    private static final int COPIES = 500;
+
+    private static final String REPORTS[] = {
+        "KBOS 181254Z 28015G25KT 10SM FEW050 SCT250 12/M03 A3002 RMK AO2 PK WND 29032/1220 SLP166 T01221028",
+        "KJFK 181251Z 31012KT 11/2SM -RA BR BKN008 OVC015 09/08 A2987 RMK AO2 RAB20 SLP114 P0002 T00890078",
+        "KORD 181251Z VRB04KT 1/4SM +TSRA FG VV002 18/17 A2992 RMK AO2 LTG DSNT W TSB45 SLP131",
+        "KDEN 181253Z 17008KT P6SM SKC 02/M08 A3021 RMK AO2 SLP238 T00171078",
+        "TAF KBOS 181120Z 1812/1918 28015G25KT P6SM FEW050 SCT250 FM181800 29018G28KT P6SM SCT060 " +
+            "TEMPO 1820/1824 5SM -SHRA BKN040 FM190200 30010KT P6SM SKC WS020/27045KT",
+        "TAF AMD KJFK 181200Z 1812/1918 31012KT 2SM -RA BR BKN008 OVC015 BECMG 1814/1816 33015KT 5SM BR " +
+            "OVC020 PROB30 1818/1822 1SM TSRA OVC010CB FM190000 32010KT P6SM SCT030",
+    };
+
+    /**
+     * 
+     * @param args
+     * @throws Exception
+     */
+    public static void main(String args[]) throws Exception {
+        String lines[];
+        if(args.length > 0) {
+            lines = new String(Benchmark.read(args[0]), "UTF-8").split("\n");
+        }
+        else {
+            lines = new String[REPORTS.length * COPIES];
+            for(int i = 0; i < lines.length; i++) {
+                lines[i] = REPORTS[i % REPORTS.length];
+            }
+        }
+
+        /*
+         * Split like the briefing does
+         */
+        final ArrayList<String> metars = new ArrayList<String>();
+        final ArrayList<String> tafs = new ArrayList<String>();
+        for(String line : lines) {
+            line = line.trim();
+            if(line.startsWith("TAF")) {
+                String vals[] = line.replace("TAF ", "").replace("AMD ", "").trim().split(" ", 2);
+                if(vals.length > 1) {
+                    tafs.add(vals[1]);
+                }
+            }
+            else if(line.length() > 0) {
+                String vals[] = line.split(" ", 2);
+                if(vals.length > 1) {
+                    metars.add(vals[1]);
+                }
+            }
+        }
+        System.out.println(metars.size() + " METARs, " + tafs.size() + " TAFs");
+
+        Benchmark.time("METAR translated", new Benchmark.Task() {
+            @Override
+            public long run() {
+                long sum = 0;
+                for(int i = 0; i < metars.size(); i++) {
+                    sum += WeatherHelper.formatMetarHTML(metars.get(i), true).length();
+                }
+                return sum;
+            }
+        }, metars.size(), "report");
+
+        Benchmark.time("TAF colored and translated", new Benchmark.Task() {
+            @Override
+            public long run() {
+                long sum = 0;
+                for(int i = 0; i < tafs.size(); i++) {
+                    sum += WeatherHelper.formatTafHTML(tafs.get(i), true).length();
+                }
+                return sum;
+            }
+        }, tafs.size(), "report");
+    }
+}
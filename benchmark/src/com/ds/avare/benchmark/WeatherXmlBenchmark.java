@@ -0,0 +1,121 @@
+/*
+Copyright (c) 2012, Apps4Av Inc. (apps4av.com) 
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+    *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+    *
+    *     THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.ds.avare.benchmark;
+
+import java.io.ByteArrayInputStream;
+
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+
+import com.ds.avare.utils.SAXXMLHandlerMETAR;
+
+/**
+ * 
+ * @author zkhan
+ * Time to parse weather XML of a route, with a new parser each time and with one parser reused.
+ * Usage: WeatherXmlBenchmark [recorded METAR XML file]
+ * Without a file, a response with many METARs, like that of a long route, is made up.
+ */
+public class WeatherXmlBenchmark {
+
+    private static final int METARS = 5000;
+
+    /**
+     * 
+     * @param args
+     * @throws Exception
+     */
+    public static void main(String args[]) throws Exception {
+        final byte xml[];
+        if(args.length > 0) {
+            xml = Benchmark.read(args[0]);
+        }
+        else {
+            xml = makeXml();
+        }
+        final SAXParserFactory factory = SAXParserFactory.newInstance();
+        final SAXParser reused = factory.newSAXParser();
+        final int count = parse(reused, xml);
+        System.out.println(count + " METARs, " + xml.length + " bytes");
+
+        Benchmark.time("new parser", new Benchmark.Task() {
+            @Override
+            public long run() {
+                try {
+                    return parse(factory.newSAXParser(), xml);
+                }
+                catch(Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }, xml.length, "byte");
+
+        Benchmark.time("reused parser", new Benchmark.Task() {
+            @Override
+            public long run() {
+                try {
+                    reused.reset();
+                    return parse(reused, xml);
+                }
+                catch(Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }, xml.length, "byte");
+    }
+
+    /**
+     * 
+     * @param parser
+     * @param xml
+     * @return METARs found
+     * @throws Exception
+     */
+    private static int parse(SAXParser parser, byte xml[]) throws Exception {
+        SAXXMLHandlerMETAR handler = new SAXXMLHandlerMETAR();
+        XMLReader reader = parser.getXMLReader();
+        reader.setContentHandler(handler);
+        reader.parse(new InputSource(new ByteArrayInputStream(xml)));
+        return handler.getText().size();
+    }
+
+    /**
+     * Like a response of the ADDS data server
+     * @return
+     * @throws Exception
+     */
+    private static byte[] makeXml() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<response><data num_results=\"")
+            .append(METARS).append("\">\n");
+        for(int i = 0; i < METARS; i++) {
+            String station = "K" + (char)('A' + i % 26) + (char)('A' + (i / 26) % 26) + (char)('A' + (i / 676) % 26);
+            sb.append("<METAR><raw_text>").append(station)
+                .append(" 181254Z 28015G25KT 10SM FEW050 SCT250 12/M03 A3002 RMK AO2 SLP166 T01221028</raw_text>")
+                .append("<station_id>").append(station).append("</station_id>")
+                .append("<observation_time>2026-10-18T12:54:00Z</observation_time>")
+                .append("<latitude>42.37</latitude><longitude>-71.02</longitude>")
+                .append("<temp_c>12.2</temp_c><dewpoint_c>-2.8</dewpoint_c>")
+                .append("<wind_dir_degrees>280</wind_dir_degrees><wind_speed_kt>15</wind_speed_kt>")
+                .append("<visibility_statute_mi>10.0</visibility_statute_mi>")
+                .append("<altim_in_hg>30.02</altim_in_hg>")
+                .append("<sky_condition sky_cover=\"FEW\" cloud_base_ft_agl=\"5000\" />")
+                .append("<flight_category>VFR</flight_category></METAR>\n");
+        }
+        sb.append("</data></response>\n");
+        return sb.toString().getBytes("UTF-8");
+    }
+}
@@ -0,0 +1,231 @@
+/*
+Copyright (c) 2012, Apps4Av Inc. (apps4av.com) 
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+    *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+    *
+    *     THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.ds.avare.utils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+/**
+ * 
+ * @author zkhan
+ * Checks weather fetching and the HTTP cache against a local HTTP stub, no network needed.
+ * Usage: WeatherStubCheck
+ * In package of NetworkHelper to point it to the stub.
+ * Exits with 1 if any check fails.
+ */
+public class WeatherStubCheck {
+
+    private static final String METAR = "KBOS 181254Z 28015G25KT 10SM FEW050 12/M03 A3002";
+    private static final String ETAG = "\"stub1\"";
+    private static final int BIG = 1024 * 1024;
+    private static final int SLOW = 2000;
+
+    private static int mRequests;
+    private static int mFailed;
+
+    /**
+     * 
+     * @param args
+     * @throws Exception
+     */
+    public static void main(String args[]) throws Exception {
+        final ServerSocket server = new ServerSocket(0);
+        Thread t = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while(true) {
+                    try {
+                        final Socket s = server.accept();
+                        new Thread(new Runnable() {
+                            @Override
+                            public void run() {
+                                serve(s);
+                            }
+                        }).start();
+                    }
+                    catch(IOException e) {
+                        return;
+                    }
+                }
+            }
+        }, "Stub");
+        t.setDaemon(true);
+        t.start();
+        String root = "http://127.0.0.1:" + server.getLocalPort();
+
+        /*
+         * Route METARs through the weather server, second time from cache
+         */
+        NetworkHelper.setWeatherServer(root + "/weather");
+        NetworkHelper.getWeatherCache().clear();
+        String out = NetworkHelper.getMETARPlan("-71.0,42.3;-73.8,40.6;", "30");
+        check("METARs of route parsed", out.equals("VFR," + METAR + "::::"));
+        int requests = getRequests();
+        out = NetworkHelper.getMETARPlan("-71.0,42.3;-73.8,40.6;", "30");
+        check("METARs of route from cache", out.equals("VFR," + METAR + "::::") && getRequests() == requests);
+        NetworkHelper.setWeatherServer(null);
+
+        /*
+         * Always stale, so asked again, server says not changed
+         */
+        HttpCache cache = new HttpCache(0, SLOW * 4);
+        read(cache.open(root + "/etag"));
+        int length = read(cache.open(root + "/etag"));
+        check("Not modified used kept body", cache.getNotModified() == 1 && length > 0);
+
+        /*
+         * Large response streamed but not kept
+         */
+        length = read(cache.open(root + "/big"));
+        check("Large response read", length == BIG);
+        check("Large response not kept", cache.getBytes() < BIG);
+
+        /*
+         * Errors
+         */
+        check("HTTP error", fails(cache, root + "/missing"));
+        check("Timeout", fails(new HttpCache(0, SLOW / 4), root + "/slow"));
+
+        server.close();
+        System.out.println(mFailed == 0 ? "All checks passed" : mFailed + " checks failed");
+        System.exit(mFailed == 0 ? 0 : 1);
+    }
+
+    /**
+     * 
+     * @param name
+     * @param ok
+     */
+    private static void check(String name, boolean ok) {
+        System.out.println((ok ? "PASS " : "FAIL ") + name);
+        if(!ok) {
+            mFailed++;
+        }
+    }
+
+    /**
+     * 
+     * @param cache
+     * @param url
+     * @return true if getting url throws
+     */
+    private static boolean fails(HttpCache cache, String url) {
+        try {
+            read(cache.open(url));
+        }
+        catch(IOException e) {
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Read to end and close
+     * @param in
+     * @return bytes read
+     * @throws IOException
+     */
+    private static int read(InputStream in) throws IOException {
+        int length = 0;
+        try {
+            byte buffer[] = new byte[8192];
+            int read;
+            while((read = in.read(buffer)) > 0) {
+                length += read;
+            }
+        }
+        finally {
+            in.close();
+        }
+        return length;
+    }
+
+    /**
+     * 
+     * @return
+     */
+    private static synchronized int getRequests() {
+        return mRequests;
+    }
+
+    /**
+     * One request of the stub
+     * @param s
+     */
+    private static void serve(Socket s) {
+        try {
+            BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), "US-ASCII"));
+            String request = in.readLine();
+            if(null == request) {
+                return;
+            }
+            String path = request.split(" ")[1];
+            boolean same = false;
+            String line;
+            while(null != (line = in.readLine()) && line.length() > 0) {
+                if(line.toLowerCase().startsWith("if-none-match:")) {
+                    same = line.substring(line.indexOf(':') + 1).trim().equals(ETAG);
+                }
+            }
+            synchronized(WeatherStubCheck.class) {
+                mRequests++;
+            }
+
+            byte body[];
+            String status = "200 OK";
+            if(path.startsWith("/weather")) {
+                body = ("<response><data><METAR><raw_text>" + METAR + "</raw_text>" +
+                        "<flight_category>VFR</flight_category></METAR></data></response>").getBytes("UTF-8");
+            }
+            else if(path.startsWith("/etag")) {
+                body = "unchanged".getBytes("UTF-8");
+                if(same) {
+                    status = "304 Not Modified";
+                    body = new byte[0];
+                }
+            }
+            else if(path.startsWith("/big")) {
+                body = new byte[BIG];
+            }
+            else if(path.startsWith("/slow")) {
+                Thread.sleep(SLOW);
+                body = new byte[0];
+            }
+            else {
+                status = "404 Not Found";
+                body = new byte[0];
+            }
+            OutputStream out = s.getOutputStream();
+            out.write(("HTTP/1.1 " + status + "\r\n" +
+                    "ETag: " + ETAG + "\r\n" +
+                    "Content-Length: " + body.length + "\r\n" +
+                    "Connection: close\r\n\r\n").getBytes("US-ASCII"));
+            out.write(body);
+            out.flush();
+        }
+        catch(Exception e) {
+        }
+        finally {
+            try {
+                s.close();
+            }
+            catch(IOException e) {
+            }
+        }
+    }
+}
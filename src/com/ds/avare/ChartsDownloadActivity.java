@@ -19,6 +19,7 @@ import com.ds.avare.gps.GpsInterface;
 import com.ds.avare.network.Delete;
 import com.ds.avare.network.Download;
 import com.ds.avare.storage.Preferences;
+import com.ds.avare.utils.BitmapHolder;
 import com.ds.avare.utils.Helper;
 
 import android.app.Activity;
@@ -474,6 +475,12 @@ public class ChartsDownloadActivity extends Activity {
                     Toast.makeText(ChartsDownloadActivity.this, getString(R.string.download) + " " 
                             + getString(R.string.Success), Toast.LENGTH_SHORT).show();
     
+                    /*
+                     * New version of databases, open them again
+                     */
+                    mService.getDBResource().reopen();
+                    BitmapHolder.clearTileOptions();
+    
                     /*
                      * If TFR fetched, parse it. 
                      */
@@ -545,6 +552,9 @@ public class ChartsDownloadActivity extends Activity {
                     Toast.makeText(ChartsDownloadActivity.this, getString(R.string.Delete) + " " 
                             + getString(R.string.Success), Toast.LENGTH_SHORT).show();
     
+                    mService.getDBResource().reopen();
+                    BitmapHolder.clearTileOptions();
+    
                     if(mName.equals(getString(R.string.TFRs))) {
                         mService.deleteTFRFetcher();
                     }
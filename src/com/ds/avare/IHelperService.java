@@ -12,10 +12,15 @@ Redistribution and use in source and binary forms, with or without modification,
 
 package com.ds.avare;
 
+import java.util.LinkedList;
+
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import com.ds.avare.adsb.MessageDecoder;
+import com.ds.avare.adsb.MessageQueue;
+import com.ds.avare.adsb.NexradBitmap;
 import com.ds.avare.instruments.CDI;
 import com.ds.avare.place.Destination;
 import com.ds.avare.place.Plan;
@@ -29,7 +34,6 @@ import android.location.Location;
 import android.location.LocationManager;
 import android.os.Handler;
 import android.os.IBinder;
-import android.os.Message;
 
 /**
  * This class exposes the remote service to the client.
@@ -38,7 +42,39 @@ import android.os.Message;
  */
 public class IHelperService extends Service {
 
-    private StorageService mService;
+    /*
+     * Set on UI thread, read on ingest thread
+     */
+    private volatile StorageService mService;
+    
+    /*
+     * Messages from helper wait here till ingest thread decodes them
+     */
+    private MessageQueue mQueue = new MessageQueue();
+    private Thread mIngestThread;
+    private volatile boolean mRunning;
+    
+    /*
+     * Results for UI thread, taken all at once by one posted Runnable.
+     * Bounded so a stalled UI thread does not pile up NEXRAD bitmaps.
+     */
+    private static final int MAX_NEXRAD_PENDING = 64;
+    private LinkedList<NexradBlock> mNexradPending = new LinkedList<NexradBlock>();
+    private Location mOwnshipPending;
+    private boolean mPosted;
+    
+    /**
+     * 
+     * @author zkhan
+     * A NEXRAD block made on ingest thread, waiting to be put on UI thread
+     */
+    private static class NexradBlock {
+        long time;
+        int block;
+        int empty[];
+        boolean conus;
+        NexradBitmap bitmap;
+    }
     
     /**
      * We need to bind to storage service to do anything useful 
@@ -56,6 +92,7 @@ public class IHelperService extends Service {
              */
             StorageService.LocalBinder binder = (StorageService.LocalBinder)service;
             mService = binder.getService();
+            mService.setIngestQueue(mQueue);
         }    
 
         /* (non-Javadoc)
@@ -75,10 +112,20 @@ public class IHelperService extends Service {
         mService = null;
         Intent intent = new Intent(this, StorageService.class);
         getApplicationContext().bindService(intent, mConnection, Context.BIND_AUTO_CREATE);
+        
+        mRunning = true;
+        mIngestThread = new Thread(mIngest);
+        mIngestThread.setName("Ingest");
+        mIngestThread.start();
     }
 
     @Override
     public void onDestroy() {
+        mRunning = false;
+        mIngestThread.interrupt();
+        if(null != mService) {
+            mService.setIngestQueue(null);
+        }
         getApplicationContext().unbindService(mConnection);
         mService = null;
     }
@@ -102,9 +149,16 @@ public class IHelperService extends Service {
              * This is where we are all messages
              * All messages are comma separated
              */
-            Message msg = mHandler.obtainMessage();
-            msg.obj = text;
-            mHandler.sendMessage(msg);
+            mQueue.offer(text);
+        }
+
+        @Override
+        public void sendDataBinary(byte[] data) {
+            
+            /*
+             * Many messages in one call, see MessageDecoder for format
+             */
+            mQueue.offer(data);
         }
 
         @Override
@@ -165,101 +219,273 @@ public class IHelperService extends Service {
         }
     };
     
+    /*
+     * Reused for every NEXRAD block of same size, images copy it
+     */
+    private int mNexradData[];
+    
+    private MessageDecoder mDecoder = new MessageDecoder();
+
     /**
-     * Posting a location hence do from UI thread
+     * Messages from helper, from JSON or binary.
+     * Called on ingest thread. Thread safe caches are filled here, the rest waits for one post to UI thread
      */
-    private Handler mHandler = new Handler() {
+    private MessageDecoder.Listener mListener = new MessageDecoder.Listener() {
+
         @Override
-        public void handleMessage(Message msg) {            
+        public void onJson(String text) {
+            parseJson(text);
+        }
 
-            String text = (String)msg.obj;
-            
-            if(text == null || mService == null) {
+        @Override
+        public void onTraffic(String callsign, int address, float lat, float lon, 
+                int altitude, float bearing, int speed, long time) {
+            /*
+             * Traffic cache is thread safe
+             */
+            StorageService service = mService;
+            if(null == service) {
                 return;
             }
-            
+            service.getTrafficCache().putTarric(callsign, address, lat, lon, altitude, bearing, speed, time);
+        }
+
+        @Override
+        public void onOwnship(double lon, double lat, float speed, float bearing, double altitude, long time) {
+            Location l = new Location(LocationManager.GPS_PROVIDER);
+            l.setLongitude(lon);
+            l.setLatitude(lat);
+            l.setSpeed(speed);
+            l.setBearing(bearing);
+            l.setAltitude(altitude);
+            l.setTime(time);
             /*
-             * Get JSON
+             * Posting a location hence do from UI thread, only latest one matters
              */
-            try {
-                JSONObject object = new JSONObject(text);
+            synchronized(mNexradPending) {
+                mOwnshipPending = l;
+                post();
+            }
+        }
 
-                String type = object.getString("type");
-                if(type == null) {
-                    return;
-                }
-                else if(type.equals("traffic")) {
-                    mService.getTrafficCache().putTarric(
-                            object.getString("callsign"),
-                            object.getInt("address"),
-                            (float)object.getDouble("latitude"),
-                            (float)object.getDouble("longitude"),
-                            object.getInt("altitude"),
-                            (float)object.getDouble("bearing"),
-                            (int)object.getInt("speed"),
-                            object.getLong("time"));
-                }
-                else if(type.equals("ownship")) {
-                    Location l = new Location(LocationManager.GPS_PROVIDER);
-                    l.setLongitude(object.getDouble("longitude"));
-                    l.setLatitude(object.getDouble("latitude"));
-                    l.setSpeed((float)object.getDouble("speed"));
-                    l.setBearing((float)object.getDouble("bearing"));
-                    l.setAltitude(object.getDouble("altitude"));
-                    l.setTime(object.getLong("time"));
-                    mService.getGps().onLocationChanged(l);
-                }
-                else if(type.equals("nexrad")) {
-                    long time = object.getLong("time");
-                    int cols = object.getInt("x");
-                    int rows = object.getInt("y");
-                    int block = object.getInt("blocknumber");
-                    boolean conus = object.getBoolean("conus");
-                    JSONArray emptyArray = object.getJSONArray("empty");
-                    JSONArray dataArray = object.getJSONArray("data");
-                    
-                    if(emptyArray == null || dataArray == null) {
-                        return;
-                    }
-                    int empty[] = new int[emptyArray.length()];
-                    for(int i = 0; i < empty.length; i++) {
-                        empty[i] = emptyArray.getInt(i);
-                    }
-                    int data[] = new int[dataArray.length()];
-                    for(int i = 0; i < data.length; i++) {
-                        data[i] = dataArray.getInt(i);
-                    }
-                    
+        @Override
+        public void onNexrad(long time, int block, int[] empty, boolean conus, int[] data, 
+                int cols, int rows) {
+            StorageService service = mService;
+            if(null == service) {
+                return;
+            }
+            /*
+             * Make bitmap here, put it in images and mosaic on UI thread in order.
+             * Decoder reuses its arrays for next block, so copy empty list.
+             */
+            NexradBlock n = new NexradBlock();
+            n.time = time;
+            n.block = block;
+            n.empty = empty.clone();
+            n.conus = conus;
+            n.bitmap = service.getAdsbWeather().makeImg(time, block, conus, data, cols, rows);
+            synchronized(mNexradPending) {
+                if(mNexradPending.size() >= MAX_NEXRAD_PENDING) {
                     /*
-                     * Put in nexrad.
+                     * UI is behind, drop oldest. Its area is sent again, or expires.
                      */
-                    mService.getAdsbWeather().putImg(
-                            time, block, empty, conus, data, cols, rows);
+                    NexradBlock old = mNexradPending.removeFirst();
+                    if(null != old.bitmap) {
+                        service.getAdsbWeather().discardImg(old.conus, old.bitmap);
+                    }
                 }
-                else if(type.equals("METAR") || type.equals("SPECI")) {
+                mNexradPending.add(n);
+                post();
+            }
+        }
+
+        @Override
+        public void onText(byte type, long time, String location, String data) {
+            /*
+             * Weather cache is thread safe, and parsing of reports and database lookups 
+             * should not be on UI thread, so put from here
+             */
+            StorageService service = mService;
+            if(null == service) {
+                return;
+            }
+            switch(type) {
+                case MessageDecoder.TYPE_METAR:
                     /*
                      * Put METAR
                      */
-                    mService.getAdsbWeather().putMetar(object.getLong("time"), 
-                            object.getString("location"), object.getString("data"));
+                    service.getAdsbWeather().putMetar(time, location, data);
+                    break;
+                case MessageDecoder.TYPE_TAF:
+                    service.getAdsbWeather().putTaf(time, location, data);
+                    break;
+                case MessageDecoder.TYPE_WINDS:
+                    service.getAdsbWeather().putWinds(time, location, data);
+                    break;
+                case MessageDecoder.TYPE_PIREP:
+                    service.getAdsbWeather().putAirep(time, location, data, service.getDBResource());
+                    break;
+            }
+        }
+    };
+
+    /**
+     * Results of decoding are posted here to be used on UI thread
+     */
+    private Handler mHandler = new Handler();
+    
+    /**
+     * Post to UI thread unless already posted, call with mNexradPending locked
+     */
+    private void post() {
+        if(!mPosted) {
+            mPosted = true;
+            mHandler.post(mDrain);
+        }
+    }
+    
+    /**
+     * Puts everything made on ingest thread since last time, on UI thread
+     */
+    private Runnable mDrain = new Runnable() {
+        @Override
+        public void run() {
+            LinkedList<NexradBlock> blocks;
+            Location l;
+            synchronized(mNexradPending) {
+                blocks = new LinkedList<NexradBlock>(mNexradPending);
+                mNexradPending.clear();
+                l = mOwnshipPending;
+                mOwnshipPending = null;
+                mPosted = false;
+            }
+            StorageService service = mService;
+            if(null == service) {
+                return;
+            }
+            /*
+             * Put in nexrad.
+             */
+            for(NexradBlock n : blocks) {
+                service.getAdsbWeather().putImg(n.time, n.block, n.empty, n.conus, n.bitmap);
+            }
+            if(null != l) {
+                service.getGps().onLocationChanged(l);
+            }
+        }
+    };
+    
+    /**
+     * Decode messages from helper off the UI thread
+     */
+    private Runnable mIngest = new Runnable() {
+        @Override
+        public void run() {
+            while(mRunning) {
+                Object obj;
+                try {
+                    obj = mQueue.take();
                 }
-                else if(type.equals("TAF") || type.equals("TAF.AMD")) {
-                    mService.getAdsbWeather().putTaf(object.getLong("time"), 
-                            object.getString("location"), object.getString("data"));
+                catch (InterruptedException e) {
+                    continue;
                 }
-                else if(type.equals("WINDS")) {
-                    mService.getAdsbWeather().putWinds(object.getLong("time"), 
-                            object.getString("location"), object.getString("data"));
+                
+                if(mService == null) {
+                    continue;
                 }
-                else if(type.equals("PIREP")) {
-                    mService.getAdsbWeather().putAirep(object.getLong("time"), 
-                            object.getString("location"), object.getString("data"),
-                            mService.getDBResource());
+                
+                if(obj instanceof byte[]) {
+                    mDecoder.decode((byte[])obj, mListener);
+                }
+                else {
+                    parseJson((String)obj);
                 }
+            }
+        }
+    };
+    
+    /**
+     * 
+     * @param text
+     */
+    private void parseJson(String text) {
+        /*
+         * Get JSON
+         */
+        try {
+            JSONObject object = new JSONObject(text);
 
-            } catch (JSONException e) {
+            String type = object.getString("type");
+            if(type == null) {
                 return;
             }
+            else if(type.equals("traffic")) {
+                mListener.onTraffic(
+                        object.getString("callsign"),
+                        object.getInt("address"),
+                        (float)object.getDouble("latitude"),
+                        (float)object.getDouble("longitude"),
+                        object.getInt("altitude"),
+                        (float)object.getDouble("bearing"),
+                        (int)object.getInt("speed"),
+                        object.getLong("time"));
+            }
+            else if(type.equals("ownship")) {
+                mListener.onOwnship(
+                        object.getDouble("longitude"),
+                        object.getDouble("latitude"),
+                        (float)object.getDouble("speed"),
+                        (float)object.getDouble("bearing"),
+                        object.getDouble("altitude"),
+                        object.getLong("time"));
+            }
+            else if(type.equals("nexrad")) {
+                long time = object.getLong("time");
+                int cols = object.getInt("x");
+                int rows = object.getInt("y");
+                int block = object.getInt("blocknumber");
+                boolean conus = object.getBoolean("conus");
+                JSONArray emptyArray = object.getJSONArray("empty");
+                JSONArray dataArray = object.getJSONArray("data");
+                
+                if(emptyArray == null || dataArray == null) {
+                    return;
+                }
+                int empty[] = new int[emptyArray.length()];
+                for(int i = 0; i < empty.length; i++) {
+                    empty[i] = emptyArray.getInt(i);
+                }
+                int len = dataArray.length();
+                if(null == mNexradData || mNexradData.length != len) {
+                    mNexradData = new int[len];
+                }
+                int data[] = mNexradData;
+                for(int i = 0; i < len; i++) {
+                    data[i] = dataArray.getInt(i);
+                }
+                
+                mListener.onNexrad(time, block, empty, conus, data, cols, rows);
+            }
+            else if(type.equals("METAR") || type.equals("SPECI")) {
+                mListener.onText(MessageDecoder.TYPE_METAR, object.getLong("time"), 
+                        object.getString("location"), object.getString("data"));
+            }
+            else if(type.equals("TAF") || type.equals("TAF.AMD")) {
+                mListener.onText(MessageDecoder.TYPE_TAF, object.getLong("time"), 
+                        object.getString("location"), object.getString("data"));
+            }
+            else if(type.equals("WINDS")) {
+                mListener.onText(MessageDecoder.TYPE_WINDS, object.getLong("time"), 
+                        object.getString("location"), object.getString("data"));
+            }
+            else if(type.equals("PIREP")) {
+                mListener.onText(MessageDecoder.TYPE_PIREP, object.getLong("time"), 
+                        object.getString("location"), object.getString("data"));
+            }
+
+        } catch (JSONException e) {
+            return;
         }
-    };
-}
\ No newline at end of file
+    }
+}
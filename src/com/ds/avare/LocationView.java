@@ -13,10 +13,15 @@ Redistribution and use in source and binary forms, with or without modification,
 package com.ds.avare;
 
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 
+import com.ds.avare.adsb.MessageQueue;
 import com.ds.avare.adsb.NexradBitmap;
+import com.ds.avare.adsb.NexradMosaic;
 import com.ds.avare.adsb.Traffic;
 import com.ds.avare.gps.GpsParams;
 import com.ds.avare.instruments.EdgeDistanceTape;
@@ -28,10 +33,13 @@ import com.ds.avare.position.Origin;
 import com.ds.avare.position.Pan;
 import com.ds.avare.position.Projection;
 import com.ds.avare.position.Scale;
+import com.ds.avare.position.Viewport;
 import com.ds.avare.shapes.DistanceRings;
 import com.ds.avare.shapes.MetShape;
+import com.ds.avare.shapes.Shape;
 import com.ds.avare.shapes.TFRShape;
 import com.ds.avare.shapes.Tile;
+import com.ds.avare.shapes.TileMap;
 import com.ds.avare.storage.DataSource;
 import com.ds.avare.storage.Preferences;
 import com.ds.avare.touch.GestureInterface;
@@ -41,7 +49,9 @@ import com.ds.avare.touch.MultiTouchController.MultiTouchObjectCanvas;
 import com.ds.avare.touch.MultiTouchController.PointInfo;
 import com.ds.avare.touch.MultiTouchController.PositionAndScale;
 import com.ds.avare.utils.BitmapHolder;
+import com.ds.avare.utils.DrawTimer;
 import com.ds.avare.utils.Helper;
+import com.ds.avare.utils.LayerCache;
 import com.ds.avare.utils.InfoLines;
 import com.ds.avare.utils.InfoLines.InfoLineFieldLoc;
 import com.ds.avare.utils.WeatherHelper;
@@ -56,6 +66,7 @@ import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
+import android.graphics.ColorFilter;
 import android.graphics.Paint;
 import android.graphics.Paint.Style;
 import android.graphics.Point;
@@ -180,6 +191,37 @@ public class LocationView extends View implements MultiTouchObjectCanvas<Object>
      */
     private Origin                      mOrigin;
     
+    /*
+     * What is on screen, to skip drawing of what is not
+     */
+    private Viewport                    mViewport;
+    
+    /*
+     * Off screen bitmap of slow changing layers
+     */
+    private LayerCache                  mLayerCache;
+    private boolean                     mTouching;
+    
+    /*
+     * Counts of layers when they were last drawn in cache, for debug
+     */
+    private int                         mCachedDrawn[];
+    private int                         mCachedCulled[];
+    private boolean                     mLayersCached;
+    
+    /*
+     * Time to draw layers
+     */
+    private DrawTimer                   mDrawTimer;
+    
+    /*
+     * Traffic to draw and its past positions, reused every frame
+     */
+    private List<Traffic>               mTraffic;
+    private List<Traffic>               mTrafficNear;
+    private float                       mTrafficLons[];
+    private float                       mTrafficLats[];
+    
     /*
      * Projection of a touch point
      */
@@ -190,6 +232,11 @@ public class LocationView extends View implements MultiTouchObjectCanvas<Object>
      */
     private LinkedList<Obstacle>        mObstacles;
     
+    /*
+     * Changes only when obstacles found are different
+     */
+    private int                         mObstaclesVersion;
+    
     /*
      * Is it drawing?
      */
@@ -203,6 +250,27 @@ public class LocationView extends View implements MultiTouchObjectCanvas<Object>
 
     private boolean                    mTrackUp;
     
+    /*
+     * Show drawing statistics on map
+     */
+    private static final boolean DEBUG = false;
+    
+    /*
+     * Room around screen for bitmaps and text drawn around a point
+     */
+    private static final int CULL_MARGIN = 64;
+    
+    /*
+     * Room around screen in cached layers, so a small pan or a GPS fix does not draw them again
+     */
+    private static final int LAYER_MARGIN = 64;
+    
+    /*
+     * Traffic closer than this, in distance units and feet, is shown in red
+     */
+    private static final double TRAFFIC_ALERT_DISTANCE = 3;
+    private static final int TRAFFIC_ALERT_HEIGHT = 1000;
+    
     /*
      * Current ground elevation
      */
@@ -271,6 +339,16 @@ public class LocationView extends View implements MultiTouchObjectCanvas<Object>
         mPan = new Pan();
         mScale = new Scale();
         mOrigin = new Origin();
+        mViewport = new Viewport();
+        mLayerCache = new LayerCache();
+        mCachedDrawn = new int[Viewport.LAYERS];
+        mCachedCulled = new int[Viewport.LAYERS];
+        mDrawTimer = new DrawTimer();
+        mTraffic = new ArrayList<Traffic>();
+        mTrafficNear = new ArrayList<Traffic>();
+        mTrafficLons = new float[Traffic.HISTORY];
+        mTrafficLats = new float[Traffic.HISTORY];
+        mTouching = false;
         mMovement = new Movement();
         mErrorStatus = null;
         mThreshold = 0;
@@ -444,6 +522,12 @@ public class LocationView extends View implements MultiTouchObjectCanvas<Object>
         boolean bPassToGestureDetector = true;
         if(e.getAction() == MotionEvent.ACTION_UP) {
 
+            /*
+             * Stopped moving, draw cached layers for where map is now
+             */
+            mTouching = false;
+            invalidate();
+
             /**
              * Rubberbanding
              */
@@ -469,6 +553,8 @@ public class LocationView extends View implements MultiTouchObjectCanvas<Object>
         }
         else if (e.getAction() == MotionEvent.ACTION_DOWN) {
             
+            mTouching = true;
+
             /*
              * Find if this is close to a plan point. Do rubber banding if true
              */
@@ -680,6 +766,8 @@ public class LocationView extends View implements MultiTouchObjectCanvas<Object>
          */
         mTileDrawTask.lat = mGpsParams.getLatitude();
         mTileDrawTask.lon = mGpsParams.getLongitude();
+        mTileDrawTask.speed = mGpsParams.getSpeed();
+        mTileDrawTask.bearing = mGpsParams.getBearing();
         mTileDrawThread.interrupt();
     }
 
@@ -714,6 +802,25 @@ public class LocationView extends View implements MultiTouchObjectCanvas<Object>
             int empty = 0;
             int tn = mService.getTiles().getTilesNum();
             
+            /*
+             * Same filter for all tiles
+             */
+            ColorFilter filter = null;
+            String type = mPref.getChartType();
+            if(mPref.isNightMode() && (type.equals("3") || type.equals("4"))) {
+                /*
+                 * IFR charts invert color at night
+                 */
+                filter = Helper.getInvertFilter();
+            }
+            else if(type.equals("5")) {
+                /*
+                 * Terrain
+                 */
+                filter = Helper.getThresholdFilter(mThreshold);
+            }
+            mPaint.setColorFilter(filter);
+            
             for(int tilen = 0; tilen < tn; tilen++) {
                 
                 BitmapHolder tile = mService.getTiles().getTile(tilen);
@@ -739,19 +846,6 @@ public class LocationView extends View implements MultiTouchObjectCanvas<Object>
                     empty++;
                 }
 
-                if(mPref.isNightMode() && (mPref.getChartType().equals("3") || mPref.getChartType().equals("4"))) {
-                    /*
-                     * IFR charts invert color at night
-                     */
-                    Helper.invertCanvasColors(mPaint);
-                }
-                else if(mPref.getChartType().equals("5")) {
-                    /*
-                     * Terrain
-                     */
-                    Helper.setThreshold(mPaint, mThreshold);
-                }
-                
                 /*
                  * Pretty straightforward. Pan and draw individual tiles.
                  */
@@ -775,9 +869,8 @@ public class LocationView extends View implements MultiTouchObjectCanvas<Object>
                 if(null != b) {
                     canvas.drawBitmap(b, tile.getTransform(), mPaint);
                 }
-                
-                Helper.restoreCanvasColors(mPaint);
             }
+            Helper.restoreCanvasColors(mPaint);
             
             /*
              * If nothing on screen, write a not found message
@@ -810,8 +903,10 @@ public class LocationView extends View implements MultiTouchObjectCanvas<Object>
             mPaint.setColor(Color.RED);
             mPaint.setStrokeWidth(3 * mDipToPix);
             mPaint.setShadowLayer(0, 0, 0, 0);
-            for(int shape = 0; shape < shapes.size(); shape++) {
-                shapes.get(shape).drawShape(canvas, mOrigin, mScale, mMovement, mPaint, mFace, mPref.isNightMode());
+            for(TFRShape shape : shapes) {
+                if(mViewport.count(Viewport.LAYER_TFR, shape.isVisible(mViewport))) {
+                    shape.drawShape(canvas, mOrigin, mScale, mMovement, mPaint, mFace, mPref.isNightMode());
+                }
             }
         }
     }
@@ -864,7 +959,8 @@ public class LocationView extends View implements MultiTouchObjectCanvas<Object>
                 /*
                  * Now draw
                  */
-                if(met.shape != null && color != 0) {
+                if(met.shape != null && color != 0 &&
+                        mViewport.count(Viewport.LAYER_AIRSIGMET, met.shape.isVisible(mViewport))) {
                     mPaint.setColor(color);
                     met.shape.drawShape(canvas, mOrigin, mScale, mMovement, mPaint, mFace, mPref.isNightMode());
                 }
@@ -914,23 +1010,44 @@ public class LocationView extends View implements MultiTouchObjectCanvas<Object>
          * Get nexrad bitmaps to draw.
          */
         SparseArray<NexradBitmap> bitmaps = null;
+        NexradMosaic mosaic = null;
         if(mScale.getMacroFactor() > 4) {
             if(!mService.getAdsbWeather().getNexradConus().isOld()) {
                 /*
                  * CONUS for larger scales.
                  */
                 bitmaps = mService.getAdsbWeather().getNexradConus().getImages();                
+                mosaic = mService.getAdsbWeather().getNexradConus().getMosaic();
             }
         }
         else {
             if(!mService.getAdsbWeather().getNexrad().isOld()) {
                 bitmaps = mService.getAdsbWeather().getNexrad().getImages();
+                mosaic = mService.getAdsbWeather().getNexrad().getMosaic();
             }
         }
 
         if(null == bitmaps || null != mPointProjection || (!mPref.useAdsbWeather())) {
             return;
         }
+        
+        /*
+         * All blocks at once if they could be stitched
+         */
+        BitmapHolder all = mosaic.getBitmap(bitmaps);
+        if(null != all && null != all.getBitmap()) {
+            float scalex = (float)(mosaic.getScaleX() / mPx);
+            float scaley = (float)(mosaic.getScaleY() / mPy);
+            float x = (float)mOrigin.getOffsetX(mosaic.getLon());
+            float y = (float)mOrigin.getOffsetY(mosaic.getLat());
+            all.getTransform().setScale(scalex * mScale.getScaleFactor(), 
+                    scaley * mScale.getScaleCorrected());
+            all.getTransform().postTranslate(x, y);
+            mPaint.setAlpha(mPref.showRadar());
+            canvas.drawBitmap(all.getBitmap(), all.getTransform(), mPaint);
+            mPaint.setAlpha(255);
+            return;
+        }
 
         for(int i = 0; i < bitmaps.size(); i++) {
             int key = bitmaps.keyAt(i);
@@ -966,33 +1083,64 @@ public class LocationView extends View implements MultiTouchObjectCanvas<Object>
             return;
         }
         
+        if((!mPref.showAdsbTraffic()) || (null != mPointProjection)) {
+            return;
+        }
+
         /*
-         * Get nexrad bitmaps to draw.
+         * Copy out so timer thread can remove old targets while we draw
          */
-        SparseArray<Traffic> traffic = mService.getTrafficCache().getTraffic();
-
-        if((!mPref.showAdsbTraffic()) || (null == traffic) || (null != mPointProjection)) {
-            return;
+        List<Traffic> traffic = mService.getTrafficCache().getTraffic(mTraffic);
+        long now = Helper.getMillisGMT();
+        
+        /*
+         * Traffic close to us
+         */
+        mTrafficNear.clear();
+        if(null != mGpsParams) {
+            mService.getTrafficCache().getNear(mGpsParams.getLongitude(), mGpsParams.getLatitude(), 
+                    (int)mGpsParams.getAltitude(), TRAFFIC_ALERT_DISTANCE, TRAFFIC_ALERT_HEIGHT, mTrafficNear);
         }
 
         for(int i = 0; i < traffic.size(); i++) {
-            int key = traffic.keyAt(i);
-            Traffic t = traffic.get(key);
-            if(t.isOld()) {
-                traffic.delete(key);
+            Traffic t = traffic.get(i);
+            if(t.isOld(now)) {
+                continue;
+            }
+            
+            if(!mViewport.count(Viewport.LAYER_TRAFFIC, mViewport.isVisible(t.mLon, t.mLat))) {
                 continue;
             }
             
             if(null != mAirplaneOtherBitmap) {
                 rotateBitmapIntoPlace(mAirplaneOtherBitmap, t.mHeading,
                         t.mLon, t.mLat, true);
-                mDistanceRingPaint.setColor(Color.WHITE);
+                int color = mTrafficNear.contains(t) ? Color.RED : Color.WHITE;
+                mDistanceRingPaint.setColor(color);
                 canvas.drawBitmap(mAirplaneOtherBitmap.getBitmap(), mAirplaneOtherBitmap.getTransform(), mPaint);
                 /*
                  * Make traffic line and info
                  */
                 float x = (float)mOrigin.getOffsetX(t.mLon);
                 float y = (float)mOrigin.getOffsetY(t.mLat);
+                
+                /*
+                 * Trend from past positions
+                 */
+                int num = t.getHistory(mTrafficLons, mTrafficLats);
+                if(num > 0) {
+                    mPaint.setColor(color);
+                    mPaint.setStrokeWidth(2 * mDipToPix);
+                    float lastx = x;
+                    float lasty = y;
+                    for(int j = num - 1; j >= 0; j--) {
+                        float px = (float)mOrigin.getOffsetX(mTrafficLons[j]);
+                        float py = (float)mOrigin.getOffsetY(mTrafficLats[j]);
+                        canvas.drawLine(lastx, lasty, px, py, mPaint);
+                        lastx = px;
+                        lasty = py;
+                    }
+                }
                 drawShadowedText(canvas, mDistanceRingPaint,
                         t.mAltitude + "'", Color.DKGRAY, x, y);
 
@@ -1070,6 +1218,9 @@ public class LocationView extends View implements MultiTouchObjectCanvas<Object>
             if((mObstacles != null) && (null == mPointProjection)) {
                 mPaint.setShadowLayer(0, 0, 0, 0);
                 for (Obstacle o : mObstacles) {
+                    if(!mViewport.count(Viewport.LAYER_OBSTACLES, mViewport.isVisible(o.getLongitude(), o.getLatitude()))) {
+                        continue;
+                    }
                     rotateBitmapIntoPlace(mObstacleBitmap, 0, o.getLongitude(), o.getLatitude(), false);
                     canvas.drawBitmap(mObstacleBitmap.getBitmap(), mObstacleBitmap.getTransform(), mPaint);
                 }
@@ -1360,7 +1511,10 @@ public class LocationView extends View implements MultiTouchObjectCanvas<Object>
             mPaint.setStrokeWidth(6 * mDipToPix);
             mPaint.setStyle(Paint.Style.FILL);
 
-            mService.getKMLRecorder().getShape().drawShape(canvas, mOrigin, mScale, mMovement, mPaint, mFace, mPref.isNightMode());
+            Shape shape = mService.getKMLRecorder().getShape();
+            if(mViewport.count(Viewport.LAYER_TRACKS, shape.isVisible(mViewport))) {
+                shape.drawShape(canvas, mOrigin, mScale, mMovement, mPaint, mFace, mPref.isNightMode());
+            }
         }
     }
 
@@ -1446,6 +1600,7 @@ public class LocationView extends View implements MultiTouchObjectCanvas<Object>
      */
     private void drawMap(Canvas canvas) {
 
+        mDrawTimer.start();
         
         if(mTrackUp && (mGpsParams != null)) {
             canvas.save();
@@ -1455,32 +1610,211 @@ public class LocationView extends View implements MultiTouchObjectCanvas<Object>
             float x = (float)mOrigin.getOffsetX(mGpsParams.getLongitude());
             float y = (float)mOrigin.getOffsetY(mGpsParams.getLatitude());
             canvas.rotate(-(int)mGpsParams.getBearing(), x, y);
+            mViewport.update(mOrigin, getWidth(), getHeight(), CULL_MARGIN * mDipToPix,
+                    -(int)mGpsParams.getBearing(), x, y);
+        }
+        else {
+            mViewport.update(mOrigin, getWidth(), getHeight(), CULL_MARGIN * mDipToPix, 0, 0, 0);
         }
         drawTiles(canvas);
-        drawNexrad(canvas);
+        mDrawTimer.mark(DrawTimer.TILES);
         drawRadar(canvas);
+        mDrawTimer.mark(DrawTimer.RADAR);
+        drawLayers(canvas);
+        mDrawTimer.mark(DrawTimer.LAYERS);
         drawDrawing(canvas);
-        drawRunways(canvas);
+        mDrawTimer.mark(DrawTimer.DRAWING);
         drawTraffic(canvas);
-        drawTFR(canvas);
-        drawAirSigMet(canvas);
+        mDrawTimer.mark(DrawTimer.TRAFFIC);
         drawTracks(canvas);
+        mDrawTimer.mark(DrawTimer.TRACKS);
         drawTrack(canvas);
-        drawObstacles(canvas);
+        mDrawTimer.mark(DrawTimer.TRACK);
         drawRunways(canvas);
+        mDrawTimer.mark(DrawTimer.RUNWAYS);
         drawAircraft(canvas);
+        mDrawTimer.mark(DrawTimer.AIRCRAFT);
         
         if(mTrackUp) {
             canvas.restore();
         }
         
         drawDistanceRings(canvas);
+        mDrawTimer.mark(DrawTimer.RINGS);
         drawCDI(canvas);
+        mDrawTimer.mark(DrawTimer.CDI);
         drawVASI(canvas);
+        mDrawTimer.mark(DrawTimer.VASI);
       	mInfoLines.drawCornerTextsDynamic(canvas, mPaint, TEXT_COLOR, TEXT_COLOR_OPPOSITE, SHADOW);
+        mDrawTimer.mark(DrawTimer.INFO);
       	drawEdgeMarkers(canvas);
+        mDrawTimer.mark(DrawTimer.EDGE);
+        mDrawTimer.stop();
+      	drawDebug(canvas);
     }    
 
+    /**
+     * Draw layers that change slowly from a cached bitmap, and draw that bitmap again
+     * only when data in layers, or zoom changes, or when map stops moving.
+     * @param canvas
+     */
+    private void drawLayers(Canvas canvas) {
+        mLayersCached = false;
+        if(null == mService || mTrackUp) {
+            /*
+             * Rotated map does not fit the cache
+             */
+            mLayerCache.invalidate();
+            drawNexrad(canvas);
+            drawTFR(canvas);
+            drawAirSigMet(canvas);
+            drawObstacles(canvas);
+            return;
+        }
+        
+        int key = getLayersKey();
+        int margin = (int)(LAYER_MARGIN * mDipToPix);
+        if(!mLayerCache.isValid(mOrigin, getWidth(), getHeight(), margin, key, mTouching)) {
+            Canvas c = mLayerCache.begin(mOrigin, getWidth(), getHeight(), margin, key);
+            if(null == c) {
+                /*
+                 * No memory for cache
+                 */
+                drawNexrad(canvas);
+                drawTFR(canvas);
+                drawAirSigMet(canvas);
+                drawObstacles(canvas);
+                return;
+            }
+            /*
+             * Draw what is in margin too
+             */
+            mViewport.grow(mOrigin, margin);
+            drawNexrad(c);
+            drawTFR(c);
+            drawAirSigMet(c);
+            drawObstacles(c);
+            mViewport.grow(mOrigin, -margin);
+            for(int layer = 0; layer < Viewport.LAYERS; layer++) {
+                mCachedDrawn[layer] = mViewport.getDrawn(layer);
+                mCachedCulled[layer] = mViewport.getCulled(layer);
+            }
+        }
+        mLayersCached = true;
+        mLayerCache.draw(canvas, mOrigin);
+    }
+    
+    /**
+     * Everything that changes how cached layers look
+     * @return
+     */
+    private int getLayersKey() {
+        int key = 17;
+        key = key * 31 + System.identityHashCode(mService.getTFRShapes());
+        key = key * 31 + System.identityHashCode(mService.getInternetWeatherCache().getAirSigMet());
+        key = key * 31 + mObstaclesVersion;
+        key = key * 31 + mService.getAdsbWeather().getNexrad().getVersion();
+        key = key * 31 + mService.getAdsbWeather().getNexradConus().getVersion();
+        key = key * 31 + (mService.getAdsbWeather().getNexrad().isOld() ? 1 : 0);
+        key = key * 31 + (mService.getAdsbWeather().getNexradConus().isOld() ? 1 : 0);
+        key = key * 31 + (mScale.getMacroFactor() > 4 ? 1 : 0);
+        key = key * 31 + (null == mPointProjection ? 1 : 0);
+        key = key * 31 + mPref.showRadar();
+        key = key * 31 + (mPref.useAdsbWeather() ? 1 : 0);
+        key = key * 31 + (mPref.shouldShowObstacles() ? 1 : 0);
+        key = key * 31 + (mPref.isNightMode() ? 1 : 0);
+        key = key * 31 + mPref.getAirSigMetType().hashCode();
+        return key;
+    }
+
+    /**
+     * 
+     * @param layer
+     * @return true if layer is drawn in layer cache
+     */
+    private static boolean isCachedLayer(int layer) {
+        return Viewport.LAYER_TFR == layer || Viewport.LAYER_AIRSIGMET == layer || 
+                Viewport.LAYER_OBSTACLES == layer;
+    }
+
+    /**
+     * Drawing statistics, for development
+     * @param canvas
+     */
+    private void drawDebug(Canvas canvas) {
+        if(!DEBUG) {
+            return;
+        }
+        String names[] = {"TFR", "AirSigMet", "Traffic", "Obstacles", "Tracks"};
+        mDistanceRingPaint.setColor(Color.WHITE);
+        float y = getHeight() / 4;
+        for(int layer = 0; layer < Viewport.LAYERS; layer++) {
+            int drawn = mViewport.getDrawn(layer);
+            int culled = mViewport.getCulled(layer);
+            String cached = "";
+            if(mLayersCached && isCachedLayer(layer)) {
+                /*
+                 * Counts from when the cache was last drawn, not this frame
+                 */
+                drawn = mCachedDrawn[layer];
+                culled = mCachedCulled[layer];
+                cached = " cached";
+            }
+            drawShadowedText(canvas, mDistanceRingPaint,
+                    names[layer] + " " + drawn + "/" + (drawn + culled) + cached, Color.DKGRAY, 
+                    getWidth() / 2, y);
+            y += mDistanceRingPaint.getTextSize() * 2;
+        }
+        
+        /*
+         * Draw times in ms, 50th, 90th, 99th percentile
+         */
+        for(int layer = 0; layer < DrawTimer.NUM; layer++) {
+            drawShadowedText(canvas, mDistanceRingPaint, mDrawTimer.getSummary(layer), Color.DKGRAY, 
+                    getWidth() / 2, y);
+            y += mDistanceRingPaint.getTextSize() * 2;
+        }
+        
+        /*
+         * ADS-B messages waiting, most waiting, dropped
+         */
+        if(null != mService && null != mService.getIngestQueue()) {
+            MessageQueue queue = mService.getIngestQueue();
+            drawShadowedText(canvas, mDistanceRingPaint, "Ingest " + queue.getDepth() + "/" + 
+                    queue.getMaxDepth() + "/" + queue.getDropped(), Color.DKGRAY, 
+                    getWidth() / 2, y);
+            y += mDistanceRingPaint.getTextSize() * 2;
+        }
+        
+        /*
+         * Traffic targets, removed for age or room
+         */
+        if(null != mService) {
+            drawShadowedText(canvas, mDistanceRingPaint, "Targets " + mService.getTrafficCache().size() + "/" + 
+                    mService.getTrafficCache().getEvicted(), Color.DKGRAY, 
+                    getWidth() / 2, y);
+            y += mDistanceRingPaint.getTextSize() * 2;
+            
+            /*
+             * Tiles decoded, bitmaps allocated for them, ms decoding, in last reload
+             */
+            TileMap tiles = mService.getTiles();
+            drawShadowedText(canvas, mDistanceRingPaint, "Decode " + tiles.getDecodeCount() + "/" + 
+                    tiles.getAllocationCount() + "/" + tiles.getDecodeTime() + "ms", Color.DKGRAY, 
+                    getWidth() / 2, y);
+            y += mDistanceRingPaint.getTextSize() * 2;
+        }
+        
+        /*
+         * Databases opened, opened again for new version, connections open now
+         */
+        if(null != mImageDataSource) {
+            drawShadowedText(canvas, mDistanceRingPaint, "DB " + mImageDataSource.getOpenCount() + "/" + 
+                    mImageDataSource.getReopenCount() + "/" + mImageDataSource.getConnectionCount(), Color.DKGRAY, 
+                    getWidth() / 2, y);
+        }
+    }
+
     /**
      * 
      * @param threshold
@@ -1619,8 +1953,13 @@ public class LocationView extends View implements MultiTouchObjectCanvas<Object>
         private double p[] = new double[2];
         public double lon;
         public double lat;
+        public double speed;
+        public double bearing;
         private int     movex;
         private int     movey;
+        private int     lastMovex;
+        private int     lastMovey;
+        private String   lastGpsTile;
         private String   tileNames[];
         private Tile centerTile;
         private Tile gpsTile;
@@ -1723,6 +2062,38 @@ public class LocationView extends View implements MultiTouchObjectCanvas<Object>
                 Message m = mHandler.obtainMessage();
                 m.obj = t;
                 mHandler.sendMessage(m);
+                
+                /*
+                 * Find direction of travel: pan first, then GPS track.
+                 * Rows go south, columns go east.
+                 */
+                int dx = 0;
+                int dy = 0;
+                if(gpsTile.getName().equals(lastGpsTile)) {
+                    dx = movex - lastMovex;
+                    dy = movey - lastMovey;
+                }
+                if(dx == 0 && dy == 0 && speed > 0) {
+                    double b = Math.toRadians(bearing);
+                    dx = (int)Math.round(Math.sin(b));
+                    dy = -(int)Math.round(Math.cos(b));
+                }
+                lastGpsTile = gpsTile.getName();
+                lastMovex = movex;
+                lastMovey = movey;
+
+                /*
+                 * Decode tiles ahead while idle
+                 */
+                try {
+                    mService.getTiles().prefetch(centerTile, dx, dy);
+                }
+                catch(Exception e) {
+                    /*
+                     * Interrupted for new movement.
+                     */
+                    runAgain = true;
+                }
             }
         }
     }    
@@ -1916,11 +2287,11 @@ public class LocationView extends View implements MultiTouchObjectCanvas<Object>
                 mLongTouchDestination.radar = radar;
                 if(metar != null) {
                     mLongTouchDestination.performance =
-                            WeatherHelper.getMetarTime(metar.rawText) + "\n" +
+                            WeatherHelper.getMetarTime(metar) + "\n" +
                             mContext.getString(R.string.DensityAltitude) + " " +
-                            WeatherHelper.getDensityAltitude(metar.rawText, elev) + "\n" +
+                            WeatherHelper.getDensityAltitude(metar, elev) + "\n" +
                             mContext.getString(R.string.BestRunway) + " " +
-                            WeatherHelper.getBestRunway(metar.rawText, runways);
+                            WeatherHelper.getBestRunway(metar, runways);
                 }
                 
                 // If the long press event has already occurred, we need to do the gesture callback here
@@ -2000,12 +2371,41 @@ public class LocationView extends View implements MultiTouchObjectCanvas<Object>
         @Override
         protected void onPostExecute(Object res) {
             mElev = elev;
+            if(!isSameObstacles(mObstacles, obs)) {
+                mObstaclesVersion++;
+            }
             mObstacles = obs;
         }
 
     }
 
 
+    /**
+     * 
+     * @param a
+     * @param b
+     * @return true if both lists have same obstacles in same order
+     */
+    private static boolean isSameObstacles(LinkedList<Obstacle> a, LinkedList<Obstacle> b) {
+        if(null == a || null == b) {
+            return a == b;
+        }
+        if(a.size() != b.size()) {
+            return false;
+        }
+        Iterator<Obstacle> ia = a.iterator();
+        Iterator<Obstacle> ib = b.iterator();
+        while(ia.hasNext()) {
+            Obstacle oa = ia.next();
+            Obstacle ob = ib.next();
+            if(oa.getLongitude() != ob.getLongitude() || oa.getLatitude() != ob.getLatitude() ||
+                    oa.getHeight() != ob.getHeight()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * Center to the location
      */
@@ -2203,6 +2603,10 @@ public class LocationView extends View implements MultiTouchObjectCanvas<Object>
     public void cleanup() {
         mTileDrawTask.running = false;
         mTileDrawThread.interrupt();
+        mLayerCache.recycle();
+        if(DEBUG) {
+            mDrawTimer.dump(new File(mPref.mapsFolder() + "/" + "drawtimes.txt"));
+        }
     }
 
     
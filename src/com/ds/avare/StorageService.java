@@ -16,6 +16,7 @@ import java.util.LinkedList;
 import java.util.Timer;
 import java.util.TimerTask;
 
+import com.ds.avare.adsb.MessageQueue;
 import com.ds.avare.adsb.TrafficCache;
 import com.ds.avare.flight.Checklist;
 import com.ds.avare.flight.FlightStatus;
@@ -89,6 +90,11 @@ public class StorageService extends Service {
     
     private TrafficCache mTrafficCache;
     
+    /*
+     * Messages from helper waiting to be decoded, null when helper not bound
+     */
+    private MessageQueue mIngestQueue;
+    
     private Radar mRadar;
     
     private String mLastPlateAirport;
@@ -436,6 +442,8 @@ public class StorageService extends Service {
         }
         mTiles = null;
         
+        mImageDataSource.close();
+        
         System.gc();
         
         if(mTimer != null) {
@@ -656,6 +664,11 @@ public class StorageService extends Service {
                 }
             }
 
+            /*
+             * Drop traffic not heard from in a while
+             */
+            mTrafficCache.evict();
+
         }
     }
     
@@ -807,6 +820,22 @@ public class StorageService extends Service {
        return mTrafficCache; 
     }
 
+    /**
+     * 
+     * @param queue
+     */
+    public void setIngestQueue(MessageQueue queue) {
+        mIngestQueue = queue;
+    }
+
+    /**
+     * 
+     * @return
+     */
+    public MessageQueue getIngestQueue() {
+        return mIngestQueue;
+    }
+
     
     /**
      * 
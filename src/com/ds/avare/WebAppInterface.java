@@ -12,6 +12,17 @@ Redistribution and use in source and binary forms, with or without modification,
 
 package com.ds.avare;
 
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import com.ds.avare.place.Destination;
 import com.ds.avare.storage.Preferences;
@@ -37,6 +48,7 @@ public class WebAppInterface {
     private Thread mWeatherThread;
     private WebView mWebView;
     private Preferences mPref;
+    private ExecutorService mFetcher;
 
 
     /** 
@@ -46,6 +58,14 @@ public class WebAppInterface {
         mWebView = v;
         mContext = c;
         mPref = new Preferences(c);
+        mFetcher = Executors.newFixedThreadPool(FETCHERS, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "WeatherFetch");
+                t.setDaemon(true);
+                return t;
+            }
+        });
         mWeatherTask = null;
         mWeatherTask = new WeatherTask();
         mWeatherThread = new Thread(mWeatherTask);
@@ -69,6 +89,136 @@ public class WebAppInterface {
     }
 
 
+    /*
+     * Sections of weather briefing, then NAM MOS of each airport
+     */
+    private static final int SECTION_METAR = 0;
+    private static final int SECTION_TAF = 1;
+    private static final int SECTION_PIREP = 2;
+    private static final int SECTION_NAM = 3;
+    
+    /*
+     * Most time to wait for any one section
+     */
+    private static final long SECTION_TIMEOUT = 1000L * 30L;
+    
+    /*
+     * Sections fetched at the same time
+     */
+    private static final int FETCHERS = 4;
+
+    /**
+     * 
+     * @param planf
+     * @param miles
+     * @return
+     */
+    private String getPirepHTML(String planf, String miles) {
+        String Pirep = "";
+        try {
+            String out = NetworkHelper.getPIREPSPlan(planf, miles);
+            String outm[] = out.split("::::");
+            for(int i = 0; i < outm.length; i++) {
+                outm[i] = WeatherHelper.formatPirepHTML(outm[i], mPref.isWeatherTranslated());
+                Pirep += "<font size='5' color='black'>" + outm[i] + "<br></br>";
+            }
+        }
+        catch(Exception e) {
+            Pirep = mContext.getString(R.string.WeatherError);
+        }
+        return Pirep;
+    }
+
+    /**
+     * 
+     * @param planf
+     * @param miles
+     * @return
+     */
+    private String getTafHTML(String planf, String miles) {
+        String Taf = "";
+        try {
+            /*
+             *  Get TAFs 
+             */
+            String out = NetworkHelper.getTAFPlan(planf, miles);
+            String outm[] = out.split("::::");
+            for(int i = 0; i < outm.length; i++) {
+                /*
+                 * Station first, then the forecast
+                 */
+                String vals[] = outm[i].replace("TAF ", "").replace("AMD ", "").trim().split(" ", 2);
+                String taf = vals.length > 1 ? WeatherHelper.formatTafHTML(vals[1], mPref.isWeatherTranslated()) : "";
+                Taf += "<b><font size='5' color='black'>" + vals[0] + "</b><br>";
+                Taf += "<font size='5' color='black'>" + taf + "<br></br>";
+            }
+        }
+        catch(Exception e) {
+            Taf = mContext.getString(R.string.WeatherError);
+        }
+        return Taf;
+    }
+
+    /**
+     * 
+     * @param planf
+     * @param miles
+     * @return
+     */
+    private String getMetarHTML(String planf, String miles) {
+        String Metar = "";
+        try {
+            /*
+             * 
+             */
+            String out = NetworkHelper.getMETARPlan(planf, miles);
+            String outm[] = out.split("::::");
+            for(int i = 0; i < outm.length; i++) {
+                String vals[] = outm[i].split(",");
+                String vals2[] = vals[1].split(" ");
+                String color = WeatherHelper.metarColorString(vals[0]);
+                Metar += "<b><font size='5' + color='" + color + "'>" + vals2[0] + "</b><br>";
+                Metar += "<font size='5' color='" + color + "'>" + WeatherHelper.formatMetarHTML(vals[1].replace(vals2[0], ""), mPref.isWeatherTranslated()) + "<br></br>";
+            }
+        }
+        catch(Exception e) {
+            Metar = mContext.getString(R.string.WeatherError);
+        }
+        return Metar;
+    }
+    
+    /**
+     * Make briefing of sections we have so far
+     * @param plan
+     * @param sections null for those still coming
+     * @return
+     */
+    private String getWeatherHTML(String plan, String sections[]) {
+        String Metar = null == sections[SECTION_METAR] ? "" : sections[SECTION_METAR];
+        String Taf = null == sections[SECTION_TAF] ? "" : sections[SECTION_TAF];
+        String Pirep = null == sections[SECTION_PIREP] ? "" : sections[SECTION_PIREP];
+        String nam = "";
+        for(int i = SECTION_NAM; i < sections.length; i++) {
+            if(null != sections[i]) {
+                nam += sections[i];
+            }
+        }
+        
+        plan = "<font size='5' color='black'>" + plan + "</font><br></br>";
+        plan = "<form>" + plan.replaceAll("'", "\"") + "</form>";
+        Metar = "<font size='6' color='black'>METARs</font><br></br>" + Metar; 
+        Metar = "<form>" + Metar.replaceAll("'", "\"") + "</form>";
+        Taf = "<font size='6' color='black'>TAFs</font><br></br>" + Taf; 
+        Taf = "<form>" + Taf.replaceAll("'", "\"") + "</form>";
+        Pirep = "<font size='6' color='black'>PIREPs</font><br></br>" + Pirep; 
+        Pirep = "<form>" + Pirep.replaceAll("'", "\"") + "</form>";
+        nam = "<font size='6' color='black'>Forecast</font><br></br>" +  
+                WeatherHelper.getNamMosLegend() + nam;
+        nam = "<form>" + nam.replaceAll("'", "\"") + "</form>";
+
+        return plan + Metar + Taf + Pirep + nam;
+    }
+
     /**
      * @author zkhan
      *
@@ -84,20 +234,26 @@ public class WebAppInterface {
             
             Thread.currentThread().setName("Weather");
             
+            boolean again = false;
             while(running) {
     
-                try {
-                    Thread.sleep(1000 * 3600 * 100);
+                /*
+                 * Fetch again right away if asked while fetching
+                 */
+                if(!again) {
+                    try {
+                        Thread.sleep(1000 * 3600 * 100);
+                    }
+                    catch (Exception e) {
+                        
+                    }
                 }
-                catch (Exception e) {
-                    
+                again = false;
+                if(!running) {
+                    break;
                 }
 
-                String Pirep = "";
-                String Metar = "";
-                String Taf = "";
-    
-                String miles = "30";
+                final String miles = "30";
                 String planf = "";
                 String plan = "";
                 if(null == mService) {
@@ -130,87 +286,100 @@ public class WebAppInterface {
                     continue;
                 }                
                 
-                /*
-                 *  Get PIREP
-                 */
-                try {
-                    String out = NetworkHelper.getPIREPSPlan(planf, miles);
-                    String outm[] = out.split("::::");
-                    for(int i = 0; i < outm.length; i++) {
-                        outm[i] = WeatherHelper.formatPirepHTML(outm[i], mPref.isWeatherTranslated());
-                        Pirep += "<font size='5' color='black'>" + outm[i] + "<br></br>";
-                    }
-                }
-                catch(Exception e) {
-                    Pirep = mContext.getString(R.string.WeatherError);
-                }
-    
-                try {
-                    /*
-                     *  Get TAFs 
-                     */
-                    String out = NetworkHelper.getTAFPlan(planf, miles);
-                    String outm[] = out.split("::::");
-                    for(int i = 0; i < outm.length; i++) {
-                        String taf = WeatherHelper.formatWeatherHTML(outm[i], mPref.isWeatherTranslated());
-                        String vals[] = taf.split(" ");
-                        taf = WeatherHelper.formatVisibilityHTML(WeatherHelper.formatTafHTML(WeatherHelper.formatWindsHTML(taf.replace(vals[0], ""), mPref.isWeatherTranslated()), mPref.isWeatherTranslated()));
-                        Taf += "<b><font size='5' color='black'>" + vals[0] + "</b><br>";
-                        Taf += "<font size='5' color='black'>" + taf + "<br></br>";
-                    }
-                }
-                catch(Exception e) {
-                    Taf = mContext.getString(R.string.WeatherError);
-                }
-                
-                try {
-                    /*
-                     * 
-                     */
-                    String out = NetworkHelper.getMETARPlan(planf, miles);
-                    String outm[] = out.split("::::");
-                    for(int i = 0; i < outm.length; i++) {
-                        String vals[] = outm[i].split(",");
-                        String vals2[] = vals[1].split(" ");
-                        String color = WeatherHelper.metarColorString(vals[0]);
-                        Metar += "<b><font size='5' + color='" + color + "'>" + vals2[0] + "</b><br>";
-                        Metar += "<font size='5' color='" + color + "'>" + WeatherHelper.formatMetarHTML(vals[1].replace(vals2[0], ""), mPref.isWeatherTranslated()) + "<br></br>";
-                    }
-                }
-                catch(Exception e) {
-                    Metar = mContext.getString(R.string.WeatherError);
-                }
-      
-                String nam = "";
                 /*
                  * NAM MOS exists for airports only
                  */
+                LinkedList<String> airports = new LinkedList<String>();
                 for(int ap = 0; ap < num; ap++) {
                     Destination d = mService.getPlan().getDestination(ap);
                     if(d != null) {
                         if(d.getType().equals(Destination.BASE)) {
-                            nam += NetworkHelper.getNAMMET(d.getID()); 
+                            airports.add(d.getID());
                         }
                     }
                 }
                 
-                plan = "<font size='5' color='black'>" + plan + "</font><br></br>";
-                plan = "<form>" + plan.replaceAll("'", "\"") + "</form>";
-                Metar = "<font size='6' color='black'>METARs</font><br></br>" + Metar; 
-                Metar = "<form>" + Metar.replaceAll("'", "\"") + "</form>";
-                Taf = "<font size='6' color='black'>TAFs</font><br></br>" + Taf; 
-                Taf = "<form>" + Taf.replaceAll("'", "\"") + "</form>";
-                Pirep = "<font size='6' color='black'>PIREPs</font><br></br>" + Pirep; 
-                Pirep = "<form>" + Pirep.replaceAll("'", "\"") + "</form>";
-                nam = "<font size='6' color='black'>Forecast</font><br></br>" +  
-                        WeatherHelper.getNamMosLegend() + nam;
-                nam = "<form>" + nam.replaceAll("'", "\"") + "</form>";
-
-                String weather = plan + Metar + Taf + Pirep + nam;
+                /*
+                 * Get all sections at the same time.
+                 * Only this thread writes sections, from results of finished fetches.
+                 */
+                final String route = planf;
+                String sections[] = new String[SECTION_NAM + airports.size()];
+                CompletionService<String> done = new ExecutorCompletionService<String>(mFetcher);
+                HashMap<Future<String>, Integer> pending = new HashMap<Future<String>, Integer>();
+                pending.put(done.submit(new Callable<String>() {
+                    @Override
+                    public String call() {
+                        return getMetarHTML(route, miles);
+                    }
+                }), SECTION_METAR);
+                pending.put(done.submit(new Callable<String>() {
+                    @Override
+                    public String call() {
+                        return getTafHTML(route, miles);
+                    }
+                }), SECTION_TAF);
+                pending.put(done.submit(new Callable<String>() {
+                    @Override
+                    public String call() {
+                        return getPirepHTML(route, miles);
+                    }
+                }), SECTION_PIREP);
+                int section = SECTION_NAM;
+                for(final String id : airports) {
+                    pending.put(done.submit(new Callable<String>() {
+                        @Override
+                        public String call() {
+                            return NetworkHelper.getNAMMET(id);
+                        }
+                    }), section++);
+                }
                 
-                Message m = new Message();
-                m.obj = weather;
-                mHandler.sendMessage(m);
+                try {
+                    boolean shown = false;
+                    boolean changed = false;
+                    for(int i = 0; i < sections.length; ) {
+                        Future<String> f = done.poll(SECTION_TIMEOUT, TimeUnit.MILLISECONDS);
+                        if(null == f) {
+                            if(shown) {
+                                /*
+                                 * Still too slow, give up on the rest
+                                 */
+                                break;
+                            }
+                            /*
+                             * Too slow, show what we have once and wait for the rest
+                             */
+                            Message m = new Message();
+                            m.obj = getWeatherHTML(plan, sections);
+                            mHandler.sendMessage(m);
+                            shown = true;
+                            changed = false;
+                            continue;
+                        }
+                        i++;
+                        changed = true;
+                        try {
+                            sections[pending.remove(f)] = f.get();
+                        }
+                        catch (ExecutionException e) {
+                            /*
+                             * Section stays empty
+                             */
+                        }
+                    }
+                    if(changed || !shown) {
+                        Message m = new Message();
+                        m.obj = getWeatherHTML(plan, sections);
+                        mHandler.sendMessage(m);
+                    }
+                }
+                catch (InterruptedException e) {
+                    again = true;
+                }
+                for(Future<String> f : pending.keySet()) {
+                    f.cancel(true);
+                }
             }        
         }
     }
@@ -234,5 +403,6 @@ public class WebAppInterface {
     public void cleanup() {
         mWeatherTask.running = false;
         mWeatherThread.interrupt();
+        mFetcher.shutdownNow();
     }
 }
\ No newline at end of file
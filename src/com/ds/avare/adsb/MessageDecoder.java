@@ -0,0 +1,206 @@
+/*
+Copyright (c) 2012, Apps4Av Inc. (apps4av.com) 
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+    *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+    *
+    *     THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.ds.avare.adsb;
+
+import java.io.UnsupportedEncodingException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * 
+ * @author zkhan
+ * Decodes batches of binary messages from the helper, as an alternative to one JSON string per message.
+ * 
+ * A batch is a sequence of frames. All numbers are big endian.
+ * Frame: int length of rest of frame, byte type, payload.
+ * Strings are a short length followed by UTF-8 bytes.
+ * Payloads:
+ * JSON: string with a JSON message as sent with text
+ * TRAFFIC: long time, int address, float latitude, float longitude, int altitude, float bearing, int speed, string callsign
+ * OWNSHIP: long time, double longitude, double latitude, float speed, float bearing, double altitude
+ * NEXRAD: long time, int block, byte conus, short cols, short rows, int count, int empty[count], int count, int data[count]
+ * METAR, TAF, WINDS, PIREP: long time, string location, string data
+ * Unknown types and extra bytes at the end of a frame are skipped.
+ */
+public class MessageDecoder {
+
+    public static final byte TYPE_JSON = 0;
+    public static final byte TYPE_TRAFFIC = 1;
+    public static final byte TYPE_OWNSHIP = 2;
+    public static final byte TYPE_NEXRAD = 3;
+    public static final byte TYPE_METAR = 4;
+    public static final byte TYPE_TAF = 5;
+    public static final byte TYPE_WINDS = 6;
+    public static final byte TYPE_PIREP = 7;
+    
+    /**
+     * 
+     * @author zkhan
+     * Gets decoded messages
+     */
+    public interface Listener {
+        public void onJson(String text);
+        public void onTraffic(String callsign, int address, float lat, float lon, int altitude, float bearing, int speed, long time);
+        public void onOwnship(double lon, double lat, float speed, float bearing, double altitude, long time);
+        public void onNexrad(long time, int block, int empty[], boolean conus, int data[], int cols, int rows);
+        public void onText(byte type, long time, String location, String data);
+    }
+    
+    /*
+     * Reused while sizes do not change, listener must copy
+     */
+    private int mEmpty[];
+    private int mData[];
+
+    /**
+     * 
+     */
+    public MessageDecoder() {
+        mEmpty = new int[0];
+        mData = new int[0];
+    }
+    
+    /**
+     * Decode all frames in a batch
+     * @param batch
+     * @param listener
+     * @return number of messages decoded
+     */
+    public int decode(byte batch[], Listener listener) {
+        if(null == batch) {
+            return 0;
+        }
+        ByteBuffer buf = ByteBuffer.wrap(batch);
+        int count = 0;
+        while(buf.remaining() >= 5) {
+            int len = buf.getInt();
+            if(len < 1 || len > buf.remaining()) {
+                /*
+                 * Bad frame, rest cannot be trusted
+                 */
+                break;
+            }
+            int next = buf.position() + len;
+            buf.limit(next);
+            try {
+                if(decodeFrame(buf, listener)) {
+                    count++;
+                }
+            }
+            catch(BufferUnderflowException e) {
+                /*
+                 * Short frame, skip it
+                 */
+            }
+            catch(UnsupportedEncodingException e) {
+            }
+            buf.limit(batch.length);
+            buf.position(next);
+        }
+        return count;
+    }
+    
+    /**
+     * 
+     * @param buf
+     * @param listener
+     * @return
+     * @throws UnsupportedEncodingException
+     */
+    private boolean decodeFrame(ByteBuffer buf, Listener listener) throws UnsupportedEncodingException {
+        byte type = buf.get();
+        switch(type) {
+            case TYPE_JSON: {
+                listener.onJson(getString(buf));
+                return true;
+            }
+            case TYPE_TRAFFIC: {
+                long time = buf.getLong();
+                int address = buf.getInt();
+                float lat = buf.getFloat();
+                float lon = buf.getFloat();
+                int altitude = buf.getInt();
+                float bearing = buf.getFloat();
+                int speed = buf.getInt();
+                String callsign = getString(buf);
+                listener.onTraffic(callsign, address, lat, lon, altitude, bearing, speed, time);
+                return true;
+            }
+            case TYPE_OWNSHIP: {
+                long time = buf.getLong();
+                double lon = buf.getDouble();
+                double lat = buf.getDouble();
+                float speed = buf.getFloat();
+                float bearing = buf.getFloat();
+                double altitude = buf.getDouble();
+                listener.onOwnship(lon, lat, speed, bearing, altitude, time);
+                return true;
+            }
+            case TYPE_NEXRAD: {
+                long time = buf.getLong();
+                int block = buf.getInt();
+                boolean conus = buf.get() != 0;
+                int cols = buf.getShort();
+                int rows = buf.getShort();
+                int len = buf.getInt();
+                if(len < 0 || len > buf.remaining() / 4) {
+                    return false;
+                }
+                if(mEmpty.length != len) {
+                    mEmpty = new int[len];
+                }
+                buf.asIntBuffer().get(mEmpty);
+                buf.position(buf.position() + len * 4);
+                len = buf.getInt();
+                if(len < 0 || len > buf.remaining() / 4) {
+                    return false;
+                }
+                if(mData.length != len) {
+                    mData = new int[len];
+                }
+                buf.asIntBuffer().get(mData);
+                buf.position(buf.position() + len * 4);
+                listener.onNexrad(time, block, mEmpty, conus, mData, cols, rows);
+                return true;
+            }
+            case TYPE_METAR:
+            case TYPE_TAF:
+            case TYPE_WINDS:
+            case TYPE_PIREP: {
+                long time = buf.getLong();
+                String location = getString(buf);
+                String data = getString(buf);
+                listener.onText(type, time, location, data);
+                return true;
+            }
+            default:
+                return false;
+        }
+    }
+    
+    /**
+     * 
+     * @param buf
+     * @return
+     * @throws UnsupportedEncodingException 
+     */
+    private static String getString(ByteBuffer buf) throws UnsupportedEncodingException {
+        int len = buf.getShort() & 0xFFFF;
+        if(len > buf.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        String s = new String(buf.array(), buf.arrayOffset() + buf.position(), len, "UTF-8");
+        buf.position(buf.position() + len);
+        return s;
+    }
+}
@@ -0,0 +1,164 @@
+/*
+Copyright (c) 2012, Apps4Av Inc. (apps4av.com) 
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+    *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+    *
+    *     THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.ds.avare.adsb;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+
+/**
+ * 
+ * @author zkhan
+ * Bounded queue of raw messages from the helper, waiting to be decoded.
+ * When a kind of message has too many waiting, its oldest one is dropped, so a burst
+ * of one kind (like NEXRAD) does not hold back or push out others (like traffic).
+ */
+public class MessageQueue {
+
+    public static final int KIND_TRAFFIC = 0;
+    public static final int KIND_OWNSHIP = 1;
+    public static final int KIND_NEXRAD = 2;
+    public static final int KIND_TEXT = 3;
+    public static final int KIND_BATCH = 4;
+    public static final int KINDS = 5;
+    
+    /*
+     * Most waiting of each kind
+     */
+    private static final int MAX[] = {64, 8, 256, 128, 32};
+    
+    private LinkedList<Object> mQueue;
+    private LinkedList<Integer> mKinds;
+    private int mCount[];
+    private int mDropped[];
+    private int mMaxDepth;
+
+    /**
+     * 
+     */
+    public MessageQueue() {
+        mQueue = new LinkedList<Object>();
+        mKinds = new LinkedList<Integer>();
+        mCount = new int[KINDS];
+        mDropped = new int[KINDS];
+        mMaxDepth = 0;
+    }
+    
+    /**
+     * Kind of a message without decoding it
+     * @param msg JSON string or binary batch
+     * @return
+     */
+    private static int getKind(Object msg) {
+        if(msg instanceof byte[]) {
+            return KIND_BATCH;
+        }
+        String text = (String)msg;
+        int type = text.indexOf("\"type\"");
+        if(type < 0) {
+            return KIND_TEXT;
+        }
+        if(text.startsWith("\"traffic\"", text.indexOf('"', type + 6))) {
+            return KIND_TRAFFIC;
+        }
+        if(text.startsWith("\"ownship\"", text.indexOf('"', type + 6))) {
+            return KIND_OWNSHIP;
+        }
+        if(text.startsWith("\"nexrad\"", text.indexOf('"', type + 6))) {
+            return KIND_NEXRAD;
+        }
+        return KIND_TEXT;
+    }
+    
+    /**
+     * Called from binder threads
+     * @param msg
+     */
+    public synchronized void offer(Object msg) {
+        if(null == msg) {
+            return;
+        }
+        int kind = getKind(msg);
+        if(mCount[kind] >= MAX[kind]) {
+            /*
+             * Drop oldest of this kind
+             */
+            Iterator<Object> it = mQueue.iterator();
+            Iterator<Integer> itk = mKinds.iterator();
+            while(it.hasNext()) {
+                it.next();
+                if(itk.next() == kind) {
+                    it.remove();
+                    itk.remove();
+                    break;
+                }
+            }
+            mCount[kind]--;
+            mDropped[kind]++;
+        }
+        mQueue.add(msg);
+        mKinds.add(kind);
+        mCount[kind]++;
+        mMaxDepth = Math.max(mMaxDepth, mQueue.size());
+        notify();
+    }
+    
+    /**
+     * Wait for a message
+     * @return
+     * @throws InterruptedException
+     */
+    public synchronized Object take() throws InterruptedException {
+        while(mQueue.isEmpty()) {
+            wait();
+        }
+        mCount[mKinds.removeFirst()]--;
+        return mQueue.removeFirst();
+    }
+    
+    /**
+     * 
+     * @return messages waiting
+     */
+    public synchronized int getDepth() {
+        return mQueue.size();
+    }
+
+    /**
+     * 
+     * @return most messages ever waiting
+     */
+    public synchronized int getMaxDepth() {
+        return mMaxDepth;
+    }
+    
+    /**
+     * 
+     * @return messages dropped of all kinds
+     */
+    public synchronized int getDropped() {
+        int dropped = 0;
+        for(int kind = 0; kind < KINDS; kind++) {
+            dropped += mDropped[kind];
+        }
+        return dropped;
+    }
+
+    /**
+     * 
+     * @param kind
+     * @return messages dropped of a kind
+     */
+    public synchronized int getDropped(int kind) {
+        return mDropped[kind];
+    }
+}
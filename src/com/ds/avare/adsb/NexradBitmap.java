@@ -12,6 +12,7 @@ Redistribution and use in source and binary forms, with or without modification,
 package com.ds.avare.adsb;
 
 import com.ds.avare.utils.BitmapHolder;
+import com.ds.avare.utils.BitmapPool;
 
 /**
  * 
@@ -70,7 +71,7 @@ public class NexradBitmap {
      * @param data
      * @param block
      */
-    public NexradBitmap(long time, int data[], int block, boolean conus, int cols, int rows) {
+    public NexradBitmap(long time, int data[], int block, boolean conus, int cols, int rows, BitmapPool pool) {
        
         timestamp = System.currentTimeMillis();
         mBlock = block;
@@ -98,20 +99,24 @@ public class NexradBitmap {
         else if(data.length < cols * rows) {
             return;            
         }
-        mBitmap = new BitmapHolder(cols, rows); // this creates a MUTABLE bitmap
-        for(int row = 0; row < rows; row++) {
-            for(int col = 0; col < cols; col++) {
-                mBitmap.getBitmap().setPixel(col, row, data[col + row * cols]);
-            }
+        mBitmap = pool.get(cols, rows); // this is a MUTABLE bitmap
+        if(null == mBitmap.getBitmap()) {
+            mBitmap = null;
+            return;
         }
+        /*
+         * All pixels in one go
+         */
+        mBitmap.getBitmap().setPixels(data, 0, cols, 0, 0, cols, rows);
     }
     
     /**
-     * 
+     * Give bitmap back to pool
+     * @param pool
      */
-    public void discard() {
+    public void discard(BitmapPool pool) {
         if(mBitmap != null) {
-            mBitmap.recycle();
+            pool.put(mBitmap);
             mBitmap = null;
         }
     }
@@ -15,6 +15,7 @@ import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Locale;
 
+import com.ds.avare.utils.BitmapPool;
 import com.ds.avare.utils.Helper;
 
 import android.util.SparseArray;
@@ -47,52 +48,128 @@ public class NexradImage {
     private static final int MAX_ENTRIES = 1620;
     private SparseArray<NexradBitmap> mImg;
     private long mUpdated;
+    private int mVersion;
+    
+    /*
+     * Block images are all of same size, reuse them
+     */
+    private BitmapPool mPool;
+    private static final int POOL_SIZE = 64;
+    
+    /*
+     * All blocks in one bitmap
+     */
+    private NexradMosaic mMosaic;
     
     public NexradImage() { 
         mImg = new SparseArray<NexradBitmap>();
         mUpdated = 0;
+        mVersion = 0;
+        mPool = new BitmapPool(POOL_SIZE);
+        mMosaic = new NexradMosaic();
     }
     
     /**
-     * 
-     * @param product
+     * Make a block bitmap. Does not touch the images or mosaic, so call 
+     * from a background thread, then give the block to putImg on UI thread.
+     * @param time
+     * @param block
+     * @param isConus
+     * @param data
+     * @param cols
+     * @param rows
+     * @return
      */
-    public void putImg(long time, int block, int empty[], boolean isConus, int data[], int cols, int rows) {
+    public NexradBitmap makeImg(long time, int block, boolean isConus, int data[], int cols, int rows) {
+        return new NexradBitmap(time, data, block, isConus, cols, rows, mPool);
+    }
+    
+    /**
+     * Give back a block from makeImg that will not be put, from any thread
+     * @param b
+     */
+    public void discardImg(NexradBitmap b) {
+        b.discard(mPool);
+    }
+    
+    /**
+     * Put a block from makeImg, on UI thread in the order blocks came
+     * @param time
+     * @param block
+     * @param empty
+     * @param b null if only empty blocks
+     */
+    public void putImg(long time, int block, int empty[], NexradBitmap b) {
         
         if(null != empty) {
             /*
              * Empty, make dummy bitmaps of all.
              */
             for(int i = 0; i < empty.length; i++) {
-                if(mImg.get(i) != null) {
+                if(mImg.get(empty[i]) != null) {
                     /*
                      * Clears the bitmap and discards it, since nothing draws here.
                      */
-                    mImg.get(i).discard();
-                    mImg.delete(i);
+                    mMosaic.remove(mImg.get(empty[i]));
+                    mImg.get(empty[i]).discard(mPool);
+                    mImg.delete(empty[i]);
                 }
             }
             mUpdated = time;
+            mVersion++;
         }
-        if(null != data) {
+        if(null != b) {
             if(mImg.get(block) != null) {
                 /*
                  * Replace same block
                  */
-                mImg.get(block).discard();
+                mMosaic.remove(mImg.get(block));
+                mImg.get(block).discard(mPool);
                 mImg.delete(block);
             }
             if(mImg.size() > MAX_ENTRIES) {
                 /*
                  * Sorry no more space.
                  */
+                b.discard(mPool);
                 return;
             }
-            mImg.put(block, new NexradBitmap(time, data, block, isConus, cols, rows));
+            mImg.put(block, b);
+            mMosaic.add(b);
             mUpdated = time;
+            mVersion++;
+        }
+    }
+    
+    /**
+     * Remove blocks older than a period
+     * @param now
+     * @param period
+     */
+    public void removeOld(long now, long period) {
+        boolean removed = false;
+        for(int i = mImg.size() - 1; i >= 0; i--) {
+            NexradBitmap b = mImg.valueAt(i);
+            if((now - b.timestamp) > period) {
+                mMosaic.remove(b);
+                b.discard(mPool);
+                mImg.removeAt(i);
+                removed = true;
+            }
+        }
+        if(removed) {
+            mVersion++;
         }
     }
     
+    /**
+     * 
+     * @return changes with every update of images
+     */
+    public int getVersion() {
+        return mVersion;
+    }
+    
     /**
      * 
      * @return
@@ -100,6 +177,14 @@ public class NexradImage {
     public SparseArray<NexradBitmap> getImages() {
         return mImg;
     }
+
+    /**
+     * 
+     * @return
+     */
+    public NexradMosaic getMosaic() {
+        return mMosaic;
+    }
     
     /**
      * 
@@ -0,0 +1,248 @@
+/*
+Copyright (c) 2012, Apps4Av Inc. (apps4av.com) 
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+    *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+    *
+    *     THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.ds.avare.adsb;
+
+import com.ds.avare.utils.BitmapHolder;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffXfermode;
+import android.util.SparseArray;
+
+/**
+ * 
+ * @author zkhan
+ * All NEXRAD blocks of a product stitched in one bitmap, so it can be drawn at once.
+ * Only blocks that change are drawn in it again.
+ * Only used on UI thread, where blocks are put in the order they came.
+ */
+public class NexradMosaic {
+
+    /*
+     * Larger area than this is drawn block by block
+     */
+    private static final int MAX_SIZE = 1024;
+    
+    private BitmapHolder mBitmap;
+    private Canvas mCanvas;
+    private Paint mPaint;
+    private boolean mRebuild;
+    
+    /*
+     * Lon/lat of pixel 0, 0 and degrees per pixel
+     */
+    private double mLon;
+    private double mLat;
+    private double mScaleX;
+    private double mScaleY;
+
+    /**
+     * 
+     */
+    public NexradMosaic() {
+        mBitmap = null;
+        mCanvas = null;
+        mRebuild = true;
+        mPaint = new Paint();
+        /*
+         * Blocks replace what is under them
+         */
+        mPaint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.SRC));
+    }
+    
+    /**
+     * Find where a block goes in mosaic
+     * @param b
+     * @param out x, y in mosaic pixels
+     * @return false if not in mosaic
+     */
+    private boolean place(NexradBitmap b, int out[]) {
+        if(null == mBitmap || b.getScaleX() != mScaleX || b.getScaleY() != mScaleY) {
+            return false;
+        }
+        Bitmap bm = b.getBitmap().getBitmap();
+        out[0] = (int)Math.round((b.getLonTopLeft() - mLon) / mScaleX);
+        out[1] = (int)Math.round((b.getLatTopLeft() - mLat) / mScaleY);
+        return out[0] >= 0 && out[1] >= 0 && 
+                out[0] + bm.getWidth() <= mBitmap.getWidth() && out[1] + bm.getHeight() <= mBitmap.getHeight();
+    }
+    
+    /**
+     * A block was added
+     * @param b
+     */
+    public void add(NexradBitmap b) {
+        if(mRebuild || null == b.getBitmap() || null == b.getBitmap().getBitmap()) {
+            return;
+        }
+        int xy[] = new int[2];
+        if(!place(b, xy)) {
+            /*
+             * Outside, or no mosaic, make a new one
+             */
+            mRebuild = true;
+            return;
+        }
+        mCanvas.drawBitmap(b.getBitmap().getBitmap(), xy[0], xy[1], mPaint);
+    }
+
+    /**
+     * A block is being removed
+     * @param b
+     */
+    public void remove(NexradBitmap b) {
+        if(mRebuild || null == b.getBitmap() || null == b.getBitmap().getBitmap()) {
+            return;
+        }
+        if(null == mBitmap) {
+            /*
+             * Try again, area may be smaller now
+             */
+            mRebuild = true;
+            return;
+        }
+        int xy[] = new int[2];
+        if(!place(b, xy)) {
+            return;
+        }
+        /*
+         * Clear only its area
+         */
+        Bitmap bm = b.getBitmap().getBitmap();
+        mCanvas.save();
+        mCanvas.clipRect(xy[0], xy[1], xy[0] + bm.getWidth(), xy[1] + bm.getHeight());
+        mCanvas.drawColor(0, PorterDuff.Mode.CLEAR);
+        mCanvas.restore();
+    }
+    
+    /**
+     * Mosaic with all blocks
+     * @param images all blocks
+     * @return null if blocks cover too large an area, then draw them one by one
+     */
+    public BitmapHolder getBitmap(SparseArray<NexradBitmap> images) {
+        if(!mRebuild) {
+            return mBitmap;
+        }
+        recycle();
+        mRebuild = false;
+        
+        /*
+         * Find area of all blocks
+         */
+        double lonMin = Double.MAX_VALUE;
+        double latMin = Double.MAX_VALUE;
+        double lonMax = -Double.MAX_VALUE;
+        double latMax = -Double.MAX_VALUE;
+        double scaleX = 0;
+        double scaleY = 0;
+        for(int i = 0; i < images.size(); i++) {
+            NexradBitmap b = images.valueAt(i);
+            if(null == b.getBitmap() || null == b.getBitmap().getBitmap()) {
+                continue;
+            }
+            if(scaleX == 0) {
+                scaleX = b.getScaleX();
+                scaleY = b.getScaleY();
+            }
+            else if(scaleX != b.getScaleX() || scaleY != b.getScaleY()) {
+                /*
+                 * Mixed products cannot be stitched
+                 */
+                return null;
+            }
+            Bitmap bm = b.getBitmap().getBitmap();
+            lonMin = Math.min(lonMin, b.getLonTopLeft());
+            latMin = Math.min(latMin, b.getLatTopLeft());
+            lonMax = Math.max(lonMax, b.getLonTopLeft() + bm.getWidth() * scaleX);
+            latMax = Math.max(latMax, b.getLatTopLeft() + bm.getHeight() * scaleY);
+        }
+        
+        if(scaleX == 0) {
+            /*
+             * Nothing to show
+             */
+            return null;
+        }
+        
+        int width = (int)Math.round((lonMax - lonMin) / scaleX);
+        int height = (int)Math.round((latMax - latMin) / scaleY);
+        if(width <= 0 || height <= 0 || width > MAX_SIZE || height > MAX_SIZE) {
+            return null;
+        }
+        mBitmap = new BitmapHolder(width, height);
+        if(null == mBitmap.getBitmap()) {
+            mBitmap = null;
+            return null;
+        }
+        mCanvas = new Canvas(mBitmap.getBitmap());
+        mLon = lonMin;
+        mLat = latMin;
+        mScaleX = scaleX;
+        mScaleY = scaleY;
+        
+        /*
+         * Draw all blocks
+         */
+        for(int i = 0; i < images.size(); i++) {
+            add(images.valueAt(i));
+        }
+        return mBitmap;
+    }
+
+    /**
+     * 
+     * @return longitude of left of mosaic
+     */
+    public double getLon() {
+        return mLon;
+    }
+
+    /**
+     * 
+     * @return latitude of row 0 of mosaic
+     */
+    public double getLat() {
+        return mLat;
+    }
+    
+    /**
+     * 
+     * @return degrees of longitude per pixel
+     */
+    public double getScaleX() {
+        return mScaleX;
+    }
+
+    /**
+     * 
+     * @return degrees of latitude per pixel
+     */
+    public double getScaleY() {
+        return mScaleY;
+    }
+    
+    /**
+     * 
+     */
+    public void recycle() {
+        if(null != mBitmap) {
+            mBitmap.recycle();
+        }
+        mBitmap = null;
+        mCanvas = null;
+        mRebuild = true;
+    }
+}
@@ -13,7 +13,22 @@ public class Traffic {
     public String mCallSign;
     private long mLastUpdate;
     
+    /*
+     * Grid cell this target is indexed in, see TrafficCache
+     */
+    int mCell;
+    
+    /*
+     * Last few positions, oldest overwritten first
+     */
+    private float mHistoryLon[];
+    private float mHistoryLat[];
+    private int mHistoryNext;
+    private int mHistoryNum;
+    
     private static final long EXPIRES = 1000 * 60 * 10;
+    
+    public static final int HISTORY = 8;
 
     /**
      * 
@@ -35,6 +50,62 @@ public class Traffic {
         mHeading = heading;
         mHorizVelocity = speed;
         mLastUpdate = time;
+        mHistoryLon = new float[HISTORY];
+        mHistoryLat = new float[HISTORY];
+        mHistoryNext = 0;
+        mHistoryNum = 0;
+    }
+    
+    /**
+     * New report for same target, old position goes to history
+     * @param callsign
+     * @param lat
+     * @param lon
+     * @param altitude
+     * @param heading
+     * @param speed
+     * @param time
+     */
+    public void update(String callsign, float lat, float lon, int altitude, 
+            float heading, int speed, long time) {
+        if(lat != mLat || lon != mLon) {
+            mHistoryLon[mHistoryNext] = mLon;
+            mHistoryLat[mHistoryNext] = mLat;
+            mHistoryNext = (mHistoryNext + 1) % HISTORY;
+            if(mHistoryNum < HISTORY) {
+                mHistoryNum++;
+            }
+        }
+        mCallSign = callsign;
+        mLon = lon;
+        mLat = lat;
+        mAltitude = altitude;
+        mHeading = heading;
+        mHorizVelocity = speed;
+        mLastUpdate = time;
+    }
+    
+    /**
+     * Past positions, oldest first
+     * @param lons at least HISTORY long
+     * @param lats at least HISTORY long
+     * @return number of positions
+     */
+    public int getHistory(float lons[], float lats[]) {
+        int start = mHistoryNext - mHistoryNum + HISTORY;
+        for(int i = 0; i < mHistoryNum; i++) {
+            lons[i] = mHistoryLon[(start + i) % HISTORY];
+            lats[i] = mHistoryLat[(start + i) % HISTORY];
+        }
+        return mHistoryNum;
+    }
+    
+    /**
+     * 
+     * @return
+     */
+    public long getLastUpdate() {
+        return mLastUpdate;
     }
     
     /**
@@ -42,8 +113,17 @@ public class Traffic {
      * @return
      */
     public boolean isOld() {
+        return isOld(Helper.getMillisGMT());
+    }
+
+    /**
+     * 
+     * @param now from Helper.getMillisGMT()
+     * @return
+     */
+    public boolean isOld(long now) {
 
-        long diff = Helper.getMillisGMT();
+        long diff = now;
         diff -= mLastUpdate; 
         if(diff > EXPIRES) {
             return true;
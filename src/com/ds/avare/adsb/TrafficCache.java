@@ -11,43 +11,221 @@ Redistribution and use in source and binary forms, with or without modification,
 */
 package com.ds.avare.adsb;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import com.ds.avare.position.Projection;
+import com.ds.avare.utils.Helper;
 
 import android.util.SparseArray;
 
 /**
  * 
  * @author zkhan
- *
+ * Targets by ICAO address, also indexed on a lon/lat grid for nearby searches.
+ * Updated from UI thread, old targets removed from timer thread, hence synchronized.
  */
 public class TrafficCache {
-    private static final int MAX_ENTRIES = 50;
+    private static final int MAX_ENTRIES = 2000;
+    
+    /*
+     * Grid cell size in degrees, about 15 miles north south
+     */
+    private static final double CELL = 0.25;
+    private static final int CELLS_LON = (int)(360 / CELL);
+    
     private SparseArray<Traffic> mTraffic;
+    private SparseArray<ArrayList<Traffic>> mGrid;
+    private int mEvicted;
     
     public TrafficCache() { 
         mTraffic = new SparseArray<Traffic>();
+        mGrid = new SparseArray<ArrayList<Traffic>>();
+        mEvicted = 0;
+    }
+    
+    /**
+     * 
+     * @param lon
+     * @param lat
+     * @return
+     */
+    private static int getCell(double lon, double lat) {
+        int x = (int)Math.floor((lon + 180) / CELL);
+        int y = (int)Math.floor((lat + 90) / CELL);
+        x = Math.max(0, Math.min(CELLS_LON - 1, x));
+        y = Math.max(0, y);
+        return y * CELLS_LON + x;
+    }
+    
+    /**
+     * 
+     * @param t
+     */
+    private void addToGrid(Traffic t) {
+        ArrayList<Traffic> list = mGrid.get(t.mCell);
+        if(null == list) {
+            list = new ArrayList<Traffic>();
+            mGrid.put(t.mCell, list);
+        }
+        list.add(t);
+    }
+    
+    /**
+     * 
+     * @param t
+     */
+    private void removeFromGrid(Traffic t) {
+        ArrayList<Traffic> list = mGrid.get(t.mCell);
+        if(null == list) {
+            return;
+        }
+        list.remove(t);
+        if(list.isEmpty()) {
+            mGrid.delete(t.mCell);
+        }
+    }
+    
+    /**
+     * 
+     * @param index in mTraffic
+     */
+    private void removeAt(int index) {
+        removeFromGrid(mTraffic.valueAt(index));
+        mTraffic.removeAt(index);
     }
     
     /**
      * 
      * @param product
      */
-    public void putTarric(String callsign, int address, float lat, float lon, int altitude, 
+    public synchronized void putTarric(String callsign, int address, float lat, float lon, int altitude, 
             float heading, int speed, long time) {
 
-        if(mTraffic.size() >= MAX_ENTRIES) {
+        Traffic t = mTraffic.get(address);
+        if(null != t) {
+            /*
+             * Same target, keep its history
+             */
+            t.update(callsign, lat, lon, altitude, heading, speed, time);
+            int cell = getCell(lon, lat);
+            if(cell != t.mCell) {
+                removeFromGrid(t);
+                t.mCell = cell;
+                addToGrid(t);
+            }
             return;
         }
+
+        if(mTraffic.size() >= MAX_ENTRIES) {
+            /*
+             * Make room by dropping the target not heard from the longest
+             */
+            int oldest = 0;
+            for(int i = 1; i < mTraffic.size(); i++) {
+                if(mTraffic.valueAt(i).getLastUpdate() < mTraffic.valueAt(oldest).getLastUpdate()) {
+                    oldest = i;
+                }
+            }
+            removeAt(oldest);
+            mEvicted++;
+        }
             
-        mTraffic.put(address, new Traffic(callsign, address, lat, lon, altitude, 
-                heading, speed, time));
+        t = new Traffic(callsign, address, lat, lon, altitude, 
+                heading, speed, time);
+        t.mCell = getCell(lon, lat);
+        mTraffic.put(address, t);
+        addToGrid(t);
     }
     
+    /**
+     * Remove targets not heard from in a while
+     */
+    public synchronized void evict() {
+        long now = Helper.getMillisGMT();
+        for(int i = mTraffic.size() - 1; i >= 0; i--) {
+            if(mTraffic.valueAt(i).isOld(now)) {
+                removeAt(i);
+                mEvicted++;
+            }
+        }
+    }
+    
+    /**
+     * 
+     * @param out filled with all targets
+     * @return out
+     */
+    public synchronized List<Traffic> getTraffic(List<Traffic> out) {
+        out.clear();
+        for(int i = 0; i < mTraffic.size(); i++) {
+            out.add(mTraffic.valueAt(i));
+        }
+        return out;
+    }
+    
+    /**
+     * Targets within a distance and altitude band, for alerts
+     * @param lon
+     * @param lat
+     * @param altitude in feet
+     * @param distance in units of Preferences.earthRadiusConversion
+     * @param height feet above or below altitude
+     * @param out filled with targets found
+     * @return out
+     */
+    public synchronized List<Traffic> getNear(double lon, double lat, int altitude, double distance, 
+            int height, List<Traffic> out) {
+        out.clear();
+        
+        /*
+         * Only look in grid cells that the circle can touch.
+         * A degree of latitude is at least 60 of any distance unit, longitude shrinks with cosine of latitude.
+         */
+        double dlat = distance / 60;
+        double dlon = dlat / Math.max(0.01, Math.cos(Math.toRadians(lat)));
+        int c0 = getCell(lon - dlon, lat - dlat);
+        int c1 = getCell(lon + dlon, lat + dlat);
+        int x0 = c0 % CELLS_LON;
+        int x1 = c1 % CELLS_LON;
+        int y0 = c0 / CELLS_LON;
+        int y1 = c1 / CELLS_LON;
+        for(int y = y0; y <= y1; y++) {
+            for(int x = x0; x <= x1; x++) {
+                ArrayList<Traffic> list = mGrid.get(y * CELLS_LON + x);
+                if(null == list) {
+                    continue;
+                }
+                for(int i = 0; i < list.size(); i++) {
+                    Traffic t = list.get(i);
+                    if(Math.abs(t.mAltitude - altitude) > height) {
+                        continue;
+                    }
+                    if(Math.abs(t.mLat - lat) > dlat || Math.abs(t.mLon - lon) > dlon) {
+                        continue;
+                    }
+                    if(new Projection(lon, lat, t.mLon, t.mLat).getDistance() <= distance) {
+                        out.add(t);
+                    }
+                }
+            }
+        }
+        return out;
+    }
     
     /**
      * 
      * @return
      */
-    public SparseArray<Traffic> getTraffic() {
-        return mTraffic;
-    }    
+    public synchronized int size() {
+        return mTraffic.size();
+    }
+
+    /**
+     * 
+     * @return targets removed for age or for room
+     */
+    public synchronized int getEvicted() {
+        return mEvicted;
+    }
 }
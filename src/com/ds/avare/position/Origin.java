@@ -88,6 +88,22 @@ public class Origin {
         return mLatU + of * mScaleY;
     }
 
+    /**
+     * 
+     * @return longitude per pixel
+     */
+    public double getScaleX() {
+        return mScaleX;
+    }
+
+    /**
+     * 
+     * @return latitude per pixel
+     */
+    public double getScaleY() {
+        return mScaleY;
+    }
+
     /**
      * 
      * @return
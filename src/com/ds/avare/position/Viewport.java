@@ -0,0 +1,173 @@
+/*
+Copyright (c) 2012, Apps4Av Inc. (apps4av.com) 
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+    *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+    *
+    *     THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.ds.avare.position;
+
+import android.graphics.Matrix;
+
+/**
+ * Lon/lat box of what is on screen, used to skip drawing of what is not.
+ * Keeps counts of drawn and skipped items per layer.
+ * @author zkhan
+ *
+ */
+public class Viewport {
+
+    public static final int LAYER_TFR = 0;
+    public static final int LAYER_AIRSIGMET = 1;
+    public static final int LAYER_TRAFFIC = 2;
+    public static final int LAYER_OBSTACLES = 3;
+    public static final int LAYER_TRACKS = 4;
+    public static final int LAYERS = 5;
+
+    private double mLonMin;
+    private double mLonMax;
+    private double mLatMin;
+    private double mLatMax;
+    
+    private int mDrawn[];
+    private int mCulled[];
+    
+    private Matrix mMatrix;
+    private float mCorners[];
+
+    /**
+     * 
+     */
+    public Viewport() {
+        mDrawn = new int[LAYERS];
+        mCulled = new int[LAYERS];
+        mMatrix = new Matrix();
+        mCorners = new float[8];
+        mLonMin = -180;
+        mLonMax = 180;
+        mLatMin = -90;
+        mLatMax = 90;
+    }
+
+    /**
+     * Find what is on screen. Call once per frame before drawing.
+     * @param origin
+     * @param width of screen
+     * @param height of screen
+     * @param margin in pixels around screen, for bitmaps and text drawn around a point
+     * @param degrees map is rotated by, around x, y
+     * @param x
+     * @param y
+     */
+    public void update(Origin origin, int width, int height, float margin, float degrees, float x, float y) {
+        mCorners[0] = -margin;
+        mCorners[1] = -margin;
+        mCorners[2] = width + margin;
+        mCorners[3] = -margin;
+        mCorners[4] = width + margin;
+        mCorners[5] = height + margin;
+        mCorners[6] = -margin;
+        mCorners[7] = height + margin;
+        
+        if(degrees != 0) {
+            /*
+             * Map is rotated with canvas, screen corners on map are rotated the other way
+             */
+            mMatrix.setRotate(-degrees, x, y);
+            mMatrix.mapPoints(mCorners);
+        }
+        
+        mLonMin = 180;
+        mLonMax = -180;
+        mLatMin = 90;
+        mLatMax = -90;
+        for(int corner = 0; corner < 8; corner += 2) {
+            double lon = origin.getLongitudeOf(mCorners[corner]);
+            double lat = origin.getLatitudeOf(mCorners[corner + 1]);
+            mLonMin = Math.min(mLonMin, lon);
+            mLonMax = Math.max(mLonMax, lon);
+            mLatMin = Math.min(mLatMin, lat);
+            mLatMax = Math.max(mLatMax, lat);
+        }
+        
+        for(int layer = 0; layer < LAYERS; layer++) {
+            mDrawn[layer] = 0;
+            mCulled[layer] = 0;
+        }
+    }
+    
+    /**
+     * Make box larger on all sides, counts are kept
+     * @param origin
+     * @param pixels less than 0 to make it smaller
+     */
+    public void grow(Origin origin, float pixels) {
+        double lon = Math.abs(origin.getScaleX()) * pixels;
+        double lat = Math.abs(origin.getScaleY()) * pixels;
+        mLonMin -= lon;
+        mLonMax += lon;
+        mLatMin -= lat;
+        mLatMax += lat;
+    }
+
+    /**
+     * 
+     * @param lonMin
+     * @param lonMax
+     * @param latMin
+     * @param latMax
+     * @return true if any part of box is on screen
+     */
+    public boolean isVisible(double lonMin, double lonMax, double latMin, double latMax) {
+        return lonMax >= mLonMin && lonMin <= mLonMax && latMax >= mLatMin && latMin <= mLatMax;
+    }
+
+    /**
+     * 
+     * @param lon
+     * @param lat
+     * @return
+     */
+    public boolean isVisible(double lon, double lat) {
+        return isVisible(lon, lon, lat, lat);
+    }
+
+    /**
+     * Count an item of a layer as drawn or skipped
+     * @param layer
+     * @param drawn
+     * @return drawn
+     */
+    public boolean count(int layer, boolean drawn) {
+        if(drawn) {
+            mDrawn[layer]++;
+        }
+        else {
+            mCulled[layer]++;
+        }
+        return drawn;
+    }
+    
+    /**
+     * 
+     * @param layer
+     * @return
+     */
+    public int getDrawn(int layer) {
+        return mDrawn[layer];
+    }
+
+    /**
+     * 
+     * @param layer
+     * @return
+     */
+    public int getCulled(int layer) {
+        return mCulled[layer];
+    }
+}
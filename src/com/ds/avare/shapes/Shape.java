@@ -11,12 +11,10 @@ Redistribution and use in source and binary forms, with or without modification,
 */
 package com.ds.avare.shapes;
 
-import java.util.LinkedList;
-
-import com.ds.avare.position.Coordinate;
 import com.ds.avare.position.Movement;
 import com.ds.avare.position.Origin;
 import com.ds.avare.position.Scale;
+import com.ds.avare.position.Viewport;
 import com.sromku.polygon.Point;
 import com.sromku.polygon.Polygon;
 import com.sromku.polygon.Polygon.Builder;
@@ -32,7 +30,13 @@ import android.graphics.Typeface;
  */
 public abstract class Shape {
 
-    protected LinkedList<Coordinate> mCoords;
+    /*
+     * Coordinates packed in arrays
+     */
+    private double[] mLons;
+    private double[] mLats;
+    private boolean[] mSeparate;
+    private int mNum;
     protected double mLonMin;
     protected double mLonMax;
     protected double mLatMin;
@@ -43,17 +47,34 @@ public abstract class Shape {
     private Builder mPolyBuilder;
     private Polygon mPoly;
     
+    /*
+     * Line end points in pixels from top left of shape, valid for the scale they were made at
+     */
+    private float[] mLines;
+    private int mLinesNum;
+    private float mLinesFacx;
+    private float mLinesFacy;
+    private double mLinesLonMin;
+    private double mLinesLatMax;
+
+    private static final int INITIAL_COORDS = 16;
+    
     /**
      * 
      */
     public Shape(String label) {
-        mCoords = new LinkedList<Coordinate>();
+        mLons = new double[INITIAL_COORDS];
+        mLats = new double[INITIAL_COORDS];
+        mSeparate = new boolean[INITIAL_COORDS];
+        mNum = 0;
         mLonMin = 180;
         mLonMax = -180;
         mLatMin = 180;
         mLatMax = -180;
         mText = label;
         mPolyBuilder = Polygon.Builder(); 
+        mLines = new float[0];
+        mLinesNum = -1;
     }
 
     /**
@@ -61,11 +82,22 @@ public abstract class Shape {
      * @param coords
      */
     public void add(double lon, double lat, boolean issep) {
-        Coordinate c = new Coordinate(lon, lat);
-        if(issep) {
-            c.makeSeparate();
+        if(mNum == mLons.length) {
+            int len = mNum * 2;
+            double lons[] = new double[len];
+            double lats[] = new double[len];
+            boolean separate[] = new boolean[len];
+            System.arraycopy(mLons, 0, lons, 0, mNum);
+            System.arraycopy(mLats, 0, lats, 0, mNum);
+            System.arraycopy(mSeparate, 0, separate, 0, mNum);
+            mLons = lons;
+            mLats = lats;
+            mSeparate = separate;
         }
-        mCoords.add(c);
+        mLons[mNum] = lon;
+        mLats[mNum] = lat;
+        mSeparate[mNum] = issep;
+        mNum++;
         mPolyBuilder.addVertex(new Point((float)lon, (float)lat));
         
         /*
@@ -85,6 +117,46 @@ public abstract class Shape {
         }
     }
 
+    /**
+     * Remove all coordinates
+     */
+    protected void clear() {
+        mNum = 0;
+        mLinesNum = -1;
+    }
+
+    /**
+     * Make line end points in pixels, only when scale or shape changes
+     * @param num number of coordinates to use
+     * @param facx
+     * @param facy
+     */
+    private void project(int num, float facx, float facy) {
+        if(mLinesNum == num && mLinesFacx == facx && mLinesFacy == facy
+                && mLinesLonMin == mLonMin && mLinesLatMax == mLatMax) {
+            return;
+        }
+        int len = Math.max(0, num - 1) * 4;
+        if(mLines.length < len) {
+            mLines = new float[len];
+        }
+        /*
+         * Segment coord to coord + 1
+         */
+        int pt = 0;
+        for(int coord = 0; coord < (num - 1); coord++) {
+            mLines[pt++] = (float)(mLons[coord] - mLonMin) * facx;
+            mLines[pt++] = (float)(mLats[coord] - mLatMax) * facy;
+            mLines[pt++] = (float)(mLons[coord + 1] - mLonMin) * facx;
+            mLines[pt++] = (float)(mLats[coord + 1] - mLatMax) * facy;
+        }
+        mLinesNum = num;
+        mLinesFacx = facx;
+        mLinesFacy = facy;
+        mLinesLonMin = mLonMin;
+        mLinesLatMax = mLatMax;
+    }
+
     /**
      * This will draw the closed shape in canvas with given screen params
      * @param c
@@ -95,6 +167,14 @@ public abstract class Shape {
      */
     public void drawShape(Canvas c, Origin origin, Scale scale, Movement movement, Paint paint, Typeface face, boolean night) {
         
+        /*
+         * Coordinates may be added while drawing, use only the ones there now
+         */
+        int num = mNum;
+        if(num < 2) {
+            return;
+        }
+        
         float x = (float)origin.getOffsetX(mLonMin);
         float y = (float)origin.getOffsetY(mLatMax);
         float sx = scale.getScaleFactor();
@@ -102,6 +182,15 @@ public abstract class Shape {
         float facx = sx / (float)movement.getLongitudePerPixel();
         float facy = sy / (float)movement.getLatitudePerPixel();
         
+        project(num, facx, facy);
+        int count = (num - 1) * 4;
+        
+        /*
+         * Panning only moves the shape
+         */
+        c.save();
+        c.translate(x, y);
+        
         /*
          * Do a tab on top of shape
          */
@@ -115,25 +204,16 @@ public abstract class Shape {
             /*
              * Draw background on track shapes, so draw twice
              */
-            for(int coord = 0; coord < (getNumCoords() - 1); coord++) {
-                float x1 = x + (float)(mCoords.get(coord).getLongitude() - mLonMin) * facx;
-                float x2 = x + (float)(mCoords.get(coord + 1).getLongitude() - mLonMin) * facx;
-                float y1 = y + (float)(mCoords.get(coord).getLatitude() - mLatMax) * facy;
-                float y2 = y + (float)(mCoords.get(coord + 1).getLatitude() - mLatMax) * facy;
-                paint.setStrokeWidth(width + 4);
-                paint.setColor(night? Color.WHITE : Color.BLACK);
-                c.drawLine(x1, y1, x2, y2, paint);
-                paint.setStrokeWidth(width);
-                paint.setColor(color);
-                c.drawLine(x1, y1, x2, y2, paint);
-                if(mCoords.get(coord + 1).isSeparate()) {
-                    paint.setColor(night? Color.WHITE : Color.BLACK);
-                    c.drawCircle(x2, y2, 10, paint);
-                    paint.setColor(Color.GREEN);
-                    c.drawCircle(x2, y2, 8, paint);
-                    paint.setColor(color);
-                }
-                if(mCoords.get(coord).isSeparate()) {
+            paint.setStrokeWidth(width + 4);
+            paint.setColor(night? Color.WHITE : Color.BLACK);
+            c.drawLines(mLines, 0, count, paint);
+            paint.setStrokeWidth(width);
+            paint.setColor(color);
+            c.drawLines(mLines, 0, count, paint);
+            for(int coord = 0; coord < num; coord++) {
+                if(mSeparate[coord]) {
+                    float x1 = (float)(mLons[coord] - mLonMin) * facx;
+                    float y1 = (float)(mLats[coord] - mLatMax) * facy;
                     paint.setColor(night? Color.WHITE : Color.BLACK);
                     c.drawCircle(x1, y1, 10, paint);
                     paint.setColor(Color.GREEN);
@@ -144,16 +224,11 @@ public abstract class Shape {
         }
         else {
             /*
-             * Draw the shape segment by segment
+             * Draw the shape, all segments at once
              */
-            for(int coord = 0; coord < (getNumCoords() - 1); coord++) {
-                float x1 = x + (float)(mCoords.get(coord).getLongitude() - mLonMin) * facx;
-                float x2 = x + (float)(mCoords.get(coord + 1).getLongitude() - mLonMin) * facx;
-                float y1 = y + (float)(mCoords.get(coord).getLatitude() - mLatMax) * facy;
-                float y2 = y + (float)(mCoords.get(coord + 1).getLatitude() - mLatMax) * facy;
-                c.drawLine(x1, y1, x2, y2, paint);
-            }
+            c.drawLines(mLines, 0, count, paint);
         }
+        c.restore();
     }
     
     /**
@@ -161,7 +236,16 @@ public abstract class Shape {
      * @return
      */
     public int getNumCoords() {
-        return mCoords.size();
+        return mNum;
+    }
+
+    /**
+     * 
+     * @param view
+     * @return true if any part of this shape may be on screen
+     */
+    public boolean isVisible(Viewport view) {
+        return view.isVisible(mLonMin, mLonMax, mLatMin, mLatMax);
     }
 
     /**
@@ -14,7 +14,6 @@ package com.ds.avare.shapes;
 
 import com.ds.avare.storage.Preferences;
 import com.ds.avare.utils.BitmapHolder;
-import com.ds.avare.utils.Helper;
 
 
 /**
@@ -41,6 +40,8 @@ public class Tile {
     private double mWidth;
     private double mHeight;
     private String mChart;
+    private Preferences mPref;
+    private TileKey mKey;
 
     /**
      * 
@@ -80,10 +81,25 @@ public class Tile {
         mLonC = lonc;
         mLatC = latc;
         mChart = chart;
+        /*
+         * Size from image file is found when first needed
+         */
+        mPref = pref;
+        mWidth = 0;
+        mHeight = 0;
+    }
+
+    /**
+     * Width and height of tile image
+     */
+    private void getSize() {
+        if(mWidth != 0) {
+            return;
+        }
         int opts[] = new int[2];
-        BitmapHolder.getTileOptions(name, pref, opts);
-        mWidth = opts[0];
+        BitmapHolder.getTileOptions(mName, mPref, opts);
         mHeight = opts[1];
+        mWidth = opts[0];
     }
 
     /**
@@ -103,6 +119,7 @@ public class Tile {
      * @return
      */
     public double getPx() {
+        getSize();
         return(-((mLonUL - mLonUR)  + (mLonLL - mLonLR)) / (mWidth * 2));
     }
     
@@ -118,6 +135,7 @@ public class Tile {
      * @return
      */
     public double getPy() {
+        getSize();
         return(-((mLatUL - mLatLL)  + (mLatUR - mLatLR)) / (mHeight * 2));
     }
 
@@ -202,7 +220,10 @@ public class Tile {
      */
     public String getNeighbor(int rowm, int colm) {
         
-        String ret = Helper.incTileName(mName, rowm, colm);
+        if(null == mKey) {
+            mKey = TileKey.parse(mName);
+        }
+        String ret = null == mKey ? null : mKey.getNeighbor(rowm, colm);
         if(null == ret) {
             return("error.jpeg");
         }
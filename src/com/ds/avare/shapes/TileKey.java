@@ -0,0 +1,139 @@
+/*
+Copyright (c) 2012, Apps4Av Inc. (apps4av.com) 
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+    *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+    *
+    *     THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.ds.avare.shapes;
+
+/**
+ * 
+ * @author zkhan
+ * Tile name split once in its parts, so names of neighbors can be made with arithmetic
+ */
+public class TileKey {
+
+    /*
+     * This is all magic. Check database specification.
+     * Tiles are stored row/col as:
+     * 0/row/master_row_col where row, col have leading zeros
+     */
+    private String mPrefix;
+    private String mMaster;
+    private String mExtension;
+    private int mRow;
+    private int mCol;
+    private int mRowLength;
+    private int mColLength;
+    
+    private StringBuilder mBuilder;
+
+    /**
+     * 
+     */
+    private TileKey() {
+        mBuilder = new StringBuilder();
+    }
+    
+    /**
+     * 
+     * @param name
+     * @return null if name is not a tile name
+     */
+    public static TileKey parse(String name) {
+        if(null == name) {
+            return null;
+        }
+        try {
+            String [] tokens = name.split("[/_.]");
+            TileKey k = new TileKey();
+            k.mPrefix = tokens[0] + "/" + tokens[1] + "/" + tokens[2] + "/" + tokens[3] + "/" + tokens[4] + "/";
+            k.mMaster = tokens[6];
+            k.mExtension = tokens[9];
+            k.mRow = Integer.parseInt(tokens[7]);
+            k.mCol = Integer.parseInt(tokens[8]);
+            k.mRowLength = tokens[7].length();
+            k.mColLength = tokens[8].length();
+            return k;
+        }
+        catch(Exception e) {
+        }
+        return null;
+    }
+    
+    /**
+     * 
+     * @return
+     */
+    public int getRow() {
+        return mRow;
+    }
+
+    /**
+     * 
+     * @return
+     */
+    public int getCol() {
+        return mCol;
+    }
+
+    /**
+     * Name of tile at row, col
+     * @param row
+     * @param col
+     * @return
+     */
+    public String getName(int row, int col) {
+        /*
+         * Tiles are used in UI and tile threads
+         */
+        synchronized(mBuilder) {
+            mBuilder.setLength(0);
+            mBuilder.append(mPrefix).append(row).append('/').append(mMaster).append('_');
+            pad(mBuilder, row, mRowLength);
+            mBuilder.append('_');
+            pad(mBuilder, col, mColLength);
+            mBuilder.append('.').append(mExtension);
+            return mBuilder.toString();
+        }
+    }
+    
+    /**
+     * Name of tile moved by rows and columns from this one
+     * @param rowm
+     * @param colm
+     * @return
+     */
+    public String getNeighbor(int rowm, int colm) {
+        return getName(mRow + rowm, mCol + colm);
+    }
+
+    /**
+     * Same as %0<len>d format, without formatter
+     * @param sb
+     * @param value
+     * @param len
+     */
+    private static void pad(StringBuilder sb, int value, int len) {
+        long v = value;
+        if(v < 0) {
+            sb.append('-');
+            v = -v;
+            len--;
+        }
+        int digits = 1;
+        for(long t = v; t >= 10; t /= 10) {
+            digits++;
+        }
+        for(int zero = digits; zero < len; zero++) {
+            sb.append('0');
+        }
+        sb.append(v);
+    }
+}
@@ -18,7 +18,16 @@ import com.ds.avare.utils.BitmapHolder;
 import android.content.Context;
 import android.graphics.Color;
 
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 
 /**
@@ -43,6 +52,27 @@ public class TileMap {
     
     private BitmapHolder[] mBitmapCache;
     private BitmapHolder[] mFreeList;
+    
+    /*
+     * Last use of each cached tile, for LRU replacement
+     */
+    private long[] mStamp;
+    private long mClock;
+    
+    /*
+     * Decode statistics of last reload
+     */
+    private int mDecodes;
+    private int mAllocations;
+    private long mDecodeTime;
+    
+    /*
+     * Workers that decode tiles of a reload in parallel
+     */
+    private ExecutorService mDecoder;
+    private BitmapHolder[] mPending;
+    
+    private static final int MAX_DECODERS = 4;
     /**
      * 
      * @param x
@@ -60,11 +90,26 @@ public class TileMap {
         mXtiles = tilesdim[0];
         mYtiles = tilesdim[1];
         numTiles = mXtiles * mYtiles;
-        numTilesMax = mXtiles * mYtiles;
+        /*
+         * Keep some tiles beyond the visible ones so panning back, and prefetch, find them decoded
+         */
+        numTilesMax = numTiles + mPref.getTilesCacheNumber();
         mapA = new BitmapHolder[numTiles];
         mapB = new BitmapHolder[numTiles];
         mBitmapCache = new BitmapHolder[numTilesMax];
         mFreeList = new BitmapHolder[numTilesMax];
+        mStamp = new long[numTilesMax];
+        mClock = 0;
+        mPending = new BitmapHolder[numTiles];
+        int decoders = Math.max(1, Math.min(MAX_DECODERS, Runtime.getRuntime().availableProcessors()));
+        mDecoder = Executors.newFixedThreadPool(decoders, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "TileDecode");
+                t.setDaemon(true);
+                return t;
+            }
+        });
         for(int tile = 0; tile < numTilesMax; tile++) {
             mBitmapCache[tile] = new BitmapHolder();
         }
@@ -104,7 +149,13 @@ public class TileMap {
     public void reload(String[] tileNames) throws InterruptedException {
     	HashMap<String,BitmapHolder> hm = new HashMap<String,BitmapHolder> ();
     	int freeIndex = 0;
-        mapB = new BitmapHolder[numTiles];
+    	mClock++;
+    	synchronized(this) {
+    	    mDecodes = 0;
+    	    mAllocations = 0;
+    	    mDecodeTime = 0;
+    	}
+    	BitmapHolder[] map = new BitmapHolder[numTiles];
         /* 
          * Initial setup, mark all as candidates for the freelist.
          * Next section will mark the used ones.
@@ -127,32 +178,54 @@ public class TileMap {
         	/* 
         	 * Setup for later mark as not free.
         	 */
-            mapB[tilen] = hm.get(tileNames[tilen]);
-            if (mapB[tilen] != null) {
-            	mapB[tilen].setFree(false);
+            map[tilen] = hm.get(tileNames[tilen]);
+            if (map[tilen] != null) {
+            	map[tilen].setFree(false);
             }
         }
         /*
-         * Build the list of free tiles based on the flags
+         * Build the list of free tiles based on the flags.
+         * Most recently used first so the least recently used are pulled off the end first.
          */
         for (int tilen = 0 ; tilen < numTilesMax ; tilen++ ) {
         	if (mBitmapCache[tilen] != null && mBitmapCache[tilen].getFree()) {
-        		mFreeList[freeIndex] = mBitmapCache[tilen];
+        		int pos = freeIndex;
+        		while(pos > 0 && getStamp(mFreeList[pos - 1]) < mStamp[tilen]) {
+        		    mFreeList[pos] = mFreeList[pos - 1];
+        		    pos--;
+        		}
+        		mFreeList[pos] = mBitmapCache[tilen];
         		freeIndex++;
         	}
+        	else if (mBitmapCache[tilen] != null) {
+        	    mStamp[tilen] = mClock;
+        	}
         }
 
         /*
-         * For all tiles that will be loaded.
+         * For all tiles that will be loaded, center tile first.
          */
+        Integer order[] = new Integer[numTiles];
         for(int tilen = 0; tilen < numTiles; tilen++) {
-            
-            /*
-             * Move beyond the move? interrupt.
-             */
-            if(Thread.interrupted()) {
-                throw new InterruptedException();
+            order[tilen] = tilen;
+        }
+        final int xc = mXtiles / 2;
+        final int yc = mYtiles / 2;
+        final int xt = mXtiles;
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                int da = Math.max(Math.abs(a % xt - xc), Math.abs(a / xt - yc));
+                int db = Math.max(Math.abs(b % xt - xc), Math.abs(b / xt - yc));
+                return da - db;
             }
+        });
+        
+        LinkedList<Future<?>> jobs = new LinkedList<Future<?>>();
+        LinkedList<Integer> slots = new LinkedList<Integer>();
+        for(int index = 0; index < numTiles; index++) {
+            
+            int tilen = order[index];
             
             if(null == tileNames[tilen]) {
                 /*
@@ -161,7 +234,7 @@ public class TileMap {
                 continue;
             }
             
-            if(null != mapB[tilen]) {
+            if(null != map[tilen]) {
                 /*
                  * This is reused
                  */
@@ -177,22 +250,282 @@ public class TileMap {
             }
             if(h != null) {
                 /*
-                 * At max scale, down sample by down sampling 
+                 * Decode in workers
+                 */
+                setStamp(h);
+                final BitmapHolder holder = h;
+                final String name = tileNames[tilen];
+                jobs.add(mDecoder.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        load(holder, name);
+                    }
+                }));
+                slots.add(tilen);
+                mPending[tilen] = h;
+            }
+        }
+        
+        /*
+         * Put tiles in the new set as they are done, in order of submission.
+         */
+        try {
+            while(!jobs.isEmpty()) {
+                /*
+                 * Move beyond the move? interrupt.
                  */
-                BitmapHolder b = new BitmapHolder(mContext, mPref, tileNames[tilen], 1);
-                if(b.getBitmap() == null) {
-                    h.setFound(false);
+                if(Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                try {
+                    jobs.getFirst().get();
                 }
-                else {
-                    h.setFound(true);
+                catch(ExecutionException e) {
+                }
+                jobs.removeFirst();
+                int tilen = slots.removeFirst();
+                map[tilen] = mPending[tilen];
+                mPending[tilen] = null;
+            }
+        }
+        catch(InterruptedException e) {
+            /*
+             * Drop tiles not started, wait for ones being decoded so their bitmaps
+             * can be reused on next reload.
+             */
+            for(Future<?> f : jobs) {
+                f.cancel(false);
+            }
+            for(Future<?> f : jobs) {
+                while(true) {
+                    try {
+                        f.get();
+                        break;
+                    }
+                    catch(InterruptedException ie) {
+                    }
+                    catch(CancellationException ce) {
+                        break;
+                    }
+                    catch(ExecutionException ee) {
+                        break;
+                    }
                 }
-                h.getBitmap().eraseColor(Color.GRAY);
-                h.drawInBitmap(b, tileNames[tilen], 0, 0);
-                b.recycle();
-                b = null;
-                mapB[tilen] = h;
             }
+            for(int tilen = 0; tilen < numTiles; tilen++) {
+                mPending[tilen] = null;
+            }
+            throw e;
+        }
+        
+        /*
+         * All visible tiles are ready, this set can be flipped to now.
+         */
+        mapB = map;
+    }
+
+    /**
+     * Decode ahead of time the ring of tiles just outside the visible ones, in direction of movement.
+     * Only tiles not on screen are replaced, least recently used first.
+     * 
+     * @param center tile at center of visible tiles
+     * @param dx columns to move, sign only
+     * @param dy rows to move, sign only
+     * @throws InterruptedException
+     */
+    public void prefetch(Tile center, int dx, int dy) throws InterruptedException {
+        if((null == center) || (numTilesMax <= numTiles) || (dx == 0 && dy == 0)) {
+            return;
+        }
+        dx = Integer.signum(dx);
+        dy = Integer.signum(dy);
+        int xmax = mXtiles / 2;
+        int ymax = mYtiles / 2;
+
+        /*
+         * Names in the ring ahead, column first, then row, then the corner
+         */
+        LinkedList<String> names = new LinkedList<String>();
+        if(dx != 0) {
+            for(int tiley = -ymax; tiley <= ymax; tiley++) {
+                names.add(center.getNeighbor(tiley, dx * (xmax + 1)));
+            }
+        }
+        if(dy != 0) {
+            for(int tilex = -xmax; tilex <= xmax; tilex++) {
+                names.add(center.getNeighbor(dy * (ymax + 1), tilex));
+            }
+        }
+        if(dx != 0 && dy != 0) {
+            names.add(center.getNeighbor(dy * (ymax + 1), dx * (xmax + 1)));
+        }
+
+        HashMap<String,BitmapHolder> hm = new HashMap<String,BitmapHolder> ();
+        for (int tilen = 0 ; tilen < numTilesMax ; tilen++ ) {
+            if (mBitmapCache[tilen] != null && mBitmapCache[tilen].getName() != null) {
+                hm.put(mBitmapCache[tilen].getName(), mBitmapCache[tilen]);
+            }
+        }
+
+        for(String name : names) {
+            
+            if(Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            
+            BitmapHolder h = hm.get(name);
+            if(null != h) {
+                /*
+                 * Already decoded, keep it
+                 */
+                setStamp(h);
+                continue;
+            }
+            
+            int victim = findVictim();
+            if(victim < 0) {
+                return;
+            }
+            h = mBitmapCache[victim];
+            hm.remove(h.getName());
+            load(h, name);
+            mStamp[victim] = mClock;
+            hm.put(name, h);
+        }
+    }
+
+    /**
+     * Least recently used tile that is not on screen, and not used in this round.
+     * 
+     * @return index in cache, -1 if none
+     */
+    private int findVictim() {
+        int victim = -1;
+        for (int tilen = 0 ; tilen < numTilesMax ; tilen++ ) {
+            BitmapHolder h = mBitmapCache[tilen];
+            if(null == h || mStamp[tilen] >= mClock || isShown(h)) {
+                continue;
+            }
+            if(victim < 0 || mStamp[tilen] < mStamp[victim]) {
+                victim = tilen;
+            }
+        }
+        return victim;
+    }
+    
+    /**
+     * 
+     * @param h
+     * @return
+     */
+    private boolean isShown(BitmapHolder h) {
+        BitmapHolder[] a = mapA;
+        BitmapHolder[] b = mapB;
+        for(int tilen = 0; tilen < numTiles; tilen++) {
+            if(a[tilen] == h || b[tilen] == h) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * 
+     * @param h
+     * @return
+     */
+    private long getStamp(BitmapHolder h) {
+        for (int tilen = 0 ; tilen < numTilesMax ; tilen++ ) {
+            if(mBitmapCache[tilen] == h) {
+                return mStamp[tilen];
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * 
+     * @param h
+     */
+    private void setStamp(BitmapHolder h) {
+        for (int tilen = 0 ; tilen < numTilesMax ; tilen++ ) {
+            if(mBitmapCache[tilen] == h) {
+                mStamp[tilen] = mClock;
+            }
+        }
+    }
+
+    /**
+     * Decode a tile from disk into a cached bitmap
+     * 
+     * @param h
+     * @param name
+     */
+    private void load(BitmapHolder h, String name) {
+        long start = System.nanoTime();
+        
+        /*
+         * Best case, decode in place
+         */
+        if(h.decodeInBitmap(mPref, name)) {
+            h.setFound(true);
+            count(false, System.nanoTime() - start);
+            return;
+        }
+        if(null == h.getBitmap()) {
+            count(false, System.nanoTime() - start);
+            return;
+        }
+
+        /*
+         * At max scale, down sample by down sampling 
+         */
+        BitmapHolder b = new BitmapHolder(mContext, mPref, name, 1);
+        boolean found = b.getBitmap() != null;
+        h.setFound(found);
+        h.getBitmap().eraseColor(Color.GRAY);
+        h.drawInBitmap(b, name, 0, 0);
+        b.recycle();
+        b = null;
+        count(found, System.nanoTime() - start);
+    }
+
+    /**
+     * Decoders run in parallel
+     * 
+     * @param allocated
+     * @param time
+     */
+    private synchronized void count(boolean allocated, long time) {
+        mDecodes++;
+        if(allocated) {
+            mAllocations++;
         }
+        mDecodeTime += time;
+    }
+
+    /**
+     * 
+     * @return tiles decoded in last reload, including prefetch
+     */
+    public synchronized int getDecodeCount() {
+        return mDecodes;
+    }
+
+    /**
+     * 
+     * @return bitmaps allocated to decode tiles in last reload, including prefetch
+     */
+    public synchronized int getAllocationCount() {
+        return mAllocations;
+    }
+
+    /**
+     * 
+     * @return time in ms spent decoding tiles in last reload, including prefetch
+     */
+    public synchronized long getDecodeTime() {
+        return mDecodeTime / 1000000;
     }
 
     /**
@@ -206,6 +539,7 @@ public class TileMap {
      * 
      */
     public void recycleBitmaps() {
+        mDecoder.shutdownNow();
         for(int tile = 0; tile < numTilesMax; tile++) {
             mBitmapCache[tile].recycle();
             mBitmapCache[tile] = null;
@@ -58,7 +58,7 @@ public class TrackShape extends Shape {
         Projection p = new Projection(lastLon, lastLat, destLon, destLat);
         int segments = (int)p.getDistance() / MILES_PER_SEGMENT + 3; // Min 3 points
         Coordinate coord[] = p.findPoints(segments);
-        super.mCoords.clear();
+        super.clear();
         
         /*
          * Now make shape from coordinates with segments
@@ -75,7 +75,7 @@ public class TrackShape extends Shape {
      */
     public void updateShapeFromPlan(Coordinate[] c) {
     
-        super.mCoords.clear();
+        super.clear();
         
         if(null == c) {
             return;
@@ -39,6 +39,7 @@ import com.ds.avare.weather.WindsAloft;
 import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 import android.hardware.GeomagneticField;
 
 /**
@@ -48,13 +49,21 @@ import android.hardware.GeomagneticField;
 public class DataBaseHelper  {
 
     /**
-     * Cache this class to sqlite
+     * Databases stay open for life of this class, one connection per thread
      */
-    private SQLiteDatabase mDataBase; 
-    private SQLiteDatabase mDataBaseFiles; 
-    private SQLiteDatabase mDataBaseElev; 
-    private SQLiteDatabase mDataBasePlates; 
-    private SQLiteDatabase mDataBaseWeather; 
+    private DataBasePool mPool;
+
+    /*
+     * Spatial indices for nearest searches, built on first use
+     */
+    private SpatialIndex mAirportIndex;
+    private SpatialIndex mWindsIndex;
+    private static final int FLAG_AIRPORT = 1;
+
+    /*
+     * Obstacles around us
+     */
+    private ObstacleCache mObstacleCache;
     
     /*
      * Center tile info
@@ -71,16 +80,6 @@ public class DataBaseHelper  {
      */
     private Context mContext;
     
-    /*
-     * How many users at this point. Used for closing the database
-     * Will serve as a non blocking sem with synchronized statement
-     */
-    private Integer mUsers;
-    private Integer mUsersFiles;
-    private Integer mUsersElev;
-    private Integer mUsersPlates;
-    private Integer mUsersWeather;
-    
     
     public  static final String  FACILITY_NAME = "Facility Name";
     private static final String  FACILITY_NAME_DB = "FacilityName";
@@ -132,7 +131,25 @@ public class DataBaseHelper  {
 
 
     private static final String TILE_NAME = "name";
-    
+
+    /*
+     * Query shapes. Values are bound at run time so SQLite compiles each shape once per connection.
+     */
+    private static final String QUERY_BY_ID = " where " + LOCATION_ID_DB + "==?";
+    private static final String QUERY_BY_ID_OR_K = " where " + LOCATION_ID_DB + "==? or " + LOCATION_ID_DB + "==?";
+    private static final String QUERY_SEARCH = "select " + LOCATION_ID_DB + "," + FACILITY_NAME_DB + "," + TYPE_DB + " from ";
+    private static final String QUERY_SEARCH_LIKE = " (" + LOCATION_ID_DB + " like ?) order by " + LOCATION_ID_DB + " asc";
+    private static final String QUERY_AIRPORT_ONLY = TYPE_DB + "=='AIRPORT'";
+    private static final String QUERY_TILE_WITHIN =
+            "select * from " + TABLE_FILES + " where " + 
+            "((latul - CAST(? AS REAL)) > 0) and " +
+            "((latll - CAST(? AS REAL)) < 0) and " + 
+            "((lonul - CAST(? AS REAL)) < 0) and " + 
+            "((lonur - CAST(? AS REAL)) > 0) and " +
+            "level like ?;";
+    private static final String QUERY_MINIMUMS = 
+            " where " + LOCATION_ID_DB + "==? or " + LOCATION_ID_DB + "==? or " + LOCATION_ID_DB + "==?";
+
     /**
      * 
      * @return
@@ -147,7 +164,10 @@ public class DataBaseHelper  {
     public DataBaseHelper(Context context) {
         mPref = new Preferences(context);
         mCenterTile = null;
-        mUsers = mUsersFiles = mUsersWeather = mUsersElev = mUsersPlates = 0;
+        mPool = new DataBasePool();
+        mAirportIndex = null;
+        mWindsIndex = null;
+        mObstacleCache = new ObstacleCache();
         mContext = context;
     }
 
@@ -163,33 +183,66 @@ public class DataBaseHelper  {
    
 
     /**
-     * Close database
+     * Databases have been updated. Connections are re-opened on next query.
+     */
+    public void reopen() {
+        mPool.reopen();
+    }
+
+    /**
+     * Close all databases
+     */
+    public void close() {
+        mPool.close();
+    }
+
+    /**
+     * 
+     * @return
+     */
+    public int getOpenCount() {
+        return mPool.getOpenCount();
+    }
+
+    /**
+     * 
+     * @return
+     */
+    public int getReopenCount() {
+        return mPool.getReopenCount();
+    }
+
+    /**
+     * 
+     * @return
+     */
+    public int getConnectionCount() {
+        return mPool.getConnectionCount();
+    }
+
+    /**
+     * Close cursor, database stays open
      */
     private void closes(Cursor c) {
-        if(null != c) {
+        if(null == c) {
+            return;
+        }
+        
+        try {
             c.close();
         }
-
-        synchronized(mUsers) {
-            mUsers--;
-            if((mDataBase != null) && (mUsers <= 0)) {
-                try {
-                    mDataBase.close();
-                }
-                catch (Exception e) {
-                }
-                mDataBase = null;
-                mUsers = 0;
-            }
+        catch (Exception e) {
         }
+        mPool.release();
     }
 
     /**
      * 
-     * @param statement
+     * @param statement Query shape with ? in place of values
+     * @param args Values for ?
      * @return
      */
-    private Cursor doQuery(String statement, String name) {
+    private Cursor doQuery(String statement, String args[], String name) {
         Cursor c = null;
         
         String path = mPref.mapsFolder() + "/" + name;
@@ -197,36 +250,12 @@ public class DataBaseHelper  {
             return null;
         }
 
-        /*
-         * 
-         */
-        synchronized(mUsers) {
-            if(mDataBase == null) {
-                mUsers = 0;
-                try {
-                    
-                    mDataBase = SQLiteDatabase.openDatabase(path, null, SQLiteDatabase.OPEN_READONLY | 
-                            SQLiteDatabase.NO_LOCALIZED_COLLATORS);
-                }
-                catch(RuntimeException e) {
-                    mDataBase = null;
-                }
-            }
-            if(mDataBase == null) {
-                return c;
-            }
-            mUsers++;
-        }
+        SQLiteDatabase db = mPool.acquire(path);
         
         /*
          * In case we fail
          */
-        
-        if(mDataBase == null) {
-            return c;
-        }
-        
-        if(!mDataBase.isOpen()) {
+        if(db == null) {
             return c;
         }
         
@@ -234,15 +263,123 @@ public class DataBaseHelper  {
          * Find with sqlite query
          */
         try {
-               c = mDataBase.rawQuery(statement, null);
+               c = db.rawQuery(statement, args);
         }
         catch (Exception e) {
             c = null;
         }
 
+        if(c == null) {
+            mPool.release();
+        }
         return c;
     }
 
+    /**
+     * Run a query that returns one string, like a file name, with a compiled statement
+     * @param statement Query shape with ? in place of values
+     * @param args Values for ?
+     * @return null if nothing found
+     */
+    private String doQueryString(String statement, String args[], String name) {
+        String path = mPref.mapsFolder() + "/" + name;
+        if(!(new File(path).exists())) {
+            return null;
+        }
+
+        SQLiteStatement s = mPool.compile(path, statement);
+        if(s == null) {
+            return null;
+        }
+
+        String ret;
+        try {
+            for(int i = 0; i < args.length; i++) {
+                s.bindString(i + 1, args[i]);
+            }
+            ret = s.simpleQueryForString();
+        }
+        catch (Exception e) {
+            /*
+             * SQLiteDoneException when no rows
+             */
+            ret = null;
+        }
+        mPool.release();
+        return ret;
+    }
+
+    /**
+     * Find by ID query shape for a table
+     * @param table
+     * @return
+     */
+    private static String selectById(String table) {
+        return "select * from " + table + QUERY_BY_ID;
+    }
+
+    /**
+     * Build a spatial index of a table
+     * @param statement Query that returns rowid, name, longitude, latitude, flags
+     * @param name
+     * @return null if database not found
+     */
+    private SpatialIndex buildIndex(String statement, String name) {
+        String path = mPref.mapsFolder() + "/" + name;
+        int version = mPool.getVersion();
+        Cursor cursor = doQuery(statement, null, name);
+        if(cursor == null) {
+            return null;
+        }
+        
+        SpatialIndex index = null;
+        try {
+            index = new SpatialIndex(cursor.getCount(), path, version);
+            while(cursor.moveToNext()) {
+                if(cursor.isNull(2) || cursor.isNull(3)) {
+                    continue;
+                }
+                index.add(cursor.getDouble(2), cursor.getDouble(3), cursor.getInt(4),
+                        cursor.getInt(0), cursor.getString(1));
+            }
+            index.build();
+        }
+        catch (Exception e) {
+            index = null;
+        }
+        closes(cursor);
+        return index;
+    }
+
+    /**
+     * Index of airports, built once per database version
+     * @return
+     */
+    private SpatialIndex getAirportIndex() {
+        synchronized(this) {
+            if(mAirportIndex == null || 
+                    !mAirportIndex.isFor(mPref.mapsFolder() + "/" + getMainDb(), mPool.getVersion())) {
+                mAirportIndex = buildIndex("select rowid, " + LOCATION_ID_DB + ", " + LONGITUDE_DB + ", " + LATITUDE_DB + 
+                        ", (" + QUERY_AIRPORT_ONLY + ") from " + TABLE_AIRPORTS, getMainDb());
+            }
+            return mAirportIndex;
+        }
+    }
+
+    /**
+     * Index of winds aloft stations, built once per database version
+     * @return
+     */
+    private SpatialIndex getWindsIndex() {
+        synchronized(this) {
+            if(mWindsIndex == null || 
+                    !mWindsIndex.isFor(mPref.mapsFolder() + "/" + getWeatherDb(), mPool.getVersion())) {
+                mWindsIndex = buildIndex("select rowid, station, longitude, latitude, 0 from wa", getWeatherDb());
+            }
+            return mWindsIndex;
+        }
+    }
+
     /**
      * 
      * @param name
@@ -256,8 +393,7 @@ public class DataBaseHelper  {
             ret[it] = 0;
         }
         
-        String qry = "select * from " + TABLE_AIRPORT_DIAGS + " where " + LOCATION_ID_DB + "=='" + name +"'";
-        Cursor cursor = doQuery(qry, getMainDb());
+        Cursor cursor = doQuery(selectById(TABLE_AIRPORT_DIAGS), new String[] {name}, getMainDb());
         try {
             if(cursor != null) {
                 if(cursor.moveToFirst()) {
@@ -289,8 +425,8 @@ public class DataBaseHelper  {
         /*
          * Dont delete level 4
          */
-        String query = "select name from " + TABLE_FILES + " where " + INFO_DB + "=='" + name +"'"
-                + "and level != '4'";
+        String query = "select name from " + TABLE_FILES + " where " + INFO_DB + "==? and level != '4'";
+        String args[] = new String[] {name};
 
         LinkedList<String> list = new LinkedList<String>();
         
@@ -334,7 +470,7 @@ public class DataBaseHelper  {
          * Delete files from all databases
          */
         for(int i = 0; i < dbs.length; i++) {
-            Cursor cursor = doQuery(query, dbs[i]);
+            Cursor cursor = doQuery(query, args, dbs[i]);
     
             try {
                 if(cursor != null) {
@@ -352,8 +488,8 @@ public class DataBaseHelper  {
         /*
          * Now plates.
          */
-        query = "select " + LOCATION_ID_DB + " from " + TABLE_AIRPORTS + " where State=\"" + name + "\";";
-        Cursor cursor = doQuery(query, getMainDb());
+        query = "select " + LOCATION_ID_DB + " from " + TABLE_AIRPORTS + " where State==?;";
+        Cursor cursor = doQuery(query, args, getMainDb());
 
         try {
             if(cursor != null) {
@@ -378,76 +514,72 @@ public class DataBaseHelper  {
      */
     public void findClosestAirports(double lon, double lat, Airport[] airports) {
 
+        SpatialIndex index = getAirportIndex();
+        if(null == index) {
+            return;
+        }
+
         /*
          * Limit to airports taken by array airports
          */
-        String qry = "select * from " + TABLE_AIRPORTS;
-        if(!mPref.shouldShowAllFacilities()) {
-            qry += " where " + TYPE_DB + "=='AIRPORT' ";
+        int found[] = new int[airports.length];
+        int num = index.find(lon, lat, 1, mPref.shouldShowAllFacilities() ? 0 : FLAG_AIRPORT, 
+                Double.MAX_VALUE, found);
+        if(0 == num) {
+            return;
         }
-        qry += " order by ((" + 
-                lon + " - " + LONGITUDE_DB + ") * (" + lon + "- " + LONGITUDE_DB +") + (" + 
-                lat + " - " + LATITUDE_DB + ") * (" + lat + "- " + LATITUDE_DB + ")) ASC limit " + airports.length + ";";            
-
-        Cursor cursor = doQuery(qry, getMainDb());
+        
+        /*
+         * Get rows of airports found with their longest runway, in one query
+         */
+        String args[] = new String[num];
+        String qry = "select *, " + 
+                "(select Length || 'X' || Width from " + TABLE_AIRPORT_RUNWAYS + " where " + 
+                LOCATION_ID_DB + " in (" + TABLE_AIRPORTS + "." + LOCATION_ID_DB + ", 'K' || " + TABLE_AIRPORTS + "." + LOCATION_ID_DB + ")" + 
+                " order by CAST(Length AS INTEGER) desc limit 1), " + 
+                "rowid from " + TABLE_AIRPORTS + " where rowid in (CAST(? AS INTEGER)";
+        for(int i = 0; i < num; i++) {
+            args[i] = Integer.toString(index.getKey(found[i]));
+            if(i > 0) {
+                qry += ",CAST(? AS INTEGER)";
+            }
+        }
+        qry += ");";
+        Cursor cursor = doQuery(qry, args, getMainDb());
 
         try {
-            int id = 0;
             if(cursor != null) {
-                if(cursor.moveToFirst()) {
-                    do {
-                        LinkedHashMap<String, String> params = new LinkedHashMap<String, String>();
-                        params.put(LOCATION_ID, cursor.getString(LOCATION_ID_COL));
-                        params.put(FACILITY_NAME, cursor.getString(FACILITY_NAME_COL));
-                        params.put(FUEL_TYPES, cursor.getString(FUEL_TYPES_COL));
-                        params.put(LATITUDE, Double.toString(Helper.truncGeo(cursor.getDouble(LATITUDE_COL))));
-                        params.put(LONGITUDE, Double.toString(Helper.truncGeo(cursor.getDouble(LONGITUDE_COL))));
-                        params.put(MAGNETIC_VARIATION, cursor.getString(MAGNETIC_VARIATION_COL).trim());
-                        String parts[] = cursor.getString(9).trim().split("[.]");
-                        params.put(ELEVATION, parts[0] + "ft");
-                        airports[id] = new Airport(params, lon, lat);
-                        id++;
+                int rowid = cursor.getColumnCount() - 1;
+                int runway = rowid - 1;
+                while(cursor.moveToNext()) {
+                    int id;
+                    for(id = 0; id < num; id++) {
+                        if(index.getKey(found[id]) == cursor.getInt(rowid)) {
+                            break;
+                        }
+                    }
+                    if(id >= num) {
+                        continue;
+                    }
+                    LinkedHashMap<String, String> params = new LinkedHashMap<String, String>();
+                    params.put(LOCATION_ID, cursor.getString(LOCATION_ID_COL));
+                    params.put(FACILITY_NAME, cursor.getString(FACILITY_NAME_COL));
+                    params.put(FUEL_TYPES, cursor.getString(FUEL_TYPES_COL));
+                    params.put(LATITUDE, Double.toString(Helper.truncGeo(cursor.getDouble(LATITUDE_COL))));
+                    params.put(LONGITUDE, Double.toString(Helper.truncGeo(cursor.getDouble(LONGITUDE_COL))));
+                    params.put(MAGNETIC_VARIATION, cursor.getString(MAGNETIC_VARIATION_COL).trim());
+                    String parts[] = cursor.getString(9).trim().split("[.]");
+                    params.put(ELEVATION, parts[0] + "ft");
+                    airports[id] = new Airport(params, lon, lat);
+                    if(!cursor.isNull(runway)) {
+                        airports[id].setLongestRunway(cursor.getString(runway));
                     }
-                    while(cursor.moveToNext());
                 }
             }  
         }
         catch (Exception e) {
         }
         closes(cursor);
-
-        /*
-         * Find longest runway for each airport
-         */
-        for (int i = 0; i < airports.length; i++) {
-            if(airports[i] == null) {
-                continue;
-            }
-             String name = airports[i].getId();
-             if(name == null) {
-                 continue;
-             }
-             qry = "select * from " + TABLE_AIRPORT_RUNWAYS + " where " + LOCATION_ID_DB + "=='" + name
-                     + "' or " + LOCATION_ID_DB + "=='K" + name + "' order by CAST(Length AS INTEGER) desc limit 1;";
-             cursor = doQuery(qry, getMainDb());
-             
-             try {
-                 /*
-                  * Add all of them
-                  */
-                 if(cursor != null) {
-                     while(cursor.moveToNext()) {
-                         String runway = cursor.getString(1) + "X" + cursor.getString(2);
-                         airports[i].setLongestRunway(runway);
-                     }
-                 }
-             }
-             catch (Exception e) {
-             }
-
-             closes(cursor);        
-        }
-
     }
 
     /**
@@ -457,11 +589,9 @@ public class DataBaseHelper  {
             
         Cursor cursor;
         
-        String types = TABLE_AIRPORTS;
         Coordinate c = null;
 
-        String qry = "select * from " + types + " where " + LOCATION_ID_DB + "=='" + name + "';";
-        cursor = doQuery(qry, getMainDb());
+        cursor = doQuery(selectById(TABLE_AIRPORTS), new String[] {name}, getMainDb());
 
         try {
             if(cursor != null) {
@@ -489,11 +619,11 @@ public class DataBaseHelper  {
         
         Cursor cursor;
 
-        String qry = "select * from " + table + " where " + LOCATION_ID_DB + "=='" + name + "' limit 1;";
+        String qry = selectById(table) + " limit 1;";
         /*
          * NAV
          */
-        cursor = doQuery(qry, getMainDb());
+        cursor = doQuery(qry, new String[] {name}, getMainDb());
         
         try {
             if(cursor != null) {
@@ -647,8 +777,8 @@ public class DataBaseHelper  {
         String chopname = name.substring(0, len - 6).toUpperCase(Locale.getDefault());
         if(chop.matches("[0-9][0-9][0-9][0-9][0-9][0-9]")) {
 
-            String qry = "select * from " + TABLE_NAV + " where " + LOCATION_ID_DB + "=='" + chopname + "';";
-            cursor = doQuery(qry, getMainDb());
+            String args[] = new String[] {chopname};
+            cursor = doQuery(selectById(TABLE_NAV), args, getMainDb());
             
             try {
                 if(cursor != null) {
@@ -682,8 +812,7 @@ public class DataBaseHelper  {
                          */
                         closes(cursor);
 
-                        String qry2 = "select * from " + TABLE_FIX + " where " + LOCATION_ID_DB + "=='" + chopname + "';";
-                        cursor = doQuery(qry2, getMainDb());
+                        cursor = doQuery(selectById(TABLE_FIX), args, getMainDb());
 
                         if(cursor != null) {
                             if(cursor.moveToFirst()) {
@@ -736,8 +865,8 @@ public class DataBaseHelper  {
          */
         String uname = name.toUpperCase(Locale.getDefault());
 
-        String qry = "select " + LOCATION_ID_DB + "," + FACILITY_NAME_DB + "," + TYPE_DB + " from " + TABLE_AIRPORTS + " where City=='" + uname + "';";
-        cursor = doQuery(qry, getMainDb());
+        String qry = QUERY_SEARCH + TABLE_AIRPORTS + " where City==?;";
+        cursor = doQuery(qry, new String[] {uname}, getMainDb());
 
         try {
             if(cursor != null) {
@@ -778,20 +907,19 @@ public class DataBaseHelper  {
         searchCity(name, params);
         
         String qry;
-        String qbasic = "select " + LOCATION_ID_DB + "," + FACILITY_NAME_DB + "," + TYPE_DB + " from ";
+        String qbasic = QUERY_SEARCH;
         
         /*
          * We don't want to throw in too many results, but we also want to allow K as a prefix for airport names
          * If the user has typed enough, let's start looking for K prefixed airports as well
          */
         if(len > 2 && name.charAt(0) == 'K' || name.charAt(0) == 'k') {
-            String qendK = " (" + LOCATION_ID_DB + " like '" + name.substring(1) + "%' " + ") order by " + LOCATION_ID_DB + " asc";
             qry = qbasic + TABLE_AIRPORTS + " where ";
             if(!mPref.shouldShowAllFacilities()) {
-                qry += TYPE_DB + "=='AIRPORT' and ";
+                qry += QUERY_AIRPORT_ONLY + " and ";
             }
-            qry += qendK;
-            cursor = doQuery(qry, getMainDb());
+            qry += QUERY_SEARCH_LIKE;
+            cursor = doQuery(qry, new String[] {name.substring(1) + "%"}, getMainDb());
             try {
                 if(cursor != null) {
                     while(cursor.moveToNext()) {
@@ -808,9 +936,10 @@ public class DataBaseHelper  {
         /*
          * All queries for airports, navaids, fixes
          */
-        String qend = " (" + LOCATION_ID_DB + " like '" + name + "%' " + ") order by " + LOCATION_ID_DB + " asc"; 
+        String qend = QUERY_SEARCH_LIKE; 
+        String args[] = new String[] {name + "%"};
         qry = qbasic + TABLE_NAV + " where " + qend;
-        cursor = doQuery(qry, getMainDb());
+        cursor = doQuery(qry, args, getMainDb());
 
         try {
             if(cursor != null) {
@@ -826,11 +955,11 @@ public class DataBaseHelper  {
 
         qry = qbasic + TABLE_AIRPORTS + " where ";
         if(!mPref.shouldShowAllFacilities()) {
-            qry += TYPE_DB + "=='AIRPORT' and ";
+            qry += QUERY_AIRPORT_ONLY + " and ";
         }
         qry += qend;
 
-        cursor = doQuery(qry, getMainDb());
+        cursor = doQuery(qry, args, getMainDb());
         try {
             if(cursor != null) {
                 while(cursor.moveToNext()) {
@@ -845,7 +974,7 @@ public class DataBaseHelper  {
 
 
         qry = qbasic + TABLE_FIX + " where " + qend;
-        cursor = doQuery(qry, getMainDb());
+        cursor = doQuery(qry, args, getMainDb());
         try {
             if(cursor != null) {
                 while(cursor.moveToNext()) {
@@ -880,15 +1009,20 @@ public class DataBaseHelper  {
             types = TABLE_FIX;
         }
 
-        String qry = "select * from " + types + " where " + LOCATION_ID_DB + "=='" + name + "'";
+        String qry = selectById(types);
+        String args[];
         if(null != dbType && dbType.length() > 0) {
-            qry += " and " + TYPE_DB + "=='" + dbType + "'";
+            qry += " and " + TYPE_DB + "==?";
+            args = new String[] {name, dbType};
+        }
+        else {
+            args = new String[] {name};
         }
         // Order by type desc will cause VOR to be ahead of NDB if both are available.
         // This is a bit of a hack, but the user probably wants the VOR more than the NDB
         qry += " order by " + TYPE_DB + " desc;";
         
-        cursor = doQuery(qry, getMainDb());
+        cursor = doQuery(qry, args, getMainDb());
 
         try {
             if(cursor != null) {
@@ -1016,9 +1150,8 @@ public class DataBaseHelper  {
          * Find frequencies (ATIS, TOWER, GROUND, etc)  Not AWOS    
          */
         
-        qry = "select * from " + TABLE_AIRPORT_FREQ + " where " + LOCATION_ID_DB + "=='" + name                            
-                + "' or " + LOCATION_ID_DB + "=='K" + name + "';";
-        cursor = doQuery(qry, getMainDb());
+        args = new String[] {name, "K" + name};
+        cursor = doQuery("select * from " + TABLE_AIRPORT_FREQ + QUERY_BY_ID_OR_K, args, getMainDb());
 
         try {
             /*
@@ -1066,10 +1199,7 @@ public class DataBaseHelper  {
 		 * Get AWOS info
 		 */
 
-		qry = "select * from " + TABLE_AIRPORT_AWOS + " where "
-				+ LOCATION_ID_DB + "=='" + name + "' or " + LOCATION_ID_DB
-				+ "=='K" + name + "';";
-		cursor = doQuery(qry, getMainDb());
+		cursor = doQuery("select * from " + TABLE_AIRPORT_AWOS + QUERY_BY_ID_OR_K, args, getMainDb());
 		// 0     1    2          3  4  5    6     7     8    9    10
 		// ident,type,commstatus,lt,ln,elev,freq1,freq2,tel1,tel2,remark
 		try {
@@ -1103,9 +1233,7 @@ public class DataBaseHelper  {
          *Find runways        
          */
 
-        qry = "select * from " + TABLE_AIRPORT_RUNWAYS + " where " + LOCATION_ID_DB + "=='" + name
-                + "' or " + LOCATION_ID_DB + "=='K" + name + "';";
-        cursor = doQuery(qry, getMainDb());
+        cursor = doQuery("select * from " + TABLE_AIRPORT_RUNWAYS + QUERY_BY_ID_OR_K, args, getMainDb());
         
         try {
             /*
@@ -1249,9 +1377,8 @@ public class DataBaseHelper  {
          * Find frequencies (ATIS, TOWER, GROUND, etc)  Not AWOS    
          */
         
-        String qry = "select * from " + TABLE_AIRPORT_FREQ + " where " + LOCATION_ID_DB + "=='" + name                            
-                + "' or " + LOCATION_ID_DB + "=='K" + name + "';";
-        cursor = doQuery(qry, getMainDb());
+        String args[] = new String[] {name, "K" + name};
+        cursor = doQuery("select * from " + TABLE_AIRPORT_FREQ + QUERY_BY_ID_OR_K, args, getMainDb());
 
         try {
             /*
@@ -1291,10 +1418,7 @@ public class DataBaseHelper  {
 		 * Get AWOS info
 		 */
 
-		qry = "select * from " + TABLE_AIRPORT_AWOS + " where "
-				+ LOCATION_ID_DB + "=='" + name + "' or " + LOCATION_ID_DB
-				+ "=='K" + name + "';";
-		cursor = doQuery(qry, getMainDb());
+		cursor = doQuery("select * from " + TABLE_AIRPORT_AWOS + QUERY_BY_ID_OR_K, args, getMainDb());
 		// 0     1    2          3  4  5    6     7     8    9    10
 		// ident,type,commstatus,lt,ln,elev,freq1,freq2,tel1,tel2,remark
 		try {
@@ -1326,10 +1450,7 @@ public class DataBaseHelper  {
 		/*
 		 * Get CTAF and UNICOM info
 		 */
-		qry = "select * from " + TABLE_AIRPORTS + " where " + LOCATION_ID_DB
-				+ "=='" + name + "' or " + LOCATION_ID_DB + "=='K" + name
-				+ "';";
-		cursor = doQuery(qry, getMainDb());
+		cursor = doQuery("select * from " + TABLE_AIRPORTS + QUERY_BY_ID_OR_K, args, getMainDb());
 
 		try {
 			if (cursor != null) {
@@ -1392,9 +1513,7 @@ public class DataBaseHelper  {
          * Find frequencies (ATIS, TOWER, GROUND, etc)  Not AWOS    
          */
         
-        String qry = "select * from " + TABLE_AIRPORT_RUNWAYS + " where " + LOCATION_ID_DB + "=='" + name                            
-                + "' or " + LOCATION_ID_DB + "=='K" + name + "';";
-        cursor = doQuery(qry, getMainDb());
+        cursor = doQuery("select * from " + TABLE_AIRPORT_RUNWAYS + QUERY_BY_ID_OR_K, new String[] {name, "K" + name}, getMainDb());
 
         try {
             /*
@@ -1437,9 +1556,7 @@ public class DataBaseHelper  {
          * Find frequencies (ATIS, TOWER, GROUND, etc)  Not AWOS    
          */
         
-        String qry = "select ARPElevation from " + TABLE_AIRPORTS + " where " + LOCATION_ID_DB + "=='" + name                            
-                + "' or " + LOCATION_ID_DB + "=='K" + name + "';";
-        cursor = doQuery(qry, getMainDb());
+        cursor = doQuery("select ARPElevation from " + TABLE_AIRPORTS + QUERY_BY_ID_OR_K, new String[] {name, "K" + name}, getMainDb());
 
         try {
             /*
@@ -1492,38 +1609,21 @@ public class DataBaseHelper  {
      */
     public String findClosestAirportID(double lon, double lat) {
 
+        SpatialIndex index = getAirportIndex();
+        if(null == index) {
+            return null;
+        }
+
         /*
-         * Find with sqlite query
+         * Find in index, longitude distance corrected for latitude
          */
         double corrFactor = Math.pow(Math.cos(Math.toRadians(lat)),2);
-        String asDist = ", ((" + LONGITUDE_DB + " - " + lon + ") * (" + LONGITUDE_DB  + " - " + lon + ") * " + corrFactor + " + "
-                + " (" + LATITUDE_DB + " - " + lat + ") * (" + LATITUDE_DB + " - " + lat + ")"
-                + ") as dist";
-        String qry = "select " + LOCATION_ID_DB + asDist + " from " + TABLE_AIRPORTS;
-        if(!mPref.shouldShowAllFacilities()) {
-            qry +=  " where " + TYPE_DB + "=='AIRPORT' and ";
-        }
-        else {
-            qry += " where ";
-        }
-
-        qry += "dist < " + Preferences.MIN_TOUCH_MOVEMENT_SQ_DISTANCE + " order by dist limit 1;";
-        
-        Cursor cursor = doQuery(qry, getMainDb());
-        String ret = null;
-
-        try {
-            if(cursor != null) {
-                if(cursor.moveToFirst()) {
-                    
-                    ret = new String(cursor.getString(0));
-                }
-            }
-        }
-        catch (Exception e) {
+        int found[] = new int[1];
+        if(0 == index.find(lon, lat, corrFactor, mPref.shouldShowAllFacilities() ? 0 : FLAG_AIRPORT, 
+                Preferences.MIN_TOUCH_MOVEMENT_SQ_DISTANCE, found)) {
+            return null;
         }
-        closes(cursor);
-        return ret;
+        return index.getName(found[0]);
     }
 
     
@@ -1538,12 +1638,13 @@ public class DataBaseHelper  {
         /*
          * Find with sqlite query
          */
-        String qry = "select * from " + TABLE_SUA + " where ((";
-        qry += "(" + "lon" + " - " + lon + ") * (" + "lon"  + " - " + lon + ") + "
-                + "(" + "lat" + " - " + lat + ") * (" + "lat" + " - " + lat + ")"
-                + ") < 1);";
+        String qry = "select * from " + TABLE_SUA + " where ((" + 
+                "(lon - CAST(? AS REAL)) * (lon - CAST(? AS REAL)) + (lat - CAST(? AS REAL)) * (lat - CAST(? AS REAL))" + 
+                ") < 1);";
         
-        Cursor cursor = doQuery(qry, getMainDb());
+        String slon = Double.toString(lon);
+        String slat = Double.toString(lat);
+        Cursor cursor = doQuery(qry, new String[] {slon, slon, slat, slat}, getMainDb());
         String ret = "";
 
         try {
@@ -1614,9 +1715,7 @@ public class DataBaseHelper  {
         /*
          * Find with sqlite query
          */
-        String qry = "select * from " + table + 
-                " where " + LOCATION_ID_DB + "=='" + name + "';";
-        Cursor cursor = doQuery(qry, getMainDb());
+        Cursor cursor = doQuery(selectById(table), new String[] {name}, getMainDb());
         String ret = null;
 
         try {
@@ -1646,41 +1745,16 @@ public class DataBaseHelper  {
         /*
          * Silly that FAA gives K and P for some airports as ICAO
          */
-        String qry = "select File from " + TABLE_ALT + " where " + LOCATION_ID_DB + "==" + "'" + airportId + "'" +
-                " or " + LOCATION_ID_DB + "==" + "'K" + airportId + "'" +
-                " or " + LOCATION_ID_DB + "==" + "'P" + airportId + "'";
-        
-        Cursor cursor = doQuery(qry, getMainDb());
-
-        try {
-            if(cursor != null) {
-                if(cursor.moveToNext()) {
-                    ret2[0] = cursor.getString(0);
-                    ret[0] = ret2[0];
-                }
-            }
-        }
-        catch (Exception e) {
+        String args[] = new String[] {airportId, "K" + airportId, "P" + airportId};
+        ret2[0] = doQueryString("select File from " + TABLE_ALT + QUERY_MINIMUMS, args, getMainDb());
+        if(ret2[0] != null) {
+            ret[0] = ret2[0];
         }
-        closes(cursor);
 
-        qry = "select File from " + TABLE_TO + " where " + LOCATION_ID_DB + "==" + "'" + airportId + "'" +
-                " or " + LOCATION_ID_DB + "==" + "'K" + airportId + "'" +
-                " or " + LOCATION_ID_DB + "==" + "'P" + airportId + "'";
-        
-        cursor = doQuery(qry, getMainDb());
-
-        try {
-            if(cursor != null) {
-                if(cursor.moveToNext()) {
-                    ret2[1] = cursor.getString(0);
-                    ret[0] = ret2[1];
-                }
-            }
+        ret2[1] = doQueryString("select File from " + TABLE_TO + QUERY_MINIMUMS, args, getMainDb());
+        if(ret2[1] != null) {
+            ret[0] = ret2[1];
         }
-        catch (Exception e) {
-        }
-        closes(cursor);
 
         /*
          * Only return approp sized array
@@ -1703,23 +1777,7 @@ public class DataBaseHelper  {
      */
     public String findAFD(String airportId) {
         
-        String ret = null;
-        String qry = "select File from " + TABLE_AFD + " where " + LOCATION_ID_DB + "==" + "'" + airportId + "'";
-        
-        Cursor cursor = doQuery(qry, getMainDb());
-
-        try {
-            if(cursor != null) {
-                if(cursor.moveToNext()) {
-                    ret = cursor.getString(0);
-                }
-            }
-        }
-        catch (Exception e) {
-        }
-        closes(cursor);
-        
-        return ret;
+        return doQueryString("select File from " + TABLE_AFD + QUERY_BY_ID, new String[] {airportId}, getMainDb());
     }
 
     /**
@@ -1731,29 +1789,66 @@ public class DataBaseHelper  {
      */
     public LinkedList<Obstacle> findObstacles(double lon, double lat, int height) {
         
-        LinkedList<Obstacle> list = new LinkedList<Obstacle>();
+        int x = ObstacleCache.getX(lon);
+        int y = ObstacleCache.getY(lat);
+        
+        synchronized(mObstacleCache) {
+            mObstacleCache.reset(mPref.mapsFolder() + "/" + getMainDb(), mPool.getVersion());
+            
+            /*
+             * Load cells around us that we do not have. Only happens when we move to a new cell.
+             */
+            for(int cy = y - 1; cy <= y + 1; cy++) {
+                for(int cx = x - 1; cx <= x + 1; cx++) {
+                    if(!mObstacleCache.has(cx, cy)) {
+                        ObstacleCache.Cell cell = findObstacleCell(cx, cy);
+                        if(null != cell) {
+                            mObstacleCache.put(cell);
+                        }
+                    }
+                }
+            }
+            mObstacleCache.evict(x, y);
+            
+            return mObstacleCache.find(lon, lat, height);
+        }
+    }
+
+    /**
+     * Get all obstacles in a cell of obstacle cache
+     * @param x
+     * @param y
+     * @return null if database could not be read
+     */
+    private ObstacleCache.Cell findObstacleCell(int x, int y) {
         
-        String qry = "select * from " + TABLE_OBSTACLES + " where (Height > " + (height - (int)Obstacle.HEIGHT_BELOW) + ") and " +
-                "(" + LATITUDE_DB  + " > " + (lat - Obstacle.RADIUS) + ") and (" + LATITUDE_DB  + " < " + (lat + Obstacle.RADIUS) + ") and " +
-                "(" + LONGITUDE_DB + " > " + (lon - Obstacle.RADIUS) + ") and (" + LONGITUDE_DB + " < " + (lon + Obstacle.RADIUS) + ");";
+        String qry = "select * from " + TABLE_OBSTACLES + " where " +
+                "(" + LATITUDE_DB  + " >= CAST(? AS REAL)) and (" + LATITUDE_DB  + " < CAST(? AS REAL)) and " +
+                "(" + LONGITUDE_DB + " >= CAST(? AS REAL)) and (" + LONGITUDE_DB + " < CAST(? AS REAL));";
         /*
-         * Find obstacles at below or higher in lon/lat radius
+         * All obstacles in cell, height is checked in cache as it changes all the time
          * We ignore all obstacles 500 AGL below in our script
          */
-        Cursor cursor = doQuery(qry, getMainDb());
+        Cursor cursor = doQuery(qry, new String[] {
+                Double.toString(y * ObstacleCache.CELL), Double.toString((y + 1) * ObstacleCache.CELL),
+                Double.toString(x * ObstacleCache.CELL), Double.toString((x + 1) * ObstacleCache.CELL)}, getMainDb());
+        if(null == cursor) {
+            return null;
+        }
         
+        ObstacleCache.Cell cell = null;
         try {
-            if(cursor != null) {
-                while(cursor.moveToNext()) {
-                    list.add(new Obstacle(cursor.getFloat(1), cursor.getFloat(0), (int)cursor.getFloat(2)));
-                }
+            cell = new ObstacleCache.Cell(x, y, cursor.getCount());
+            while(cursor.moveToNext()) {
+                cell.add(cursor.getFloat(1), cursor.getFloat(0), (int)cursor.getFloat(2));
             }
         }
         catch (Exception e) {
+            cell = null;
         }
         
         closes(cursor);
-        return list;
+        return cell;
     }
 
     /**
@@ -1767,87 +1862,18 @@ public class DataBaseHelper  {
     }
 
     /**
-     * 
-     * @param statement
+     * Values for QUERY_TILE_WITHIN
+     * @param lon
+     * @param lat
+     * @param factor
      * @return
      */
-    private Cursor doQueryFiles(String statement, String name) {
-        Cursor c = null;
-        
-        String path = mPref.mapsFolder() + "/" + name;
-        if(!(new File(path).exists())) {
-            return null;
-        }
-
-        /*
-         * 
-         */
-        synchronized(mUsersFiles) {
-            if(mDataBaseFiles == null) {
-                mUsersFiles = 0;
-                try {
-                    
-                    mDataBaseFiles = SQLiteDatabase.openDatabase(path, null, SQLiteDatabase.OPEN_READONLY | 
-                            SQLiteDatabase.NO_LOCALIZED_COLLATORS);
-                }
-                catch(RuntimeException e) {
-                    mDataBaseFiles = null;
-                }
-            }
-            if(mDataBaseFiles == null) {
-                return c;
-            }
-            mUsersFiles++;
-        }
-        
-        /*
-         * In case we fail
-         */
-        
-        if(mDataBaseFiles == null) {
-            return c;
-        }
-        
-        if(!mDataBaseFiles.isOpen()) {
-            return c;
-        }
-        
-        /*
-         * Find with sqlite query
-         */
-        try {
-               c = mDataBaseFiles.rawQuery(statement, null);
-        }
-        catch (Exception e) {
-            c = null;
-        }
-
-        return c;
+    private static String[] getTileArgs(double lon, double lat, int factor) {
+        String slon = Double.toString(lon);
+        String slat = Double.toString(lat);
+        return new String[] {slat, slat, slon, slon, "%" + factor + "%"};
     }
 
-    /**
-     * Close database
-     */
-    private void closesFiles(Cursor c) {
-        if(null != c) {
-            c.close();
-        }
-
-        synchronized(mUsersFiles) {
-            mUsersFiles--;
-            if((mDataBaseFiles != null) && (mUsersFiles <= 0)) {
-                try {
-                    mDataBaseFiles.close();
-                }
-                catch (Exception e) {
-                }
-                mDataBaseFiles = null;
-                mUsersFiles = 0;
-            }
-        }
-    }
-
-    
     /**
      * Find the closets tiles to current position
      * @param lon
@@ -1859,21 +1885,13 @@ public class DataBaseHelper  {
      */
     public Tile findClosest(double lon, double lat, double offset[], double p[], int factor) {
       
-        String qry =
-                "select * from " + TABLE_FILES + " where " + 
-                "((latul - " + lat + ") > 0) and " +
-                "((latll - " + lat + ") < 0) and " + 
-                "((lonul - " + lon + ") < 0) and " + 
-                "((lonur - " + lon + ") > 0) and " +
-                "level like '%" + factor + "%';";
-        
         /*
          * In case we fail
          */
         offset[0] = 0;
         offset[1] = 0;
         
-        Cursor cursor = doQueryFiles(qry, getFilesDb());
+        Cursor cursor = doQuery(QUERY_TILE_WITHIN, getTileArgs(lon, lat, factor), getFilesDb());
         
         try {
             if(cursor != null) {
@@ -1910,7 +1928,7 @@ public class DataBaseHelper  {
         catch (Exception e) {
         }
         
-        closesFiles(cursor);
+        closes(cursor);
         return mCenterTile;        
     }
 
@@ -1921,8 +1939,8 @@ public class DataBaseHelper  {
      * @return
      */
     public Tile findTile(String name) {
-        String query = "select * from " + TABLE_FILES + " where " + TILE_NAME + "=='" + name +"'";
-        Cursor cursor = doQueryFiles(query, getFilesDb());
+        String query = "select * from " + TABLE_FILES + " where " + TILE_NAME + "==?";
+        Cursor cursor = doQuery(query, new String[] {name}, getFilesDb());
         Tile tile = null;
         try {
             if(cursor != null) {
@@ -1954,7 +1972,7 @@ public class DataBaseHelper  {
         catch (Exception e) {
         }
         
-        closesFiles(cursor);
+        closes(cursor);
         return tile;            
 
     }
@@ -1968,88 +1986,6 @@ public class DataBaseHelper  {
         return "weather.db";
     }
 
-    /**
-     * 
-     * @param statement
-     * @return
-     */
-    private Cursor doQueryWeather(String statement, String name) {
-        Cursor c = null;
-        
-        String path = mPref.mapsFolder() + "/" + name;
-        if(!(new File(path).exists())) {
-            return null;
-        }
-
-        /*
-         * 
-         */
-        synchronized(mUsersWeather) {
-            if(mDataBaseWeather == null) {
-                mUsersWeather = 0;
-                try {
-                    
-                    mDataBaseWeather = SQLiteDatabase.openDatabase(path, null, SQLiteDatabase.OPEN_READONLY | 
-                            SQLiteDatabase.NO_LOCALIZED_COLLATORS);
-                }
-                catch(RuntimeException e) {
-                    mDataBaseWeather = null;
-                }
-            }
-            if(mDataBaseWeather == null) {
-                return c;
-            }
-            mUsersWeather++;
-        }
-        
-        /*
-         * In case we fail
-         */
-        
-        if(mDataBaseWeather == null) {
-            return c;
-        }
-        
-        if(!mDataBaseWeather.isOpen()) {
-            return c;
-        }
-        
-        /*
-         * Find with sqlite query
-         */
-        try {
-               c = mDataBaseWeather.rawQuery(statement, null);
-        }
-        catch (Exception e) {
-            c = null;
-        }
-
-        return c;
-    }
-
-    /**
-     * Close database
-     */
-    private void closesWeather(Cursor c) {
-        if(null != c) {
-            c.close();
-        }
-
-        synchronized(mUsersWeather) {
-            mUsersWeather--;
-            if((mDataBaseWeather != null) && (mUsersWeather <= 0)) {
-                try {
-                    mDataBaseWeather.close();
-                }
-                catch (Exception e) {
-                }
-                mDataBaseWeather = null;
-                mUsersWeather = 0;
-            }
-        }
-    }
-
-
     /**
      * 
      * @param station
@@ -2058,10 +1994,7 @@ public class DataBaseHelper  {
     public Taf getTAF(String station) {
       
         Taf taf = null;
-        String qry =
-                "select * from tafs where station_id='K" + station + "';";
-        
-        Cursor cursor = doQueryWeather(qry, getWeatherDb());
+        Cursor cursor = doQuery("select * from tafs where station_id=?;", new String[] {"K" + station}, getWeatherDb());
         
         try {
             if(cursor != null) {
@@ -2077,7 +2010,7 @@ public class DataBaseHelper  {
         catch (Exception e) {
         }
         
-        closesWeather(cursor);
+        closes(cursor);
         return taf;        
     }
 
@@ -2089,10 +2022,7 @@ public class DataBaseHelper  {
     public Metar getMETAR(String station) {
       
         Metar metar = null;
-        String qry =
-                "select * from metars where station_id='K" + station + "';";
-        
-        Cursor cursor = doQueryWeather(qry, getWeatherDb());
+        Cursor cursor = doQuery("select * from metars where station_id=?;", new String[] {"K" + station}, getWeatherDb());
         
         try {
             if(cursor != null) {
@@ -2103,13 +2033,14 @@ public class DataBaseHelper  {
                     metar.time = cursor.getString(1);
                     metar.stationId = cursor.getString(2);
                     metar.flightCategory = cursor.getString(3);
+                    metar.parse();
                 }
             }
         }
         catch (Exception e) {
         }
         
-        closesWeather(cursor);
+        closes(cursor);
         return metar;        
     }
 
@@ -2123,12 +2054,17 @@ public class DataBaseHelper  {
     public WindsAloft getWindsAloft(double lon, double lat) {
       
         WindsAloft wa = null;
-        String qry =
-                "select * from wa order by " +
-                "((longitude - " + lon + ")*" + "(longitude - " + lon + ") + " +    
-                "(latitude - " + lat + ")*" + "(latitude - " + lat + ")) limit 1;";
+        SpatialIndex index = getWindsIndex();
+        if(null == index) {
+            return null;
+        }
+        int found[] = new int[1];
+        if(0 == index.find(lon, lat, 1, 0, Double.MAX_VALUE, found)) {
+            return null;
+        }
 
-        Cursor cursor = doQueryWeather(qry, getWeatherDb());
+        Cursor cursor = doQuery("select * from wa where rowid=CAST(? AS INTEGER);", 
+                new String[] {Integer.toString(index.getKey(found[0]))}, getWeatherDb());
         
         try {
             if(cursor != null) {
@@ -2154,7 +2090,7 @@ public class DataBaseHelper  {
         catch (Exception e) {
         }
         
-        closesWeather(cursor);
+        closes(cursor);
         return wa;        
     }
 
@@ -2173,10 +2109,12 @@ public class DataBaseHelper  {
         
         String qry =
                 "select * from apirep where " +                
-                "(" + "latitude"  + " > " + (lat - Airep.RADIUS) + ") and (" + "latitude"  + " < " + (lat + Airep.RADIUS) + ") and " +
-                "(" + "longitude" + " > " + (lon - Airep.RADIUS) + ") and (" + "longitude" + " < " + (lon + Airep.RADIUS) + ");";
+                "(latitude > CAST(? AS REAL)) and (latitude < CAST(? AS REAL)) and " +
+                "(longitude > CAST(? AS REAL)) and (longitude < CAST(? AS REAL));";
      
-        Cursor cursor = doQueryWeather(qry, getWeatherDb());
+        Cursor cursor = doQuery(qry, new String[] {
+                Double.toString(lat - Airep.RADIUS), Double.toString(lat + Airep.RADIUS),
+                Double.toString(lon - Airep.RADIUS), Double.toString(lon + Airep.RADIUS)}, getWeatherDb());
         
         try {
             if(cursor != null) {
@@ -2194,7 +2132,7 @@ public class DataBaseHelper  {
         catch (Exception e) {
         }
         
-        closesWeather(cursor);
+        closes(cursor);
         return airep;
     }
 
@@ -2214,7 +2152,7 @@ public class DataBaseHelper  {
         String qry =
                 "select * from airsig"; 
      
-        Cursor cursor = doQueryWeather(qry, getWeatherDb());
+        Cursor cursor = doQuery(qry, null, getWeatherDb());
         
         try {
             if(cursor != null) {
@@ -2238,91 +2176,11 @@ public class DataBaseHelper  {
         catch (Exception e) {
         }
         
-        closesWeather(cursor);
+        closes(cursor);
         return airsig;
     }
     
     
-    /**
-     * 
-     * @param statement
-     * @return
-     */
-    private Cursor doQueryElev(String statement, String name) {
-        Cursor c = null;
-        
-        String path = mPref.mapsFolder() + "/" + name;
-        if(!(new File(path).exists())) {
-            return null;
-        }
-
-        /*
-         * 
-         */
-        synchronized(mUsersElev) {
-            if(mDataBaseElev == null) {
-                mUsersElev = 0;
-                try {
-                    
-                    mDataBaseElev = SQLiteDatabase.openDatabase(path, null, SQLiteDatabase.OPEN_READONLY | 
-                            SQLiteDatabase.NO_LOCALIZED_COLLATORS);
-                }
-                catch(RuntimeException e) {
-                    mDataBaseElev = null;
-                }
-            }
-            if(mDataBaseElev == null) {
-                return c;
-            }
-            mUsersElev++;
-        }
-        
-        /*
-         * In case we fail
-         */
-        
-        if(mDataBaseElev == null) {
-            return c;
-        }
-        
-        if(!mDataBaseElev.isOpen()) {
-            return c;
-        }
-        
-        /*
-         * Find with sqlite query
-         */
-        try {
-               c = mDataBaseElev.rawQuery(statement, null);
-        }
-        catch (Exception e) {
-            c = null;
-        }
-
-        return c;
-    }
-
-    /**
-     * Close database
-     */
-    private void closesElev(Cursor c) {
-        if(null != c) {
-            c.close();
-        }
-
-        synchronized(mUsersElev) {
-            mUsersElev--;
-            if((mDataBaseElev != null) && (mUsersElev <= 0)) {
-                try {
-                    mDataBaseElev.close();
-                }
-                catch (Exception e) {
-                }
-                mDataBaseElev = null;
-                mUsersElev = 0;
-            }
-        }
-    }
 
     /**
      * Find the closets tiles to current position
@@ -2335,16 +2193,9 @@ public class DataBaseHelper  {
      */
     public Tile findElevTile(double lon, double lat, double offset[], double p[], int factor) {
       
-        String qry =
-                "select * from " + TABLE_FILES + " where " + 
-                "((latul - " + lat + ") > 0) and " +
-                "((latll - " + lat + ") < 0) and " + 
-                "((lonul - " + lon + ") < 0) and " + 
-                "((lonur - " + lon + ") > 0) and " +
-                "level like '%" + factor + "%';"; /* Get highest level tile for elev */
-        
         Tile t = null;
-        Cursor cursor = doQueryElev(qry, "maps.elv.db");
+        /* Get highest level tile for elev */
+        Cursor cursor = doQuery(QUERY_TILE_WITHIN, getTileArgs(lon, lat, factor), "maps.elv.db");
         
         try {
             if(cursor != null) {
@@ -2380,93 +2231,10 @@ public class DataBaseHelper  {
         catch (Exception e) {
         }
         
-        closesElev(cursor);
+        closes(cursor);
         return t;        
     }
 
-
-    /**
-     * 
-     * @param statement
-     * @return
-     */
-    private Cursor doQueryPlates(String statement, String name) {
-        Cursor c = null;
-        
-        String path = mPref.mapsFolder() + "/" + name;
-        if(!(new File(path).exists())) {
-            return null;
-        }
-
-        /*
-         * 
-         */
-        synchronized(mUsersPlates) {
-            if(mDataBasePlates == null) {
-                mUsersPlates = 0;
-                try {
-                    
-                    mDataBasePlates = SQLiteDatabase.openDatabase(path, null, SQLiteDatabase.OPEN_READONLY | 
-                            SQLiteDatabase.NO_LOCALIZED_COLLATORS);
-                }
-                catch(RuntimeException e) {
-                    mDataBasePlates = null;
-                }
-            }
-            if(mDataBasePlates == null) {
-                return c;
-            }
-            mUsersPlates++;
-        }
-        
-        /*
-         * In case we fail
-         */
-        
-        if(mDataBasePlates == null) {
-            return c;
-        }
-        
-        if(!mDataBasePlates.isOpen()) {
-            return c;
-        }
-        
-        /*
-         * Find with sqlite query
-         */
-        try {
-               c = mDataBasePlates.rawQuery(statement, null);
-        }
-        catch (Exception e) {
-            c = null;
-        }
-
-        return c;
-    }
-
-    /**
-     * Close database
-     */
-    private void closesPlates(Cursor c) {
-        if(null != c) {
-            c.close();
-        }
-
-        synchronized(mUsersPlates) {
-            mUsersPlates--;
-            if((mDataBasePlates != null) && (mUsersPlates <= 0)) {
-                try {
-                    mDataBasePlates.close();
-                }
-                catch (Exception e) {
-                }
-                mDataBasePlates = null;
-                mUsersPlates = 0;
-            }
-        }
-    }
-
-    
     /**
      * 
      * @param name
@@ -2477,9 +2245,9 @@ public class DataBaseHelper  {
         HashMap<String, float[]> ret = new HashMap<String, float[]>();
         
         String qry =
-                "select * from VisionFix" + " where AirportID='" + name + "';";
+                "select * from VisionFix where AirportID=?;";
         
-        Cursor cursor = doQueryPlates(qry, "geoplates.db");
+        Cursor cursor = doQuery(qry, new String[] {name}, "geoplates.db");
         
         try {
             if(cursor != null) {
@@ -2522,7 +2290,7 @@ public class DataBaseHelper  {
         catch (Exception e) {
         }
         
-        closesPlates(cursor);
+        closes(cursor);
         
         if(ret.size() > 0) {
             return ret;      
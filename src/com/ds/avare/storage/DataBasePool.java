@@ -0,0 +1,281 @@
+/*
+Copyright (c) 2012, Apps4Av Inc. (apps4av.com) 
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+    *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+    *
+    *     THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package com.ds.avare.storage;
+
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+/**
+ * @author zkhan
+ * Keeps read only databases open for the life of the service.
+ * Each thread gets its own connection per database file so readers never wait on each other.
+ * Connections are only re-opened when reopen() is called, e.g. when a download installs new databases.
+ */
+public class DataBasePool {
+
+    /**
+     * One open database for one thread
+     */
+    private static class Connection {
+        SQLiteDatabase mDataBase;
+        int mVersion;
+        WeakReference<Thread> mThread;
+        /*
+         * Compiled statements keyed by query shape
+         */
+        HashMap<String, SQLiteStatement> mStatements = new HashMap<String, SQLiteStatement>();
+
+        /**
+         * Close statements then database
+         */
+        void close() {
+            for(SQLiteStatement s : mStatements.values()) {
+                try {
+                    s.close();
+                }
+                catch (Exception e) {
+                }
+            }
+            mStatements.clear();
+            try {
+                mDataBase.close();
+            }
+            catch (Exception e) {
+            }
+        }
+    }
+
+    /*
+     * All connections of all threads, so they can be closed
+     */
+    private LinkedList<Connection> mConnections;
+
+    /*
+     * Path -> connection for calling thread
+     */
+    private ThreadLocal<HashMap<String, Connection>> mLocal;
+
+    /*
+     * Number of cursors calling thread has not closed yet.
+     * Connection of a thread is never re-opened while it has cursors out.
+     */
+    private ThreadLocal<int[]> mBusy;
+
+    /*
+     * Bumped every time databases change on disk
+     */
+    private int mVersion;
+
+    /*
+     * Counters to watch churn
+     */
+    private int mOpens;
+    private int mReopens;
+
+    /**
+     * 
+     */
+    public DataBasePool() {
+        mConnections = new LinkedList<Connection>();
+        mLocal = new ThreadLocal<HashMap<String, Connection>>() {
+            @Override
+            protected HashMap<String, Connection> initialValue() {
+                return new HashMap<String, Connection>();
+            }
+        };
+        mBusy = new ThreadLocal<int[]>() {
+            @Override
+            protected int[] initialValue() {
+                return new int[1];
+            }
+        };
+        mVersion = 0;
+        mOpens = 0;
+        mReopens = 0;
+    }
+
+    /**
+     * Get the database at path for calling thread. Must be followed by release()
+     * @param path
+     * @return null if database could not be opened
+     */
+    public SQLiteDatabase acquire(String path) {
+        HashMap<String, Connection> local = mLocal.get();
+        int busy[] = mBusy.get();
+        int version;
+        synchronized(this) {
+            version = mVersion;
+        }
+
+        Connection c = local.get(path);
+        boolean reopen = false;
+        if(null != c) {
+            if(c.mVersion != version && busy[0] == 0) {
+                /*
+                 * Databases changed since we opened this one
+                 */
+                local.remove(path);
+                remove(c);
+                c = null;
+                reopen = true;
+            }
+            else if(!c.mDataBase.isOpen()) {
+                local.remove(path);
+                remove(c);
+                c = null;
+            }
+        }
+
+        if(null == c) {
+            c = new Connection();
+            try {
+                c.mDataBase = SQLiteDatabase.openDatabase(path, null, SQLiteDatabase.OPEN_READONLY | 
+                        SQLiteDatabase.NO_LOCALIZED_COLLATORS);
+            }
+            catch(RuntimeException e) {
+                return null;
+            }
+            c.mVersion = version;
+            c.mThread = new WeakReference<Thread>(Thread.currentThread());
+            local.put(path, c);
+            synchronized(this) {
+                sweep();
+                mConnections.add(c);
+                mOpens++;
+                if(reopen) {
+                    mReopens++;
+                }
+            }
+        }
+
+        busy[0]++;
+        return c.mDataBase;
+    }
+
+    /**
+     * Get a compiled statement for query shape sql on database at path for calling thread.
+     * Statement is compiled once per connection and reused. Must be followed by release()
+     * @param path
+     * @param sql Query with ? in place of values
+     * @return null if database could not be opened or sql is invalid
+     */
+    public SQLiteStatement compile(String path, String sql) {
+        if(null == acquire(path)) {
+            return null;
+        }
+        Connection c = mLocal.get().get(path);
+        SQLiteStatement s = c.mStatements.get(sql);
+        if(null == s) {
+            try {
+                s = c.mDataBase.compileStatement(sql);
+            }
+            catch (Exception e) {
+                release();
+                return null;
+            }
+            c.mStatements.put(sql, s);
+        }
+        s.clearBindings();
+        return s;
+    }
+
+    /**
+     * Done with database obtained from acquire()
+     */
+    public void release() {
+        int busy[] = mBusy.get();
+        if(busy[0] > 0) {
+            busy[0]--;
+        }
+    }
+
+    /**
+     * Databases have changed on disk. Each thread re-opens on its next query.
+     */
+    public synchronized void reopen() {
+        mVersion++;
+    }
+
+    /**
+     * Close all connections. Only call when no one is querying, like service exit.
+     */
+    public synchronized void close() {
+        for(Connection c : mConnections) {
+            c.close();
+        }
+        mConnections.clear();
+        mVersion++;
+    }
+
+    /**
+     * 
+     * @return Changes every time databases are re-opened
+     */
+    public synchronized int getVersion() {
+        return mVersion;
+    }
+
+    /**
+     * 
+     * @return Number of times a database was opened
+     */
+    public synchronized int getOpenCount() {
+        return mOpens;
+    }
+
+    /**
+     * 
+     * @return Number of times a database was opened again because it changed
+     */
+    public synchronized int getReopenCount() {
+        return mReopens;
+    }
+
+    /**
+     * 
+     * @return Connections open right now
+     */
+    public synchronized int getConnectionCount() {
+        return mConnections.size();
+    }
+
+    /**
+     * Close a connection of calling thread
+     * @param c
+     */
+    private void remove(Connection c) {
+        synchronized(this) {
+            mConnections.remove(c);
+        }
+        c.close();
+    }
+
+    /**
+     * Close connections of threads that have exited. Call with lock held.
+     */
+    private void sweep() {
+        Iterator<Connection> it = mConnections.iterator();
+        while(it.hasNext()) {
+            Connection c = it.next();
+            Thread t = c.mThread.get();
+            if(null == t || !t.isAlive()) {
+                c.close();
+                it.remove();
+            }
+        }
+    }
+}
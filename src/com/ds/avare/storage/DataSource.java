@@ -57,6 +57,44 @@ public class DataSource {
     public boolean isPresent() {
         return(dbHelper.isPresent());
     }
+
+    /**
+     * Call when databases have been downloaded or deleted
+     */
+    public void reopen() {
+        dbHelper.reopen();
+    }
+
+    /**
+     * Call when done with all databases
+     */
+    public void close() {
+        dbHelper.close();
+    }
+
+    /**
+     * 
+     * @return Number of times databases were opened
+     */
+    public int getOpenCount() {
+        return dbHelper.getOpenCount();
+    }
+
+    /**
+     * 
+     * @return Number of times databases were re-opened due to new version
+     */
+    public int getReopenCount() {
+        return dbHelper.getReopenCount();
+    }
+
+    /**
+     * 
+     * @return Number of database connections open now
+     */
+    public int getConnectionCount() {
+        return dbHelper.getConnectionCount();
+    }
     
     /**
      * @param lon
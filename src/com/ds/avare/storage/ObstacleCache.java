@@ -0,0 +1,196 @@
+/*
+Copyright (c) 2012, Apps4Av Inc. (apps4av.com) 
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+    *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+    *
+    *     THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package com.ds.avare.storage;
+
+import java.util.LinkedList;
+
+import com.ds.avare.place.Obstacle;
+
+import android.util.SparseArray;
+
+/**
+ * @author zkhan
+ * Obstacles of grid cells around us, so we only go to the database when we move to a new cell.
+ * Height filter is done here as it changes with every altitude change.
+ */
+public class ObstacleCache {
+
+    /*
+     * Cell size in degrees, bigger than obstacle search box so 3x3 cells always cover it
+     */
+    public static final double CELL = 0.5;
+    
+    /*
+     * Keep cells this many cells away so going back and forth on a cell edge does not reload
+     */
+    private static final int KEEP = 2;
+
+    /**
+     * Obstacles of one cell
+     */
+    public static class Cell {
+        private int mX;
+        private int mY;
+        private float mLon[];
+        private float mLat[];
+        private int mHeight[];
+        private int mCount;
+
+        /**
+         * 
+         * @param x
+         * @param y
+         * @param size
+         */
+        public Cell(int x, int y, int size) {
+            mX = x;
+            mY = y;
+            mLon = new float[size];
+            mLat = new float[size];
+            mHeight = new int[size];
+            mCount = 0;
+        }
+
+        /**
+         * 
+         * @param lon
+         * @param lat
+         * @param height
+         */
+        public void add(float lon, float lat, int height) {
+            if(mCount >= mLon.length) {
+                return;
+            }
+            mLon[mCount] = lon;
+            mLat[mCount] = lat;
+            mHeight[mCount] = height;
+            mCount++;
+        }
+    }
+
+    private SparseArray<Cell> mCells;
+    private String mPath;
+    private int mVersion;
+
+    /**
+     * 
+     */
+    public ObstacleCache() {
+        mCells = new SparseArray<Cell>();
+        mPath = "";
+        mVersion = -1;
+    }
+
+    /**
+     * Drop everything if database changed
+     * @param path
+     * @param version
+     */
+    public void reset(String path, int version) {
+        if(mVersion != version || !mPath.equals(path)) {
+            mCells.clear();
+            mPath = path;
+            mVersion = version;
+        }
+    }
+
+    /**
+     * 
+     * @param lon
+     * @return
+     */
+    public static int getX(double lon) {
+        return (int)Math.floor(lon / CELL);
+    }
+
+    /**
+     * 
+     * @param lat
+     * @return
+     */
+    public static int getY(double lat) {
+        return (int)Math.floor(lat / CELL);
+    }
+
+    /**
+     * 
+     */
+    private static int getKey(int x, int y) {
+        return (y + 512) * 1024 + (x + 512);
+    }
+
+    /**
+     * 
+     * @param x
+     * @param y
+     * @return
+     */
+    public boolean has(int x, int y) {
+        return mCells.get(getKey(x, y)) != null;
+    }
+
+    /**
+     * 
+     * @param cell
+     */
+    public void put(Cell cell) {
+        mCells.put(getKey(cell.mX, cell.mY), cell);
+    }
+
+    /**
+     * Remove cells far from cell x, y
+     * @param x
+     * @param y
+     */
+    public void evict(int x, int y) {
+        for(int i = mCells.size() - 1; i >= 0; i--) {
+            Cell c = mCells.valueAt(i);
+            if(Math.abs(c.mX - x) > KEEP || Math.abs(c.mY - y) > KEEP) {
+                mCells.removeAt(i);
+            }
+        }
+    }
+
+    /**
+     * Find obstacles in Obstacle.RADIUS box around lon/lat that are higher than Obstacle.HEIGHT_BELOW below height
+     * @param lon
+     * @param lat
+     * @param height
+     * @return
+     */
+    public LinkedList<Obstacle> find(double lon, double lat, int height) {
+        LinkedList<Obstacle> list = new LinkedList<Obstacle>();
+        int above = height - (int)Obstacle.HEIGHT_BELOW;
+        double top = lat + Obstacle.RADIUS;
+        double bottom = lat - Obstacle.RADIUS;
+        double left = lon - Obstacle.RADIUS;
+        double right = lon + Obstacle.RADIUS;
+        
+        for(int y = getY(bottom); y <= getY(top); y++) {
+            for(int x = getX(left); x <= getX(right); x++) {
+                Cell c = mCells.get(getKey(x, y));
+                if(null == c) {
+                    continue;
+                }
+                for(int i = 0; i < c.mCount; i++) {
+                    if(c.mHeight[i] <= above) {
+                        continue;
+                    }
+                    if(c.mLat[i] > bottom && c.mLat[i] < top && c.mLon[i] > left && c.mLon[i] < right) {
+                        list.add(new Obstacle(c.mLon[i], c.mLat[i], c.mHeight[i]));
+                    }
+                }
+            }
+        }
+        return list;
+    }
+}
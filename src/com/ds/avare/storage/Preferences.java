@@ -78,6 +78,14 @@ public class Preferences {
     public static final int MEM_16_X = 3;
     public static final int MEM_16_Y = 3;
     
+    /*
+     * Decoded tiles kept beyond the visible ones
+     */
+    public static final int MEM_128_CACHE = 16;
+    public static final int MEM_64_CACHE = 12;
+    public static final int MEM_32_CACHE = 4;
+    public static final int MEM_16_CACHE = 0;
+    
     /**
      * Preferences
      */
@@ -339,6 +347,28 @@ public class Preferences {
         return ret;  
     }
 
+    /**
+     * 
+     * @return
+     */
+    public int getTilesCacheNumber() {
+        /*
+         * Find how many tiles over the visible ones this system can cache.
+         */
+        long mem = Runtime.getRuntime().maxMemory();
+
+        if(mem >= MEM_128) {
+            return MEM_128_CACHE;
+        }
+        else if(mem >= MEM_64) {
+            return MEM_64_CACHE;
+        }
+        else if(mem >= MEM_32) {
+            return MEM_32_CACHE;
+        }
+        return MEM_16_CACHE;
+    }
+
     /**
      * 
      * @return
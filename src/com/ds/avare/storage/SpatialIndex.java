@@ -0,0 +1,256 @@
+/*
+Copyright (c) 2012, Apps4Av Inc. (apps4av.com) 
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+    *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+    *
+    *     THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package com.ds.avare.storage;
+
+/**
+ * @author zkhan
+ * In memory grid of points on lon/lat, built once from a table.
+ * Answers nearest queries by looking at grid cells in rings around a point, 
+ * instead of computing distance to every row of the table.
+ * Distances are squared degrees, same as our sqlite queries, and equal distances are 
+ * ordered by the order points were added in, so results match the table queries.
+ */
+public class SpatialIndex {
+
+    /*
+     * 1 degree cells
+     */
+    private static final int COLS = 360;
+    private static final int ROWS = 180;
+
+    private double mLon[];
+    private double mLat[];
+    private int mFlags[];
+    private int mKeys[];
+    private String mNames[];
+    private int mCount;
+
+    /*
+     * Point indices sorted by cell, and where each cell starts in it
+     */
+    private int mOrder[];
+    private int mCellStart[];
+
+    /*
+     * What this index was built from
+     */
+    private String mPath;
+    private int mVersion;
+
+    /**
+     * 
+     * @param size Number of points
+     * @param path Database this is built from
+     * @param version Version of database
+     */
+    public SpatialIndex(int size, String path, int version) {
+        mLon = new double[size];
+        mLat = new double[size];
+        mFlags = new int[size];
+        mKeys = new int[size];
+        mNames = new String[size];
+        mCount = 0;
+        mPath = path;
+        mVersion = version;
+    }
+
+    /**
+     * Is this index built from this version of database
+     * @param path
+     * @param version
+     * @return
+     */
+    public boolean isFor(String path, int version) {
+        return mVersion == version && mPath.equals(path);
+    }
+
+    /**
+     * Add a point. Call build() after all are added
+     * @param lon
+     * @param lat
+     * @param flags To filter on in find
+     * @param key Like a rowid
+     * @param name Like a location ID
+     */
+    public void add(double lon, double lat, int flags, int key, String name) {
+        if(mCount >= mLon.length) {
+            return;
+        }
+        mLon[mCount] = lon;
+        mLat[mCount] = lat;
+        mFlags[mCount] = flags;
+        mKeys[mCount] = key;
+        mNames[mCount] = name;
+        mCount++;
+    }
+
+    /**
+     * Sort points in cells
+     */
+    public void build() {
+        mCellStart = new int[COLS * ROWS + 1];
+        mOrder = new int[mCount];
+        
+        /*
+         * Counting sort keeps points in same cell in order added
+         */
+        for(int i = 0; i < mCount; i++) {
+            mCellStart[cell(mLon[i], mLat[i]) + 1]++;
+        }
+        for(int c = 0; c < COLS * ROWS; c++) {
+            mCellStart[c + 1] += mCellStart[c];
+        }
+        int next[] = new int[COLS * ROWS];
+        System.arraycopy(mCellStart, 0, next, 0, COLS * ROWS);
+        for(int i = 0; i < mCount; i++) {
+            mOrder[next[cell(mLon[i], mLat[i])]++] = i;
+        }
+    }
+
+    /**
+     * 
+     * @param index From find
+     * @return
+     */
+    public int getKey(int index) {
+        return mKeys[index];
+    }
+
+    /**
+     * 
+     * @param index From find
+     * @return
+     */
+    public String getName(int index) {
+        return mNames[index];
+    }
+
+    /**
+     * Find points closest to lon/lat, sorted nearest first.
+     * Distance is (dlon * dlon * weight + dlat * dlat).
+     * @param lon
+     * @param lat
+     * @param weight Weight of longitude difference, 1 for plain squared degrees
+     * @param flags Only points that have all these flags set, 0 for all
+     * @param maxDistance Only points closer than this
+     * @param out Indices of points found, its length is how many to find
+     * @return Number of points found
+     */
+    public int find(double lon, double lat, double weight, int flags, double maxDistance, int out[]) {
+        int max = out.length;
+        if(0 == max || null == mOrder) {
+            return 0;
+        }
+        double dist[] = new double[max];
+        int found = 0;
+        
+        int cx = col(lon);
+        int cy = row(lat);
+        
+        for(int r = 0; ; r++) {
+            
+            int y0 = cy - r;
+            int y1 = cy + r;
+            int x0 = cx - r;
+            int x1 = cx + r;
+            if(y0 < 0 && y1 >= ROWS && x0 < 0 && x1 >= COLS) {
+                /*
+                 * Looked everywhere
+                 */
+                break;
+            }
+            
+            /*
+             * Look in cells on ring r only, inside was done before
+             */
+            for(int y = Math.max(y0, 0); y <= Math.min(y1, ROWS - 1); y++) {
+                int step = (y == y0 || y == y1) ? 1 : (x1 - x0);
+                for(int x = x0; x <= x1; x += Math.max(step, 1)) {
+                    if(x < 0 || x >= COLS) {
+                        continue;
+                    }
+                    int c = y * COLS + x;
+                    for(int o = mCellStart[c]; o < mCellStart[c + 1]; o++) {
+                        int i = mOrder[o];
+                        if((mFlags[i] & flags) != flags) {
+                            continue;
+                        }
+                        double dx = mLon[i] - lon;
+                        double dy = mLat[i] - lat;
+                        double d = dx * dx * weight + dy * dy;
+                        if(!(d < maxDistance)) {
+                            continue;
+                        }
+                        if(found == max && !less(d, i, dist[max - 1], out[max - 1])) {
+                            continue;
+                        }
+                        
+                        /*
+                         * Insert in sorted place
+                         */
+                        int pos = found < max ? found++ : max - 1;
+                        while(pos > 0 && less(d, i, dist[pos - 1], out[pos - 1])) {
+                            dist[pos] = dist[pos - 1];
+                            out[pos] = out[pos - 1];
+                            pos--;
+                        }
+                        dist[pos] = d;
+                        out[pos] = i;
+                    }
+                }
+            }
+            
+            /*
+             * Any point not looked at yet is at least this far
+             */
+            double ex = Math.max(0, Math.min(lon - (x0 - 180), (x1 + 1 - 180) - lon));
+            double ey = Math.max(0, Math.min(lat - (y0 - 90), (y1 + 1 - 90) - lat));
+            double bound = Math.min(ex * ex * weight, ey * ey);
+            if(bound >= maxDistance) {
+                break;
+            }
+            if(found == max && dist[max - 1] < bound) {
+                break;
+            }
+        }
+        
+        return found;
+    }
+
+    /**
+     * Order by distance, then by order added
+     */
+    private static boolean less(double d1, int i1, double d2, int i2) {
+        return d1 < d2 || (d1 == d2 && i1 < i2);
+    }
+
+    /**
+     * 
+     */
+    private static int col(double lon) {
+        return Math.max(0, Math.min(COLS - 1, (int)Math.floor(lon + 180)));
+    }
+
+    /**
+     * 
+     */
+    private static int row(double lat) {
+        return Math.max(0, Math.min(ROWS - 1, (int)Math.floor(lat + 90)));
+    }
+
+    /**
+     * 
+     */
+    private static int cell(double lon, double lat) {
+        return row(lat) * COLS + col(lon);
+    }
+}
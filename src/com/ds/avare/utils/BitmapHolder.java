@@ -13,6 +13,8 @@ Redistribution and use in source and binary forms, with or without modification,
 package com.ds.avare.utils;
 
 import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import com.ds.avare.storage.Preferences;
 
@@ -21,6 +23,7 @@ import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
 import android.graphics.Matrix;
+import android.os.Build;
 
 /**
  * @author zkhan
@@ -66,6 +69,25 @@ public class BitmapHolder {
      */
     private Matrix mTransform = new Matrix();
 
+    /**
+     * Tile file -> width, height, most recently used last
+     */
+    private static final int MAX_TILE_OPTIONS = 2048;
+    private static final LinkedHashMap<String, int[]> mTileOptions = 
+            new LinkedHashMap<String, int[]>(64, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, int[]> eldest) {
+            return size() > MAX_TILE_OPTIONS;
+        }
+    };
+
+    /**
+     * Options to decode a file in this bitmap, reused
+     */
+    private BitmapFactory.Options mDecodeOptions = null;
+
     /**
      * 
      */
@@ -134,6 +156,79 @@ public class BitmapHolder {
         mCanvas.drawBitmap(b.getBitmap(), mTransform, null);
     }
 
+    /**
+     * Decode a tile file straight into this bitmap without allocating another bitmap.
+     * Needs Honeycomb and a tile of the same size and config as this bitmap.
+     * 
+     * @param pref
+     * @param name
+     * @return false if not decoded, then caller should decode and draw in this bitmap
+     */
+    public boolean decodeInBitmap(Preferences pref, String name) {
+        if(Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+            return false;
+        }
+        if((null == mBitmap) || (null == name) || (!mBitmap.isMutable())) {
+            return false;
+        }
+        String file = pref.mapsFolder() + "/" + name;
+        if(!(new File(file)).exists()) {
+            return false;
+        }
+        if(null == mDecodeOptions) {
+            mDecodeOptions = new BitmapFactory.Options();
+            mDecodeOptions.inPreferredConfig = Bitmap.Config.RGB_565;
+            mDecodeOptions.inSampleSize = 1;
+            mDecodeOptions.inMutable = true;
+            mDecodeOptions.inTempStorage = new byte[16 * 1024];
+        }
+        mDecodeOptions.inBitmap = mBitmap;
+        
+        Bitmap b = null;
+        try {
+            b = BitmapFactory.decodeFile(file, mDecodeOptions);
+        }
+        catch(IllegalArgumentException e) {
+            /*
+             * Size or config does not match
+             */
+        }
+        catch(OutOfMemoryError e) {
+        }
+        mDecodeOptions.inBitmap = null;
+        
+        if(b != mBitmap || mBitmap.getWidth() != mWidth || mBitmap.getHeight() != mHeight
+                || mBitmap.getConfig() != Bitmap.Config.RGB_565) {
+            if(null != b && b != mBitmap) {
+                b.recycle();
+            }
+            if(mBitmap.getWidth() != mWidth || mBitmap.getHeight() != mHeight
+                    || mBitmap.getConfig() != Bitmap.Config.RGB_565) {
+                /*
+                 * Newer decoders may have reconfigured this bitmap to a smaller tile, make a new one
+                 */
+                mBitmap.recycle();
+                try {
+                    mBitmap = Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.RGB_565);
+                    mBitmap.setDensity(Bitmap.DENSITY_NONE);
+                    mWidth = mBitmap.getWidth();
+                    mHeight = mBitmap.getHeight();
+                    mCanvas = new Canvas(mBitmap);
+                }
+                catch(OutOfMemoryError e) {
+                    mBitmap = null;
+                    mCanvas = null;
+                    mWidth = 0;
+                    mHeight = 0;
+                }
+            }
+            return false;
+        }
+        mBitmap.setDensity(Bitmap.DENSITY_NONE);
+        mName = name;
+        return true;
+    }
+
     /**
      * 
      * @param pref
@@ -142,25 +237,52 @@ public class BitmapHolder {
      */
     public static void getTileOptions(String name, Preferences pref, int opts[]) {
         
-        if(!(new File(pref.mapsFolder() + "/" + name)).exists()) {
+        String file = pref.mapsFolder() + "/" + name;
+
+        /*
+         * Tile lookups happen many times for same tiles, only look at the file once
+         */
+        synchronized(mTileOptions) {
+            int dims[] = mTileOptions.get(file);
+            if(null != dims) {
+                opts[0] = dims[0];
+                opts[1] = dims[1];
+                return;
+            }
+        }
+
+        if(!(new File(file)).exists()) {
             opts[0] = WIDTH;
             opts[1] = HEIGHT;
-            return;
+        }
+        else {
+            /*
+             * Bitmap dims without decoding
+             */
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inJustDecodeBounds = true;
+            BitmapFactory.decodeFile(file, options);
+            opts[0] = options.outWidth;
+            opts[1] = options.outHeight;
+            if(opts[0] == 0) {
+                opts[0] = WIDTH;
+            }
+            if(opts[1] == 0) {
+                opts[1] = HEIGHT;
+            }
         }
         
-        /*
-         * Bitmap dims without decoding
-         */
-        BitmapFactory.Options options = new BitmapFactory.Options();
-        options.inJustDecodeBounds = true;
-        BitmapFactory.decodeFile(pref.mapsFolder() + "/" + name, options);
-        opts[0] = options.outWidth;
-        opts[1] = options.outHeight;
-        if(opts[0] == 0) {
-            opts[0] = WIDTH;
+        synchronized(mTileOptions) {
+            mTileOptions.put(file, new int[] {opts[0], opts[1]});
         }
-        if(opts[1] == 0) {
-            opts[1] = HEIGHT;
+    }
+
+    /**
+     * Call when tiles are downloaded or deleted
+     */
+    public static void clearTileOptions() {
+        synchronized(mTileOptions) {
+            mTileOptions.clear();
         }
     }
 
@@ -0,0 +1,85 @@
+/*
+Copyright (c) 2012, Apps4Av Inc. (apps4av.com) 
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+    *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+    *
+    *     THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.ds.avare.utils;
+
+import java.util.LinkedList;
+
+/**
+ * 
+ * @author zkhan
+ * Keeps bitmaps that are no longer used so new ones of same size need not be made.
+ * Used from UI and background threads.
+ */
+public class BitmapPool {
+
+    private LinkedList<BitmapHolder> mFree;
+    private int mMax;
+
+    /**
+     * 
+     * @param max bitmaps to keep
+     */
+    public BitmapPool(int max) {
+        mFree = new LinkedList<BitmapHolder>();
+        mMax = max;
+    }
+    
+    /**
+     * 
+     * @param width
+     * @param height
+     * @return a bitmap of given size, from pool if one is there
+     */
+    public synchronized BitmapHolder get(int width, int height) {
+        for(BitmapHolder b : mFree) {
+            if(b.getWidth() == width && b.getHeight() == height) {
+                mFree.remove(b);
+                return b;
+            }
+        }
+        BitmapHolder b = new BitmapHolder(width, height);
+        if(null == b.getBitmap()) {
+            /*
+             * Out of memory, free pool and try again
+             */
+            clear();
+            b = new BitmapHolder(width, height);
+        }
+        return b;
+    }
+    
+    /**
+     * Give back a bitmap
+     * @param b
+     */
+    public synchronized void put(BitmapHolder b) {
+        if(null == b || null == b.getBitmap()) {
+            return;
+        }
+        if(mFree.size() >= mMax) {
+            b.recycle();
+            return;
+        }
+        mFree.addFirst(b);
+    }
+    
+    /**
+     * 
+     */
+    public synchronized void clear() {
+        for(BitmapHolder b : mFree) {
+            b.recycle();
+        }
+        mFree.clear();
+    }
+}
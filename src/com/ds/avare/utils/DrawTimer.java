@@ -0,0 +1,168 @@
+/*
+Copyright (c) 2012, Apps4Av Inc. (apps4av.com) 
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+    *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+    *
+    *     THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.ds.avare.utils;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * 
+ * @author zkhan
+ * Time taken to draw each layer of the map, for the last few frames.
+ * Recording does not allocate.
+ */
+public class DrawTimer {
+
+    public static final int TILES = 0;
+    public static final int RADAR = 1;
+    public static final int LAYERS = 2;
+    public static final int DRAWING = 3;
+    public static final int RUNWAYS = 4;
+    public static final int TRAFFIC = 5;
+    public static final int TRACKS = 6;
+    public static final int TRACK = 7;
+    public static final int AIRCRAFT = 8;
+    public static final int RINGS = 9;
+    public static final int CDI = 10;
+    public static final int VASI = 11;
+    public static final int INFO = 12;
+    public static final int EDGE = 13;
+    public static final int FRAME = 14;
+    public static final int NUM = 15;
+    
+    private static final String NAMES[] = {
+        "Tiles", "Radar", "Layers", "Drawing", "Runways", "Traffic", "Tracks", "Track",
+        "Aircraft", "Rings", "CDI", "VASI", "Info", "Edge", "Frame"
+    };
+
+    /*
+     * Frames kept
+     */
+    private static final int SIZE = 128;
+    
+    private long mTimes[][];
+    private long mSorted[];
+    private int mFrame;
+    private int mFrames;
+    private long mStart;
+    private long mLast;
+
+    /**
+     * 
+     */
+    public DrawTimer() {
+        mTimes = new long[NUM][SIZE];
+        mSorted = new long[SIZE];
+        mFrame = 0;
+        mFrames = 0;
+    }
+    
+    /**
+     * Call before drawing first layer
+     */
+    public void start() {
+        for(int layer = 0; layer < NUM; layer++) {
+            mTimes[layer][mFrame] = 0;
+        }
+        mStart = System.nanoTime();
+        mLast = mStart;
+    }
+    
+    /**
+     * Call after drawing a layer, time since last call goes to the layer
+     * @param layer
+     */
+    public void mark(int layer) {
+        long now = System.nanoTime();
+        mTimes[layer][mFrame] += now - mLast;
+        mLast = now;
+    }
+    
+    /**
+     * Call after drawing last layer
+     */
+    public void stop() {
+        mTimes[FRAME][mFrame] = System.nanoTime() - mStart;
+        mFrame = (mFrame + 1) % SIZE;
+        if(mFrames < SIZE) {
+            mFrames++;
+        }
+    }
+    
+    /**
+     * 
+     * @param layer
+     * @param percent 0 to 100
+     * @return time in ns of given percentile, over frames kept
+     */
+    public long getPercentile(int layer, int percent) {
+        if(0 == mFrames) {
+            return 0;
+        }
+        System.arraycopy(mTimes[layer], 0, mSorted, 0, mFrames);
+        Arrays.sort(mSorted, 0, mFrames);
+        int index = (mFrames - 1) * percent / 100;
+        return mSorted[index];
+    }
+    
+    /**
+     * 
+     * @param layer
+     * @return
+     */
+    public static String getName(int layer) {
+        return NAMES[layer];
+    }
+    
+    /**
+     * 
+     * @param layer
+     * @return layer name, 50th, 90th, 99th percentile in ms
+     */
+    public String getSummary(int layer) {
+        return String.format(Locale.US, "%s %.1f %.1f %.1f", NAMES[layer],
+                getPercentile(layer, 50) / 1e6, getPercentile(layer, 90) / 1e6, getPercentile(layer, 99) / 1e6);
+    }
+    
+    /**
+     * Write percentiles of all layers to a file
+     * @param file
+     * @return
+     */
+    public boolean dump(File file) {
+        FileWriter out = null;
+        try {
+            out = new FileWriter(file, true);
+            out.write("layer p50 p90 p99 max (ms) over " + mFrames + " frames\n");
+            for(int layer = 0; layer < NUM; layer++) {
+                out.write(getSummary(layer) + String.format(Locale.US, " %.1f", getPercentile(layer, 100) / 1e6) + "\n");
+            }
+            return true;
+        }
+        catch (IOException e) {
+            return false;
+        }
+        finally {
+            if(null != out) {
+                try {
+                    out.close();
+                }
+                catch (IOException e) {
+                }
+            }
+        }
+    }
+}
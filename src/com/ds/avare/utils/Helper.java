@@ -25,11 +25,13 @@ import java.util.Locale;
 import java.util.TimeZone;
 
 import com.ds.avare.shapes.TFRShape;
+import com.ds.avare.shapes.TileKey;
 import com.ds.avare.storage.Preferences;
 
 import android.app.Activity;
 import android.content.Context;
 import android.content.pm.ActivityInfo;
+import android.graphics.ColorFilter;
 import android.graphics.ColorMatrix;
 import android.graphics.ColorMatrixColorFilter;
 import android.graphics.Paint;
@@ -190,14 +192,31 @@ public class Helper {
      * @param paint
      */
     public static void invertCanvasColors(Paint paint) {
-       float mx [] = {
-                -1.0f,  0.0f,  0.0f,  1.0f,  0.0f,
-                0.0f,  -1.0f,  0.0f,  1.0f,  0.0f,
-                0.0f,  0.0f,  -1.0f,  1.0f,  0.0f,
-                1.0f,  1.0f,  1.0f,  1.0f,  0.0f 
-       };
-       ColorMatrix cm = new ColorMatrix(mx);
-       paint.setColorFilter(new ColorMatrixColorFilter(cm));
+       paint.setColorFilter(getInvertFilter());
+    }
+
+    /**
+     * Filters are made once and shared, as they are used for every tile of every frame
+     */
+    private static ColorFilter mInvertFilter = null;
+    private static ColorFilter mThresholdFilter = null;
+    private static float mThresholdFilterAt = Float.NaN;
+
+    /**
+     * 
+     * @return
+     */
+    public static synchronized ColorFilter getInvertFilter() {
+        if(null == mInvertFilter) {
+            float mx [] = {
+                    -1.0f,  0.0f,  0.0f,  1.0f,  0.0f,
+                    0.0f,  -1.0f,  0.0f,  1.0f,  0.0f,
+                    0.0f,  0.0f,  -1.0f,  1.0f,  0.0f,
+                    1.0f,  1.0f,  1.0f,  1.0f,  0.0f 
+            };
+            mInvertFilter = new ColorMatrixColorFilter(new ColorMatrix(mx));
+        }
+        return mInvertFilter;
     }
 
     /**
@@ -243,6 +262,18 @@ public class Helper {
      * @param paint
      */
     public static void setThreshold(Paint paint, float threshold) {
+        paint.setColorFilter(getThresholdFilter(threshold));
+    }
+
+    /**
+     * Made again only when threshold changes
+     * @param threshold
+     * @return
+     */
+    public static synchronized ColorFilter getThresholdFilter(float threshold) {
+        if(null != mThresholdFilter && threshold == mThresholdFilterAt) {
+            return mThresholdFilter;
+        }
         /*
          * Elevation matrix. This will threshold the elevation with GPS altitude.
          * The factor is used to increase the brightness for a given elevation map.
@@ -270,8 +301,9 @@ public class Helper {
                 0,      0,             factor / 2.0f, 0,  -(factor) * (threshold - 5) * 2.0f,
                 0     , 0,             0,             1,  0
        };
-       ColorMatrix cm = new ColorMatrix(mx);
-       paint.setColorFilter(new ColorMatrixColorFilter(cm));
+       mThresholdFilter = new ColorMatrixColorFilter(new ColorMatrix(mx));
+       mThresholdFilterAt = threshold;
+       return mThresholdFilter;
     }
 
     /**
@@ -579,33 +611,13 @@ public class Helper {
     public static String incTileName(String name, int rowm, int colm) {
         
         /*
-         * This is all magic. Check database specification.
-         * Tiles are stored row/col as:
-         * 0/row/master_row_col where row, col have leading zeros
+         * Parse rarely, prefer keeping a TileKey
          */
-
-        try {
-            /*
-             * This is all magic. Check database specification.
-             * Tiles are stored row/col as:
-             * 0/row/master_row_col where row, col have leading zeros
-             */
-            String [] tokens = name.split("[/_.]");
-    
-            int row = (Integer.parseInt(tokens[7]) + rowm);
-            int col = (Integer.parseInt(tokens[8]) + colm);
-            int lenr = tokens[7].length();
-            int lenc = tokens[8].length();
-            
-            String rformatted = String.format("%0" + lenr + "d", row);
-            String cformatted = String.format("%0" + lenc + "d", col);
-            String pre = tokens[0] + "/" + tokens[1] + "/" + tokens[2] + "/" + tokens[3] + "/" + tokens[4] + "/" + row + "/";
-            String post = tokens[6] + "_" + rformatted + "_" + cformatted + "." + tokens[9];
-            return(pre + post);
-        }
-        catch(Exception e) {
+        TileKey k = TileKey.parse(name);
+        if(null == k) {
+            return null;
         }
-        return null;
+        return k.getNeighbor(rowm, colm);
     }
     
     /**
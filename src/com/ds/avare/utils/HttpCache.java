@@ -0,0 +1,313 @@
+/*
+Copyright (c) 2012, Apps4Av Inc. (apps4av.com) 
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+    *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+    *
+    *     THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.ds.avare.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 
+ * @author zkhan
+ * Responses of HTTP GETs by URL, fresh for a while, then asked again with a conditional request
+ * so unchanged data is not downloaded again. Safe to use from many threads.
+ * Downloads are streamed to the reader. Only small responses are kept, within a budget of bytes,
+ * large ones like weather along a long route are read from the network every time.
+ */
+public class HttpCache {
+
+    /*
+     * All kept responses, and largest response that is kept
+     */
+    private static final int MAX_BYTES = 2 * 1024 * 1024;
+    private static final int MAX_ENTRY_BYTES = 256 * 1024;
+    
+    /**
+     * 
+     * @author zkhan
+     *
+     */
+    private static class Response {
+        byte[] body;
+        String etag;
+        String modified;
+        long expires;
+    }
+    
+    private LinkedHashMap<String, Response> mCache;
+    private int mBytes;
+    private long mMaxAge;
+    private int mTimeout;
+    private int mHits;
+    private int mNotModified;
+    private int mMisses;
+
+    /**
+     * 
+     * @param maxAge ms a response is used without asking server
+     * @param timeout ms to connect, and to wait for data
+     */
+    public HttpCache(long maxAge, int timeout) {
+        mMaxAge = maxAge;
+        mTimeout = timeout;
+        mBytes = 0;
+        mCache = new LinkedHashMap<String, Response>(16, 0.75f, true);
+    }
+    
+    /**
+     * 
+     * @param url
+     * @return stream of response body, caller must close it
+     * @throws IOException on network error, timeout, or HTTP error
+     */
+    public InputStream open(String url) throws IOException {
+        Response e;
+        long now = System.currentTimeMillis();
+        synchronized(this) {
+            e = mCache.get(url);
+            if(null != e && now < e.expires) {
+                mHits++;
+                return new ByteArrayInputStream(e.body);
+            }
+        }
+        
+        HttpURLConnection c = (HttpURLConnection)new URL(url).openConnection();
+        boolean streaming = false;
+        try {
+            c.setConnectTimeout(mTimeout);
+            c.setReadTimeout(mTimeout);
+            if(null != e) {
+                /*
+                 * Ask server to send only if changed
+                 */
+                if(null != e.etag) {
+                    c.setRequestProperty("If-None-Match", e.etag);
+                }
+                if(null != e.modified) {
+                    c.setRequestProperty("If-Modified-Since", e.modified);
+                }
+            }
+            
+            int code = c.getResponseCode();
+            if(HttpURLConnection.HTTP_NOT_MODIFIED == code && null != e) {
+                synchronized(this) {
+                    e.expires = now + mMaxAge;
+                    mNotModified++;
+                }
+                return new ByteArrayInputStream(e.body);
+            }
+            if(HttpURLConnection.HTTP_OK != code) {
+                throw new IOException("HTTP " + code + " " + url);
+            }
+            synchronized(this) {
+                mMisses++;
+            }
+            
+            /*
+             * Known to be too large to keep, do not copy
+             */
+            InputStream in = new CachingStream(url, c, now, c.getContentLength() <= MAX_ENTRY_BYTES);
+            streaming = true;
+            return in;
+        }
+        finally {
+            if(!streaming) {
+                c.disconnect();
+            }
+        }
+    }
+    
+    /**
+     * 
+     * @param url
+     * @param r
+     */
+    private synchronized void put(String url, Response r) {
+        Response old = mCache.put(url, r);
+        if(null != old) {
+            mBytes -= old.body.length;
+        }
+        mBytes += r.body.length;
+        
+        /*
+         * Least recently used go first
+         */
+        Iterator<Map.Entry<String, Response>> it = mCache.entrySet().iterator();
+        while(mBytes > MAX_BYTES && it.hasNext()) {
+            mBytes -= it.next().getValue().body.length;
+            it.remove();
+        }
+    }
+    
+    /**
+     * 
+     * @author zkhan
+     * Body from network, copied on the way while small enough to keep, kept when read to the end
+     */
+    private class CachingStream extends FilterInputStream {
+        
+        private String mUrl;
+        private HttpURLConnection mConnection;
+        private long mTime;
+        private ByteArrayOutputStream mCopy;
+        private boolean mEnd;
+        
+        /**
+         * 
+         * @param url
+         * @param c
+         * @param time
+         * @param copy
+         * @throws IOException
+         */
+        private CachingStream(String url, HttpURLConnection c, long time, boolean copy) throws IOException {
+            super(c.getInputStream());
+            mUrl = url;
+            mConnection = c;
+            mTime = time;
+            mCopy = copy ? new ByteArrayOutputStream() : null;
+            mEnd = false;
+        }
+        
+        /**
+         * 
+         * @param buffer
+         * @param offset
+         * @param count
+         */
+        private void copy(byte buffer[], int offset, int count) {
+            if(null == mCopy) {
+                return;
+            }
+            if(count < 0) {
+                mEnd = true;
+            }
+            else if(mCopy.size() + count > MAX_ENTRY_BYTES) {
+                mCopy = null;
+            }
+            else {
+                mCopy.write(buffer, offset, count);
+            }
+        }
+        
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if(b < 0) {
+                copy(null, 0, -1);
+            }
+            else {
+                copy(new byte[] {(byte)b}, 0, 1);
+            }
+            return b;
+        }
+        
+        @Override
+        public int read(byte buffer[], int offset, int count) throws IOException {
+            int read = super.read(buffer, offset, count);
+            copy(buffer, offset, read);
+            return read;
+        }
+        
+        @Override
+        public long skip(long count) throws IOException {
+            /*
+             * Skipped bytes are not seen, so cannot keep this
+             */
+            mCopy = null;
+            return super.skip(count);
+        }
+        
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+        
+        @Override
+        public void close() throws IOException {
+            try {
+                /*
+                 * Reader may stop early, get rest of a small response so it can be kept
+                 */
+                byte buffer[] = new byte[8192];
+                while(null != mCopy && !mEnd) {
+                    read(buffer, 0, buffer.length);
+                }
+                if(null != mCopy) {
+                    Response r = new Response();
+                    r.body = mCopy.toByteArray();
+                    r.etag = mConnection.getHeaderField("ETag");
+                    r.modified = mConnection.getHeaderField("Last-Modified");
+                    r.expires = mTime + mMaxAge;
+                    put(mUrl, r);
+                    mCopy = null;
+                }
+            }
+            finally {
+                try {
+                    super.close();
+                }
+                finally {
+                    mConnection.disconnect();
+                }
+            }
+        }
+    }
+    
+    /**
+     * 
+     */
+    public synchronized void clear() {
+        mCache.clear();
+        mBytes = 0;
+    }
+    
+    /**
+     * 
+     * @return responses used without asking server
+     */
+    public synchronized int getHits() {
+        return mHits;
+    }
+
+    /**
+     * 
+     * @return responses server said did not change
+     */
+    public synchronized int getNotModified() {
+        return mNotModified;
+    }
+
+    /**
+     * 
+     * @return responses downloaded
+     */
+    public synchronized int getMisses() {
+        return mMisses;
+    }
+    
+    /**
+     * 
+     * @return bytes of responses kept
+     */
+    public synchronized int getBytes() {
+        return mBytes;
+    }
+}
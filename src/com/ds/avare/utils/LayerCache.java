@@ -0,0 +1,153 @@
+/*
+Copyright (c) 2012, Apps4Av Inc. (apps4av.com) 
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+    *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+    *
+    *     THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.ds.avare.utils;
+
+import com.ds.avare.position.Origin;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+
+/**
+ * 
+ * @author zkhan
+ * Off screen bitmap of map layers that change slowly. It is drawn again only when
+ * its data or zoom changes, or when map moves beyond its margin, and moved with the map otherwise.
+ */
+public class LayerCache {
+
+    private BitmapHolder mBitmap;
+    private Canvas mCanvas;
+    
+    /*
+     * What the bitmap was drawn for, lon/lat is of top left of bitmap including margin
+     */
+    private double mLon;
+    private double mLat;
+    private double mScaleX;
+    private double mScaleY;
+    private int mKey;
+    private boolean mValid;
+
+    /**
+     * 
+     */
+    public LayerCache() {
+        mBitmap = null;
+        mCanvas = null;
+        mValid = false;
+    }
+
+    /**
+     * 
+     * @param origin
+     * @param width of screen
+     * @param height of screen
+     * @param margin pixels drawn around screen
+     * @param key of data in layers
+     * @param moving true when map is being moved, then moved bitmap is good enough
+     * @return
+     */
+    public boolean isValid(Origin origin, int width, int height, int margin, int key, boolean moving) {
+        if((!mValid) || (null == mBitmap) || (mKey != key)) {
+            return false;
+        }
+        if(mBitmap.getWidth() != width + margin * 2 || mBitmap.getHeight() != height + margin * 2) {
+            return false;
+        }
+        if(mScaleX != origin.getScaleX() || mScaleY != origin.getScaleY()) {
+            return false;
+        }
+        if(moving) {
+            return true;
+        }
+        /*
+         * Stopped moving, draw again only if what is on screen is not all in bitmap
+         */
+        double x = origin.getOffsetX(mLon);
+        double y = origin.getOffsetY(mLat);
+        return x <= 0 && y <= 0 && x + mBitmap.getWidth() >= width && y + mBitmap.getHeight() >= height;
+    }
+    
+    /**
+     * Start drawing layers
+     * @param origin
+     * @param width of screen
+     * @param height of screen
+     * @param margin pixels to draw around screen
+     * @param key
+     * @return canvas to draw layers in with screen coordinates, null if no memory
+     */
+    public Canvas begin(Origin origin, int width, int height, int margin, int key) {
+        if(width <= 0 || height <= 0) {
+            return null;
+        }
+        width += margin * 2;
+        height += margin * 2;
+        if(null == mBitmap || mBitmap.getWidth() != width || mBitmap.getHeight() != height) {
+            recycle();
+            mBitmap = new BitmapHolder(width, height);
+            if(null == mBitmap.getBitmap()) {
+                mBitmap = null;
+                return null;
+            }
+            mCanvas = new Canvas(mBitmap.getBitmap());
+        }
+        mBitmap.getBitmap().eraseColor(Color.TRANSPARENT);
+        mCanvas.setMatrix(null);
+        mCanvas.translate(margin, margin);
+        mLon = origin.getLongitudeOf(-margin);
+        mLat = origin.getLatitudeOf(-margin);
+        mScaleX = origin.getScaleX();
+        mScaleY = origin.getScaleY();
+        mKey = key;
+        mValid = true;
+        return mCanvas;
+    }
+    
+    /**
+     * Draw cached layers where they belong now
+     * @param canvas
+     * @param origin
+     */
+    public void draw(Canvas canvas, Origin origin) {
+        if(null == mBitmap) {
+            return;
+        }
+        Bitmap b = mBitmap.getBitmap();
+        if(null == b) {
+            return;
+        }
+        mBitmap.getTransform().setTranslate((float)origin.getOffsetX(mLon), (float)origin.getOffsetY(mLat));
+        canvas.drawBitmap(b, mBitmap.getTransform(), null);
+    }
+    
+    /**
+     * Draw again on next frame
+     */
+    public void invalidate() {
+        mValid = false;
+    }
+    
+    /**
+     * 
+     */
+    public void recycle() {
+        if(null != mBitmap) {
+            mBitmap.recycle();
+        }
+        mBitmap = null;
+        mCanvas = null;
+        mValid = false;
+    }
+}
@@ -18,15 +18,18 @@ import java.net.URL;
 import java.net.URLConnection;
 import java.util.Calendar;
 import java.util.GregorianCalendar;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Scanner;
 import java.util.TimeZone;
 
+import javax.xml.parsers.SAXParser;
 import javax.xml.parsers.SAXParserFactory;
 
 import org.xml.sax.InputSource;
 import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
 
 
 /**
@@ -38,6 +41,27 @@ public class NetworkHelper {
     
     public static final int EXPIRES = 10;
     
+    /*
+     * Weather responses are used for a few minutes, then asked again only if changed.
+     * Do not wait for a slow server for long.
+     */
+    private static final long WEATHER_MAX_AGE = 1000L * 60L * 5L;
+    private static final int WEATHER_TIMEOUT = 1000 * 15;
+    private static HttpCache mWeatherCache = new HttpCache(WEATHER_MAX_AGE, WEATHER_TIMEOUT);
+    
+    /*
+     * Server of weather XML, can be pointed to a local stub
+     */
+    private static final String WEATHER_SERVER = "http://aviationweather.gov/adds/dataserver_current/httpparam";
+    private static String mWeatherServer = WEATHER_SERVER;
+    
+    /*
+     * Parsers are slow to make, keep a few for reuse
+     */
+    private static final int MAX_PARSERS = 4;
+    private static SAXParserFactory mParserFactory = SAXParserFactory.newInstance();
+    private static LinkedList<SAXParser> mParsers = new LinkedList<SAXParser>();
+    
     /**
      * 
      */
@@ -62,33 +86,37 @@ public class NetworkHelper {
         //http://www.nws.noaa.gov/cgi-bin/mos/getmet.pl?sta=KALX
         
         try {
-            URL url = new URL("http://www.nws.noaa.gov/cgi-bin/mos/getmet.pl?sta=K" + airport);
-            Scanner s = new Scanner(url.openStream());
-            int state = 0;
-            String sb = "";
-            while(s.hasNextLine()) {
+            String url = "http://www.nws.noaa.gov/cgi-bin/mos/getmet.pl?sta=K" + airport;
+            Scanner s = new Scanner(mWeatherCache.open(url));
+            try {
+                int state = 0;
+                String sb = "";
+                while(s.hasNextLine()) {
 
-                /*
-                 * Parse pre formatted text from the NOAA website
-                 * Strip out all other HTML.
-                 */
-                String line = s.nextLine();
-                if(line.contains("<PRE>")) {
-                    state = 1;
-                }
-                else if(line.contains("</PRE>")) {
-                    state = 0;
-                    break;
-                }
-                else if(state == 1) {
                     /*
-                     * Only text that describes forecast
+                     * Parse pre formatted text from the NOAA website
+                     * Strip out all other HTML.
                      */
-                    sb = sb + "<pre>" + line + "</pre>";
+                    String line = s.nextLine();
+                    if(line.contains("<PRE>")) {
+                        state = 1;
+                    }
+                    else if(line.contains("</PRE>")) {
+                        state = 0;
+                        break;
+                    }
+                    else if(state == 1) {
+                        /*
+                         * Only text that describes forecast
+                         */
+                        sb = sb + "<pre>" + line + "</pre>";
+                    }
                 }
+                return sb;
+            }
+            finally {
+                s.close();
             }
-            s.close();
-            return sb;
         }
         catch (Exception e) {
             
@@ -107,14 +135,11 @@ public class NetworkHelper {
         /*
          * Get TAF
          */
-        String xml = "http://aviationweather.gov/adds/dataserver_current/httpparam?dataSource=metars&requestType=retrieve&format=xml&stationString=K" + 
+        String xml = mWeatherServer + "?dataSource=metars&requestType=retrieve&format=xml&stationString=K" + 
                 airport + "&hoursBeforeNow=2";
-        XMLReader xmlReader;
         try {
-            xmlReader = SAXParserFactory.newInstance().newSAXParser().getXMLReader();
             SAXXMLHandlerMETAR saxHandler = new SAXXMLHandlerMETAR();
-            xmlReader.setContentHandler(saxHandler);
-            xmlReader.parse(new InputSource(xml));
+            parse(xml, saxHandler);
             List<String> texts = saxHandler.getText();
             for(String text : texts) {
                 return text;
@@ -136,15 +161,12 @@ public class NetworkHelper {
         /*
          * Get TAF
          */
-        String xml = "http://aviationweather.gov/adds/dataserver_current/httpparam?dataSource=tafs&requestType=retrieve&format=xml&stationString=K"
+        String xml = mWeatherServer + "?dataSource=tafs&requestType=retrieve&format=xml&stationString=K"
                  + airport + "&hoursBeforeNow=2";
         
-        XMLReader xmlReader;
         try {
-            xmlReader = SAXParserFactory.newInstance().newSAXParser().getXMLReader();
             SAXXMLHandlerTAF saxHandler = new SAXXMLHandlerTAF();
-            xmlReader.setContentHandler(saxHandler);
-            xmlReader.parse(new InputSource(xml));
+            parse(xml, saxHandler);
             List<String> texts = saxHandler.getText();
             for(String text : texts) {
                 return text;
@@ -168,28 +190,25 @@ public class NetworkHelper {
          * Get PIREPS
          */
         String xml = 
-                "http://aviationweather.gov/adds/dataserver_current/httpparam?datasource=pireps"
+                mWeatherServer + "?datasource=pireps"
                 + "&requestType=retrieve&format=xml&hoursBeforeNow=12" 
                 + "&radialDistance=" + miles + ";" + plan;
         /*
          * Get PIREPS
          */
-        String out = "";
-        XMLReader xmlReader;
+        StringBuilder out = new StringBuilder();
         try {
-            xmlReader = SAXParserFactory.newInstance().newSAXParser().getXMLReader();
             SAXXMLHandlerPIREP saxHandler = new SAXXMLHandlerPIREP();
-            xmlReader.setContentHandler(saxHandler);
-            xmlReader.parse(new InputSource(xml));
+            parse(xml, saxHandler);
             List<String> texts = saxHandler.getText();
             for(String text : texts) {
-                out += text + "::::";
+                out.append(text).append("::::");
             }
         }
         catch (Exception e) {
             
         }        
-        return out;
+        return out.toString();
     }
 
     /**
@@ -200,29 +219,26 @@ public class NetworkHelper {
     public static String getMETARPlan(String plan, String miles) {
         
         String xml = 
-                "http://aviationweather.gov/adds/dataserver_current/httpparam?datasource=metars"
+                mWeatherServer + "?datasource=metars"
                 + "&requestType=retrieve&format=xml&mostRecentForEachStation=constraint&hoursBeforeNow=1.25" 
                 + "&flightPath=" + miles + ";" + plan;
         /*
          * Get METAR
          */
-        String out = "";
-        XMLReader xmlReader;
+        StringBuilder out = new StringBuilder();
         try {
-            xmlReader = SAXParserFactory.newInstance().newSAXParser().getXMLReader();
             SAXXMLHandlerMETAR saxHandler = new SAXXMLHandlerMETAR();
-            xmlReader.setContentHandler(saxHandler);
-            xmlReader.parse(new InputSource(xml));
+            parse(xml, saxHandler);
             List<String> texts = saxHandler.getText();
             for(String text : texts) {
-                out += text + "::::";
+                out.append(text).append("::::");
             }
         }
         catch (Exception e) {
             
         }
         
-        return out;
+        return out.toString();
     }
 
     /**
@@ -233,29 +249,26 @@ public class NetworkHelper {
     public static String getTAFPlan(String plan, String miles) {
         
         String xml = 
-                "http://aviationweather.gov/adds/dataserver_current/httpparam?datasource=tafs"
+                mWeatherServer + "?datasource=tafs"
                 + "&requestType=retrieve&format=xml&mostRecentForEachStation=constraint&hoursBeforeNow=1.25" 
                 + "&flightPath=" + miles + ";" + plan;
         /*
          * Get TAF
          */
-        String out = "";
-        XMLReader xmlReader;
+        StringBuilder out = new StringBuilder();
         try {
-            xmlReader = SAXParserFactory.newInstance().newSAXParser().getXMLReader();
             SAXXMLHandlerTAF saxHandler = new SAXXMLHandlerTAF();
-            xmlReader.setContentHandler(saxHandler);
-            xmlReader.parse(new InputSource(xml));
+            parse(xml, saxHandler);
             List<String> texts = saxHandler.getText();
             for(String text : texts) {
-                out += text + "::::";
+                out.append(text).append("::::");
             }
         }
         catch (Exception e) {
             
         }
         
-        return out;
+        return out.toString();
     }
 
 
@@ -267,29 +280,84 @@ public class NetworkHelper {
     public static String getPIREPSPlan(String plan, String miles) {
         
         String xml = 
-                "http://aviationweather.gov/adds/dataserver_current/httpparam?datasource=pireps"
+                mWeatherServer + "?datasource=pireps"
                 + "&requestType=retrieve&format=xml&hoursBeforeNow=12" 
                 + "&flightPath=" + miles + ";" + plan;
         /*
          * Get PIREPS
          */
-        String out = "";
-        XMLReader xmlReader;
+        StringBuilder out = new StringBuilder();
         try {
-            xmlReader = SAXParserFactory.newInstance().newSAXParser().getXMLReader();
             SAXXMLHandlerPIREP saxHandler = new SAXXMLHandlerPIREP();
-            xmlReader.setContentHandler(saxHandler);
-            xmlReader.parse(new InputSource(xml));
+            parse(xml, saxHandler);
             List<String> texts = saxHandler.getText();
             for(String text : texts) {
-                out += text + "::::";
+                out.append(text).append("::::");
             }
         }
         catch (Exception e) {
             
         }
         
-        return out;
+        return out.toString();
+    }
+
+    /**
+     * Parse weather XML from a URL with a pooled parser
+     * @param url
+     * @param handler
+     * @throws Exception
+     */
+    private static void parse(String url, DefaultHandler handler) throws Exception {
+        SAXParser parser;
+        synchronized(mParsers) {
+            parser = mParsers.poll();
+            if(null == parser) {
+                parser = mParserFactory.newSAXParser();
+            }
+        }
+        try {
+            XMLReader xmlReader = parser.getXMLReader();
+            xmlReader.setContentHandler(handler);
+            InputStream in = mWeatherCache.open(url);
+            try {
+                xmlReader.parse(new InputSource(in));
+            }
+            finally {
+                in.close();
+            }
+        }
+        finally {
+            try {
+                parser.reset();
+                synchronized(mParsers) {
+                    if(mParsers.size() < MAX_PARSERS) {
+                        mParsers.add(parser);
+                    }
+                }
+            }
+            catch (UnsupportedOperationException e) {
+                /*
+                 * Cannot reuse this one
+                 */
+            }
+        }
+    }
+
+    /**
+     * For checks against a local stub only
+     * @param server URL of weather XML data server, null for the default one
+     */
+    static void setWeatherServer(String server) {
+        mWeatherServer = null == server ? WEATHER_SERVER : server;
+    }
+
+    /**
+     * 
+     * @return cache of weather responses
+     */
+    public static HttpCache getWeatherCache() {
+        return mWeatherCache;
     }
 
     /**
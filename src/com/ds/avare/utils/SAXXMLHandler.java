@@ -0,0 +1,88 @@
+/*
+Copyright (c) 2012, Apps4Av Inc. (apps4av.com) 
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+    *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+    *
+    *     THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.ds.avare.utils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * 
+ * @author zkhan
+ * Common to weather XML handlers. Text of an element is collected in one buffer, 
+ * and tags are looked up once in a map instead of compared one by one.
+ */
+public abstract class SAXXMLHandler extends DefaultHandler {
+    
+    public static final int TAG_OTHER = 0;
+    
+    private HashMap<String, Integer> mTags;
+    protected List<String> mText;
+    protected StringBuilder mTempVal;
+    
+    /**
+     * 
+     */
+    public SAXXMLHandler() {
+        mTags = new HashMap<String, Integer>();
+        mText = new ArrayList<String>();
+        mTempVal = new StringBuilder();
+    }
+    
+    /**
+     * 
+     * @param name
+     * @param tag
+     */
+    protected void addTag(String name, int tag) {
+        mTags.put(name.toLowerCase(Locale.US), tag);
+        mTags.put(name.toUpperCase(Locale.US), tag);
+    }
+    
+    /**
+     * 
+     * @param qName
+     * @return tag, TAG_OTHER if not one we want
+     */
+    protected int getTag(String qName) {
+        Integer tag = mTags.get(qName);
+        if(null == tag) {
+            /*
+             * Mixed case, rare
+             */
+            tag = mTags.get(qName.toLowerCase(Locale.US));
+            if(null == tag) {
+                return TAG_OTHER;
+            }
+        }
+        return tag;
+    }
+ 
+    /**
+     * 
+     * @return
+     */
+    public List<String> getText() {
+        return mText;
+    }
+ 
+    @Override
+    public void characters(char[] ch, int start, int length)
+            throws SAXException {
+        mTempVal.append(ch, start, length);
+    }
+}
@@ -12,62 +12,55 @@ Redistribution and use in source and binary forms, with or without modification,
 
 package com.ds.avare.utils;
 
-import java.util.ArrayList;
-import java.util.List;
-
 import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
-import org.xml.sax.helpers.DefaultHandler;
 
 /**
  * 
  * @author zkhan
  *
  */
-public class SAXXMLHandlerMETAR extends DefaultHandler {
-    private List<String> mText;
+public class SAXXMLHandlerMETAR extends SAXXMLHandler {
+    
+    private static final int TAG_METAR = 1;
+    private static final int TAG_RAW_TEXT = 2;
+    private static final int TAG_FLIGHT_CATEGORY = 3;
+    
     private String mTempText;
     private String mTempCategory;
-    private String mTempVal;
  
     public SAXXMLHandlerMETAR() {
-        mText = new ArrayList<String>();
-    }
- 
-    public List<String> getText() {
-        return mText;
+        addTag("METAR", TAG_METAR);
+        addTag("raw_text", TAG_RAW_TEXT);
+        addTag("flight_category", TAG_FLIGHT_CATEGORY);
     }
  
     // Event Handlers
     public void startElement(String uri, String localName, String qName,
             Attributes attributes) throws SAXException {
-        mTempVal = "";
-        if(qName.equalsIgnoreCase("METAR")) {
-            mTempText = new String();
-            mTempCategory = new String();
+        mTempVal.setLength(0);
+        if(TAG_METAR == getTag(qName)) {
+            mTempText = "";
+            mTempCategory = "";
         }
     }
  
-    public void characters(char[] ch, int start, int length)
-            throws SAXException {
-        mTempVal += new String(ch, start, length);
-    }
- 
     public void endElement(String uri, String localName, String qName)
             throws SAXException {
-        if (qName.equalsIgnoreCase("raw_text")) {
-            mTempText = mTempVal;
-        }
-        if (qName.equalsIgnoreCase("flight_category")) {
-            mTempCategory = mTempVal;
-        }
-        if(qName.equalsIgnoreCase("METAR")) {
-            if(mTempText.equals("") || mTempCategory.equals("")) {
-            }
-            else {
-                mText.add(mTempCategory + "," + mTempText);
-            }
+        switch(getTag(qName)) {
+            case TAG_RAW_TEXT:
+                mTempText = mTempVal.toString();
+                break;
+            case TAG_FLIGHT_CATEGORY:
+                mTempCategory = mTempVal.toString();
+                break;
+            case TAG_METAR:
+                if(mTempText.equals("") || mTempCategory.equals("")) {
+                }
+                else {
+                    mText.add(mTempCategory + "," + mTempText);
+                }
+                break;
         }
     }
 }
-
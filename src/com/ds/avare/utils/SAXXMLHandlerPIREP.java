@@ -12,59 +12,53 @@ Redistribution and use in source and binary forms, with or without modification,
 
 package com.ds.avare.utils;
 
-import java.util.ArrayList;
-import java.util.List;
-
 import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
-import org.xml.sax.helpers.DefaultHandler;
 
 /**
  * 
  * @author zkhan
  *
  */
-public class SAXXMLHandlerPIREP extends DefaultHandler {
-    private List<String> mText;
+public class SAXXMLHandlerPIREP extends SAXXMLHandler {
+    
+    private static final int TAG_PIREP = 1;
+    private static final int TAG_RAW_TEXT = 2;
+    private static final int TAG_PIREP_TYPE = 3;
+    
     private String mTempText;
-    private String mTempVal;
     private String mTempType;
  
     public SAXXMLHandlerPIREP() {
-        mText = new ArrayList<String>();
-    }
- 
-    public List<String> getText() {
-        return mText;
+        addTag("PIREP", TAG_PIREP);
+        addTag("raw_text", TAG_RAW_TEXT);
+        addTag("pirep_type", TAG_PIREP_TYPE);
     }
  
     // Event Handlers
     public void startElement(String uri, String localName, String qName,
             Attributes attributes) throws SAXException {
-        mTempVal = "";
-        if(qName.equalsIgnoreCase("PIREP")) {
-            mTempText = new String();
-            mTempType = new String();
+        mTempVal.setLength(0);
+        if(TAG_PIREP == getTag(qName)) {
+            mTempText = "";
+            mTempType = "";
         }
     }
  
-    public void characters(char[] ch, int start, int length)
-            throws SAXException {
-        mTempVal += new String(ch, start, length);
-    }
- 
     public void endElement(String uri, String localName, String qName)
             throws SAXException {
-        if (qName.equalsIgnoreCase("raw_text")) {
-            mTempText = mTempVal;
-        }
-        if (qName.equalsIgnoreCase("pirep_type")) {
-            mTempType = mTempVal;
-        }
-        if(qName.equalsIgnoreCase("PIREP")) {
-            if(!mTempType.equals("AIREP")) {
-                mText.add(mTempText);
-            }
+        switch(getTag(qName)) {
+            case TAG_RAW_TEXT:
+                mTempText = mTempVal.toString();
+                break;
+            case TAG_PIREP_TYPE:
+                mTempType = mTempVal.toString();
+                break;
+            case TAG_PIREP:
+                if(!mTempType.equals("AIREP")) {
+                    mText.add(mTempText);
+                }
+                break;
         }
     }
 }
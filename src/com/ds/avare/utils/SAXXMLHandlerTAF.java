@@ -12,47 +12,44 @@ Redistribution and use in source and binary forms, with or without modification,
 
 package com.ds.avare.utils;
 
-import java.util.ArrayList;
-import java.util.List;
-
 import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
-import org.xml.sax.helpers.DefaultHandler;
 
-public class SAXXMLHandlerTAF extends DefaultHandler {
-    private List<String> mText;
+/**
+ * 
+ * @author zkhan
+ *
+ */
+public class SAXXMLHandlerTAF extends SAXXMLHandler {
+    
+    private static final int TAG_TAF = 1;
+    private static final int TAG_RAW_TEXT = 2;
+    
     private String mTempText;
-    private String mTempVal;
  
     public SAXXMLHandlerTAF() {
-        mText = new ArrayList<String>();
-    }
- 
-    public List<String> getText() {
-        return mText;
+        addTag("TAF", TAG_TAF);
+        addTag("raw_text", TAG_RAW_TEXT);
     }
  
     // Event Handlers
     public void startElement(String uri, String localName, String qName,
             Attributes attributes) throws SAXException {
-        mTempVal = "";
-        if(qName.equalsIgnoreCase("TAF")) {
-            mTempText = new String();
+        mTempVal.setLength(0);
+        if(TAG_TAF == getTag(qName)) {
+            mTempText = "";
         }
     }
  
-    public void characters(char[] ch, int start, int length)
-            throws SAXException {
-        mTempVal += new String(ch, start, length);
-    }
- 
     public void endElement(String uri, String localName, String qName)
             throws SAXException {
-        if (qName.equalsIgnoreCase("raw_text")) {
-            mTempText = mTempVal;
-        }
-        if(qName.equalsIgnoreCase("TAF")) {
-            mText.add(mTempText);
+        switch(getTag(qName)) {
+            case TAG_RAW_TEXT:
+                mTempText = mTempVal.toString();
+                break;
+            case TAG_TAF:
+                mText.add(mTempText);
+                break;
         }
     }
 }
@@ -15,6 +15,7 @@ import java.util.LinkedList;
 import java.util.Locale;
 
 import com.ds.avare.R;
+import com.ds.avare.weather.Metar;
 
 
 public class WeatherHelper {
@@ -114,275 +115,458 @@ public class WeatherHelper {
         return weather;
     }
     
-    /**
-     * 
-     * @param weather
-     * @return
-     */
-    public static String formatWeatherHTML(String weather, boolean translate) {
-        weather = weather.replace("TAF ", "");
-        weather = weather.replace("AMD ", "");
-        weather = weather.replace("\n", "<br>");
-        if(translate) {
-            weather = weather.replace(" FM", "<br></br>FM(From)<br>");
-            weather = weather.replace("BECMG", "<br></br>BECMG(Becoming)<br>");
-        }
-        else {
-            weather = weather.replace(" FM", "<br></br>FM");
-            weather = weather.replace("BECMG", "<br></br>BECMG");            
-        }
-        return weather;
-    }
-
-    /**
-     * Color code weather type 
-     * @param weather
-     * @return
+    /*
+     * Weather codes, translation and color in TAF
      */
-    public static String formatTafHTML(String weatherAll, boolean translate) {
-
-        String strip[] = weatherAll.split("RMK");
-        String weather = strip[0];
-
-        /*
-         * Qualifiers
-         */
-        weather = weather.replaceAll("\\+", "<font color='magenta'+>" + (translate ? "(Heavy)" : "") + "<font color='black'>");
-        weather = weather.replaceAll("\\-", "<font color='red'>-" + (translate ? "(Light)" : "") + "<font color='black'>");
-        
+    private static final String WEATHER_CODES[][] = {
         /*
          * Description
          */
-        weather = weather.replaceAll("MI", "<font color='blue'>MI" + (translate ? "(Shallow)" : "") + "<font color='black'>");
-        weather = weather.replaceAll("BC", "<font color='blue'>BC" + (translate ? "(Patches)" : "") + "<font color='black'>");
-        weather = weather.replaceAll("DR", "<font color='blue'>DR" + (translate ? "(Low Drifting)" : "") + "<font color='black'>");
-        weather = weather.replaceAll("BL", "<font color='blue'>BL" + (translate ? "(BLowing)" : "") + "<font color='black'>");
-        weather = weather.replaceAll("SH", "<font color='blue'>SH" + (translate ? "(Showers)" : "") + "<font color='black'>");
-        weather = weather.replaceAll("TS", "<font color='red'>TS" + (translate ? "(Thunderstorm)" : "") + "<font color='black'>");
-        weather = weather.replaceAll("FZ", "<font color='red'>FZ" + (translate ? "(Freezing)" : "") + "<font color='black'>");
-        weather = weather.replaceAll("PR", "<font color='blue'>PR" + (translate ? "(Partial)" : "") + "<font color='black'>");
-        weather = weather.replaceAll("AMD", "AMD" + (translate ? "(Amended)" : ""));
-        weather = weather.replaceAll("WSCONDS", "WSCONDS" + (translate ? "(Wind Shear Possible)" : ""));
-        
+        {"MI", "Shallow", "blue"},
+        {"BC", "Patches", "blue"},
+        {"DR", "Low Drifting", "blue"},
+        {"BL", "Blowing", "blue"},
+        {"SH", "Showers", "blue"},
+        {"TS", "Thunderstorm", "red"},
+        {"FZ", "Freezing", "red"},
+        {"PR", "Partial", "blue"},
         /*
          * Precip
          */
-        weather = weather.replaceAll("DZ", "<font color='blue'>DZ" + (translate ? "(Drizzle)" : "") + "<font color='black'>");
-        weather = weather.replaceAll("RA", "<font color='red'>RA" + (translate ? "(Rain)" : "") + "<font color='black'>");
-        weather = weather.replaceAll("SN", "<font color='red'>SN" + (translate ? "(Snow)" : "") + "<font color='black'>");
-        weather = weather.replaceAll("SG", "<font color='red'>SG" + (translate ? "(Snow Grains)" : "") + "<font color='black'>");
-        weather = weather.replaceAll("IC", "<font color='red'>IC" + (translate ? "(Ice Crystals)" : "") + "<font color='black'>");
-        weather = weather.replaceAll("PL", "<font color='red'>PL" + (translate ? "(Ice Pellets)" : "") + "<font color='black'>");
-        weather = weather.replaceAll("GR", "<font color='red'>GR" + (translate ? "(Hail)" : "") + "<font color='black'>");
-        weather = weather.replaceAll("GS", "<font color='blue'>GS" + (translate ? "(Small Hail)" : "") + "<font color='black'>");
-        weather = weather.replaceAll("UP", "<font color='red'>UP" + (translate ? "(Unknown Precip.)" : "") + "<font color='black'>");
-
+        {"DZ", "Drizzle", "blue"},
+        {"RA", "Rain", "red"},
+        {"SN", "Snow", "red"},
+        {"SG", "Snow Grains", "red"},
+        {"IC", "Ice Crystals", "red"},
+        {"PL", "Ice Pellets", "red"},
+        {"GR", "Hail", "red"},
+        {"GS", "Small Hail", "blue"},
+        {"UP", "Unknown Precip.", "red"},
         /*
          * Obstruction
          */
-        weather = weather.replaceAll("BR", "<font color='red'>BR" + (translate ? "(Mist)" : "") + "<font color='black'>");
-        weather = weather.replaceAll("FG", "<font color='red'>FG" + (translate ? "(Fog)" : "") + "<font color='black'>");
-        weather = weather.replaceAll("FU", "<font color='red'>FU" + (translate ? "(Smoke)" : "") + "<font color='black'>");
-        weather = weather.replaceAll("DU", "<font color='red'>DU" + (translate ? "(Dust)" : "") + "<font color='black'>");
-        weather = weather.replaceAll("SA", "<font color='red'>SA" + (translate ? "(Sand)" : "") + "<font color='black'>");
-        weather = weather.replaceAll("HZ", "<font color='red'>HZ" + (translate ? "(Haze)" : "") + "<font color='black'>");
-        weather = weather.replaceAll("PY", "<font color='red'>PY" + (translate ? "(Spray)" : "") + "<font color='black'>");
-        weather = weather.replaceAll("VA", "<font color='red'>VA" + (translate ? "(Volcanic Ash)" : "") + "<font color='black'>");
-
+        {"BR", "Mist", "red"},
+        {"FG", "Fog", "red"},
+        {"FU", "Smoke", "red"},
+        {"DU", "Dust", "red"},
+        {"SA", "Sand", "red"},
+        {"HZ", "Haze", "red"},
+        {"PY", "Spray", "red"},
+        {"VA", "Volcanic Ash", "red"},
         /*
          * Other
          */
-        weather = weather.replaceAll("P0", "<font color='red'>P0" + (translate ? "(Dust Whirls)" : "") + "<font color='black'>");
-        weather = weather.replaceAll("SQ", "<font color='red'>SQ" + (translate ? "(Squalls)" : "") + "<font color='black'>");
-        weather = weather.replaceAll("FC", "<font color='red'>FC" + (translate ? "(Funnel Cloud)" : "") + "<font color='black'>");
-        weather = weather.replaceAll("SS", "<font color='red'>SS" + (translate ? "(Sand Storm)" : "") + "<font color='black'>");
-        weather = weather.replaceAll("DS", "<font color='red'>DS" + (translate ? "(Dust Storm)" : "") + "<font color='black'>");
-        weather = weather.replaceAll(" VC", "<font color='black'> VC" + (translate ? "(In Vicinity)" : "") + "<font color='black'>");
-
-        weather = weather.replaceAll("SKC", "SKC" + (translate ? "(Sky Clear)" : ""));
-        weather = weather.replaceAll("CLR", "CLR" + (translate ? "(Sky Clear)" : ""));
-        weather = weather.replaceAll("BKN", "BKN" + (translate ? "(Broken)" : ""));
-        weather = weather.replaceAll("SCT", "SCT" + (translate ? "(Scattered)" : ""));
-        weather = weather.replaceAll("OVC", "OVC" + (translate ? "(Overcast)" : ""));
-        weather = weather.replaceAll("PROB", "PROB" + (translate ? "(Probibility%)" : ""));
-        weather = weather.replaceAll("VV", "<font color='red'>VV" + (translate ? "(Vertical Visibility)" : "") + "<font color='black'>");
-        weather = weather.replaceAll("CB", "<font color='red'>CB" + (translate ? "(Cumulonimbus)" : "") + "<font color='black'>");
-        weather = weather.replaceAll("WS", "<font color='magenta'>WS" + (translate ? "(Wind Shear)" : "") + "<font color='black'>");
-        
-        weather = weather.replaceAll(" 9999 ", " 9999" + (translate ? "(Visibility > 7SM) " : ""));
-        weather = weather.replaceAll("QNH", "QNH" + (translate ? "(Minimum Altimeter)" : ""));
-        weather = weather.replaceAll("INS", "INS" + (translate ? "(Inches)" : ""));
-
-        for(int i = 1 ; i < strip.length; i++) {
-            
-            String weather1 = strip[i];
-            
-            weather += " RMK" + (translate ? "(Remark) " : " ") + weather1;
+        {"PO", "Dust Whirls", "red"},
+        {"SQ", "Squalls", "red"},
+        {"FC", "Funnel Cloud", "red"},
+        {"SS", "Sand Storm", "red"},
+        {"DS", "Dust Storm", "red"},
+    };
+
+    /*
+     * Groups in body of METAR and TAF, translation
+     */
+    private static final String WORDS[][] = {
+        {"AUTO", "Automated"},
+        {"COR", "Corrected"},
+        {"SPECI", "Special"},
+        {"AMD", "Amended"},
+        {"WSCONDS", "Wind Shear Possible"},
+        {"LTG", "Lightning"},
+        {"IR", "Runway Ice"},
+        {"WR", "Wet Runway"},
+        {"LSR", "Loose Runway Snow"},
+        {"PSR", "Packed Runway Snow"},
+    };
+
+    /*
+     * Remarks of METAR, these are prefixes of groups, translation
+     */
+    private static final String REMARKS[][] = {
+        {"AO", "Station Type"},
+        {"RAB", "Rain Began"},
+        {"RAE", "Rain Ended"},
+        {"CIG", "Variable Ceiling"},
+        {"SLP", "Sea Level Pressure"},
+        {"RVRNO", "No RVR reported"},
+        {"NOSIG", "No Significant Change Expected"},
+        {"TSNO", "Thunderstom Info Not Available"},
+        {"WSHFT", "Wind Shift"},
+        {"VIS", "Visibility"},
+        {"PRESFR", "Rapid Pressure Change"},
+        {"$", "Station Maintenance Needed"},
+    };
+
+    /*
+     * Cloud cover, translation
+     */
+    private static final String CLOUDS[][] = {
+        {"SKC", "Sky Clear"},
+        {"CLR", "Sky Clear"},
+        {"BKN", "Broken"},
+        {"SCT", "Scattered"},
+        {"OVC", "Overcast"},
+    };
+    
+    /**
+     * 
+     * @param table
+     * @param token
+     * @param prefix match start of token only
+     * @return row of table, or null
+     */
+    private static String[] find(String table[][], String token, boolean prefix) {
+        for(int i = 0; i < table.length; i++) {
+            if(prefix ? token.startsWith(table[i][0]) : token.equals(table[i][0])) {
+                return table[i];
+            }
         }
-
-        return weather;
+        return null;
     }
-
+    
     /**
-     * Color code winds
-     * @param weather
-     * @return
+     * Append a group with color and translation
+     * @param sb
+     * @param text
+     * @param translation null if none
+     * @param color null for no color
+     * @param translate
      */
-    public static String formatMetarHTML(String weatherAll, boolean translate) {
-        
-        String strip[] = weatherAll.split("RMK");
-        String weather = strip[0];
-        
-        /*
-         * Remarks
-         */
-        weather = weather.replaceAll("\\+", "+" + (translate ? "(Heavy)" : ""));
-        weather = weather.replaceAll("\\-", "-" + (translate ? "(Light)" : ""));
-        weather = weather.replaceAll("IR", "IR" + (translate ? "(Runway Ice)" : ""));
-        weather = weather.replaceAll("WR", "WR" + (translate ? "(Wet Runway)" : ""));
-        weather = weather.replaceAll("LSR", "LSR" + (translate ? "(Loose Runway Snow)" : ""));
-        weather = weather.replaceAll("PSR", "PSR" + (translate ? "(Packed Runway Snow)" : ""));
-        weather = weather.replaceAll("LTG", "LTG" + (translate ? "(Lightning)" : ""));
-        weather = weather.replaceAll("TCU","TCU" + (translate ? "(Towering Cumulus)" : ""));
-        weather = weather.replaceAll("VRB", "VRB" + (translate ? "(Variable)" : ""));
-        
-        weather = weather.replaceAll("AUTO", "AUTO" + (translate ? "(Automated)" : ""));
-        weather = weather.replaceAll("COR", "COR" + (translate ? "(Corrected)" : ""));
-        weather = weather.replaceAll(" 9999 ", " 9999" + (translate ? "(Visibility > 7SM) " : ""));
-        weather = weather.replaceAll("SPECI", "SPECI" + (translate ? "(Special)" : ""));
-        
-        /*
-         * Description
-         */
-        weather = weather.replaceAll("MI", "MI" + (translate ? "(Shallow)" : ""));
-        weather = weather.replaceAll("BC", "BC" + (translate ? "(Patches)" : ""));
-        weather = weather.replaceAll("DR", "DR" + (translate ? "(Low Drifting)" : ""));
-        weather = weather.replaceAll("BL", "BL" + (translate ? "(BLowing)" : ""));
-        weather = weather.replaceAll("SH", "SH" + (translate ? "(Showers)" : ""));
-        weather = weather.replaceAll("TS", "TS" + (translate ? "(Thunderstorm)" : ""));
-        weather = weather.replaceAll("FZ", "FZ" + (translate ? "(Freezing)" : ""));
-        weather = weather.replaceAll("PR", "PR" + (translate ? "(Partial)" : ""));
-        /*
-         * Precip
-         */
-        weather = weather.replaceAll("DZ", "DZ" + (translate ? "(Drizzle)" : ""));
-        weather = weather.replaceAll("RA ", "RA " + (translate ? "(Rain)" : ""));
-        weather = weather.replaceAll("SN", "SN" + (translate ? "(Snow)" : ""));
-        weather = weather.replaceAll("SG", "SG" + (translate ? "(Snow Grains)" : ""));
-        weather = weather.replaceAll("IC", "IC" + (translate ? "(Ice Crystals)" : ""));
-        weather = weather.replaceAll("PL", "PL" + (translate ? "(Ice Pellets)" : ""));
-        weather = weather.replaceAll("GR", "GR" + (translate ? "(Hail)" : ""));
-        weather = weather.replaceAll("GS", "GS" + (translate ? "(Small Hail)" : ""));
-        weather = weather.replaceAll("UP", "UP" + (translate ? "(Unknown Precip.)" : ""));
-
-        /*
-         * Obstruction
-         */
-        weather = weather.replaceAll("BR", "BR" + (translate ? "(Mist)" : ""));
-        weather = weather.replaceAll("FG", "FG" + (translate ? "(Fog)" : ""));
-        weather = weather.replaceAll("FU", "FU" + (translate ? "(Smoke)" : ""));
-        weather = weather.replaceAll("DU", "DU" + (translate ? "(Dust)" : ""));
-        weather = weather.replaceAll("SA", "SA" + (translate ? "(Sand)" : ""));
-        weather = weather.replaceAll("HZ", "HZ" + (translate ? "(Haze)" : ""));
-        weather = weather.replaceAll("PY", "PY" + (translate ? "(Spray)" : ""));
-        weather = weather.replaceAll("VA", "VA" + (translate ? "(Volcanic Ash)" : ""));
+    private static void append(StringBuilder sb, String text, String translation, String color, boolean translate) {
+        if(null != color) {
+            sb.append("<font color='").append(color).append("'>");
+        }
+        sb.append(text);
+        if(translate && null != translation) {
+            sb.append('(').append(translation).append(')');
+        }
+        if(null != color) {
+            sb.append("<font color='black'>");
+        }
+    }
+    
+    /**
+     * Weather group like -SHRA
+     * @param sb
+     * @param token
+     * @param color
+     * @param translate
+     */
+    private static void appendWeather(StringBuilder sb, String token, boolean color, boolean translate) {
+        int p = 0;
+        if(token.charAt(0) == '+') {
+            append(sb, "+", "Heavy", color ? "magenta" : null, translate);
+            p = 1;
+        }
+        else if(token.charAt(0) == '-') {
+            append(sb, "-", "Light", color ? "red" : null, translate);
+            p = 1;
+        }
+        else if(token.startsWith("VC")) {
+            append(sb, "VC", "In Vicinity", null, translate);
+            p = 2;
+        }
+        for(; p + 1 < token.length(); p += 2) {
+            String code[] = find(WEATHER_CODES, token.substring(p, p + 2), false);
+            if(null == code) {
+                sb.append(token, p, p + 2);
+                continue;
+            }
+            append(sb, code[0], code[1], color ? code[2] : null, translate);
+        }
+    }
 
+    /**
+     * Cloud group like BKN030CB
+     * @param sb
+     * @param token
+     * @param color
+     * @param translate
+     */
+    private static void appendCloud(StringBuilder sb, String token, boolean color, boolean translate) {
+        int p;
+        if(token.startsWith("VV")) {
+            append(sb, "VV", "Vertical Visibility", color ? "red" : null, translate);
+            p = 2;
+        }
+        else {
+            String cover[] = find(CLOUDS, token, true);
+            append(sb, token.substring(0, 3), null == cover ? null : cover[1], null, translate);
+            p = 3;
+        }
+        if(token.endsWith("CB")) {
+            sb.append(token, p, token.length() - 2);
+            append(sb, "CB", "Cumulonimbus", color ? "red" : null, translate);
+        }
+        else if(token.endsWith("TCU")) {
+            sb.append(token, p, token.length() - 3);
+            append(sb, "TCU", "Towering Cumulus", null, translate);
+        }
+        else {
+            sb.append(token, p, token.length());
+        }
+    }
+    
+    /**
+     * Wind group like 27015G25KT, speed in color
+     * @param sb
+     * @param token
+     * @param color
+     * @param translate
+     */
+    private static void appendWind(StringBuilder sb, String token, boolean color, boolean translate) {
+        int p = 0;
+        if(token.startsWith("VRB")) {
+            append(sb, "VRB", "Variable", null, translate);
+            p = 3;
+        }
+        if(!color || !token.endsWith("KT")) {
+            sb.append(token, p, token.length());
+            return;
+        }
         /*
-         * Other
+         * Last two digits of speed, gust speed if gusting
          */
-        weather = weather.replaceAll("SQ", "SQ" + (translate ? "(Squalls)" : ""));
-        weather = weather.replaceAll("FC", "FC" + (translate ? "(Funnel Cloud)" : ""));
-        weather = weather.replaceAll("SS", "SS" + (translate ? "(Sand Storm)" : ""));
-        weather = weather.replaceAll("DS", "DS" + (translate ? "(Dust Storm)" : ""));
-        weather = weather.replaceAll(" VC", " VC" + (translate ? "(In Vicinity)" : ""));
+        int end = token.length() - 2;
+        int winds = Integer.parseInt(token.substring(end - 2, end));
+        String c;
+        if(winds < 10) {
+            c = "green";
+        }
+        else if(winds < 20) {
+            c = "blue";
+        }
+        else if(winds < 30) {
+            c = "red";
+        }
+        else {
+            c = "magenta";
+        }
+        sb.append(token, p, end - 2);
+        append(sb, token.substring(end - 2, end), null, c, false);
+        sb.append("KT");
+    }
 
-        weather = weather.replaceAll("SKC", "SKC" + (translate ? "(Sky Clear)" : ""));
-        weather = weather.replaceAll("CLR", "CLR" + (translate ? "(Sky Clear)" : ""));
-        weather = weather.replaceAll("BKN", "BKN" + (translate ? "(Broken)" : ""));
-        weather = weather.replaceAll("SCT", "SCT" + (translate ? "(Scattered)" : ""));
-        weather = weather.replaceAll("OVC", "OVC" + (translate ? "(Overcast)" : ""));
-        weather = weather.replaceAll("PROB", "PROB" + (translate ? "(Probibility%)" : ""));
-        weather = weather.replaceAll("VV", "VV" + (translate ? "(Vertical Visibility)" : ""));
-        weather = weather.replaceAll("CB", "CB" + (translate ? "(Cumulonimbus)" : ""));
-        weather = weather.replaceAll("WS", "WS" + (translate ? "(Wind Shear)" : ""));
+    /**
+     * Visibility group like 1 1/2SM, in color
+     * @param sb
+     * @param token
+     * @param color
+     * @param translate
+     */
+    private static void appendVisibility(StringBuilder sb, String token, boolean color, boolean translate) {
+        if(token.equals("9999")) {
+            append(sb, token, "Visibility > 7SM", null, translate);
+            return;
+        }
+        if(!color) {
+            sb.append(token);
+            return;
+        }
+        String vis = token.substring(0, token.length() - 2);
+        String c;
+        if(vis.startsWith("P")) {
+            c = "green";
+        }
+        else {
+            /*
+             * Whole miles, 0 if only a fraction.
+             * 11/2 is compact form of 1 1/2.
+             */
+            int miles = 0;
+            int slash = vis.indexOf('/');
+            int space = vis.indexOf(' ');
+            if(vis.charAt(0) == 'M') {
+                miles = 0;
+            }
+            else if(slash < 0) {
+                miles = Integer.parseInt(vis);
+            }
+            else if(space > 0) {
+                miles = Integer.parseInt(vis.substring(0, space));
+            }
+            else if(slash > 1) {
+                miles = vis.charAt(0) - '0';
+            }
+            if(miles >= 5) {
+                c = "green";
+            }
+            else if(miles >= 3) {
+                c = "blue";
+            }
+            else if(miles >= 1) {
+                c = "red";
+            }
+            else {
+                c = "magenta";
+            }
+        }
+        append(sb, vis, null, c, false);
+        sb.append("SM");
+    }
+    
+    /**
+     * Color code and translate a TAF, in one pass over its groups
+     * @param weatherAll TAF without station
+     * @param translate
+     * @return
+     */
+    public static String formatTafHTML(String weatherAll, boolean translate) {
 
-        /*
-         * These are remarks
-         */
-        
-        for(int i = 1 ; i < strip.length; i++) {
-        
-            String weather1 = strip[i];
+        StringBuilder sb = new StringBuilder(weatherAll.length() * 2);
+        WeatherLexer lexer = new WeatherLexer(weatherAll);
+        boolean first = true;
+        while(lexer.next()) {
+            String token = lexer.getText();
+            int type = lexer.getType();
             
-            weather1 = weather1.replaceAll("AO", "AO" + (translate ? "(Station Type)" : ""));
-            weather1 = weather1.replaceAll("RAB", "RAB" + (translate ? "(Rain Began)" : ""));
-            weather1 = weather1.replaceAll("RAE", "RAE" + (translate ? "(Rain Ended)" : ""));
-            weather1 = weather1.replaceAll("CIG", "CIG" + (translate ? "(Variable Ceiling)" : ""));
-            weather1 = weather1.replaceAll("SLP", "SLP" + (translate ? "(Sea Level Pressure)" : ""));
-            weather1 = weather1.replaceAll("RVRNO","RVRNO" + (translate ? "(No RVR reported)" : ""));
-            weather1 = weather1.replaceAll("NOSIG", "NOSIG" + (translate ? "(No Significant Change Expected)" : ""));
-            weather1 = weather1.replaceAll("TSNO", "TSNO" + (translate ? "(Thunderstom Info Not Available)" : ""));
-            weather1 = weather1.replaceAll("PK WND", "PK WND" + (translate ? "(Peak Wind)" : ""));
-            weather1 = weather1.replaceAll("WSHFT", "WSHFT" + (translate ? "(Wind Shift)" : ""));
-            weather1 = weather1.replaceAll("VIS", "VIS" + (translate ? "(Visibility)" : ""));
-            weather1 = weather1.replaceAll("PRESFR", "PRESFR" + (translate ? "(Rapid Pressure Change)" : ""));
-            weather1 = weather1.replaceAll("\\$", "\\$" + (translate ? "(Station Maintenance Needed)" : ""));
+            if(WeatherLexer.OTHER == type && (token.equals("TAF") || token.equals("AMD"))) {
+                continue;
+            }
             
-            weather += " RMK" + (translate ? "(Remark)" : " ") + weather1;
+            /*
+             * New line for each change of forecast
+             */
+            if(WeatherLexer.CHANGE == type && (token.startsWith("FM") || token.equals("BECMG"))) {
+                sb.append("<br></br>");
+            }
+            else if(lexer.isNewLine() && !first) {
+                sb.append("<br>");
+            }
+            else if(!first) {
+                sb.append(' ');
+            }
+            first = false;
+            
+            switch(type) {
+                case WeatherLexer.WIND:
+                    appendWind(sb, token, true, translate);
+                    break;
+                case WeatherLexer.VISIBILITY:
+                    appendVisibility(sb, token, true, translate);
+                    break;
+                case WeatherLexer.WEATHER:
+                    appendWeather(sb, token, true, translate);
+                    break;
+                case WeatherLexer.CLOUD:
+                    appendCloud(sb, token, true, translate);
+                    break;
+                case WeatherLexer.ALTIMETER:
+                    if(token.startsWith("QNH")) {
+                        append(sb, "QNH", "Minimum Altimeter", null, translate);
+                        sb.append(token, 3, 7);
+                        append(sb, "INS", "Inches", null, translate);
+                    }
+                    else {
+                        sb.append(token);
+                    }
+                    break;
+                case WeatherLexer.CHANGE:
+                    if(token.startsWith("FM")) {
+                        append(sb, "FM", "From", null, translate);
+                        sb.append(token, 2, token.length());
+                    }
+                    else if(token.startsWith("PROB")) {
+                        append(sb, "PROB", "Probability%", null, translate);
+                        sb.append(token, 4, token.length());
+                    }
+                    else if(token.equals("BECMG")) {
+                        append(sb, token, "Becoming", null, translate);
+                    }
+                    else {
+                        sb.append(token);
+                    }
+                    break;
+                case WeatherLexer.REMARK:
+                    if(token.equals("RMK")) {
+                        append(sb, token, "Remark", null, translate);
+                    }
+                    else {
+                        sb.append(token);
+                    }
+                    break;
+                default:
+                    if(token.startsWith("WS") && !token.startsWith("WSCONDS")) {
+                        /*
+                         * Wind shear like WS020/27045KT
+                         */
+                        append(sb, "WS", "Wind Shear", "magenta", translate);
+                        sb.append(token, 2, token.length());
+                        break;
+                    }
+                    String word[] = find(WORDS, token, false);
+                    append(sb, token, null == word ? null : word[1], null, translate);
+                    break;
+            }
         }
 
-
-        return weather;
+        return sb.toString();
     }
 
     /**
-     * Color code winds
-     * @param weather
+     * Translate a METAR, in one pass over its groups
+     * @param weatherAll METAR without station
+     * @param translate
      * @return
      */
-    public static String formatWindsHTML(String weather, boolean translate) {
-        /*
-         * Read wind as XXKT
-         */
-        int start;
-        String output = "";
-        String original = weather;
-        /*
-         * Cannot crash if transmission from HTTP has a bug
-         */
-        try {
-            while((start = weather.indexOf("KT")) >= 0) {
-                String portion = weather.substring(0, start);
-                String windString = portion.substring(portion.length() - 2, portion.length());
-                int winds = Integer.parseInt(windString);
-                 
-                if(winds < 10) {
-                    portion = portion.substring(0, portion.length() - 2) + "<font color='green'>" + windString + "<font color='black'>" + "KT";
-                }
-                else if(winds < 20) {
-                    portion = portion.substring(0, portion.length() - 2) + "<font color='blue'>" + windString + "<font color='black'>" + "KT";
-                }
-                else if(winds < 30) {
-                    portion = portion.substring(0, portion.length() - 2) + "<font color='red'>" + windString + "<font color='black'>" + "KT";
-                }
-                else {
-                    portion = portion.substring(0, portion.length() - 2) + "<font color='magenta'>" + windString + "<font color='black'>" + "KT";
-                }
-                output += portion;
-                weather = weather.substring(start + 2, weather.length());
+    public static String formatMetarHTML(String weatherAll, boolean translate) {
+        
+        StringBuilder sb = new StringBuilder(weatherAll.length() * 2);
+        WeatherLexer lexer = new WeatherLexer(weatherAll);
+        String last = "";
+        boolean first = true;
+        while(lexer.next()) {
+            String token = lexer.getText();
+            if(!first) {
+                sb.append(' ');
             }
-            output += weather;
-        }
-        catch (Exception e) {
-            /*
-             * Mark magenta as we do not know whats in it
-             */
-            output = "<font color='magenta'>" + original + "<font color='black'>";
+            first = false;
+            
+            switch(lexer.getType()) {
+                case WeatherLexer.WIND:
+                    appendWind(sb, token, false, translate);
+                    break;
+                case WeatherLexer.VISIBILITY:
+                    appendVisibility(sb, token, false, translate);
+                    break;
+                case WeatherLexer.WEATHER:
+                    appendWeather(sb, token, false, translate);
+                    break;
+                case WeatherLexer.CLOUD:
+                    appendCloud(sb, token, false, translate);
+                    break;
+                case WeatherLexer.REMARK:
+                    /*
+                     * These are remarks
+                     */
+                    if(token.equals("RMK")) {
+                        append(sb, token, "Remark", null, translate);
+                    }
+                    else if(token.equals("WND") && last.equals("PK")) {
+                        append(sb, token, "Peak Wind", null, translate);
+                    }
+                    else {
+                        String remark[] = find(REMARKS, token, true);
+                        if(null == remark) {
+                            sb.append(token);
+                        }
+                        else {
+                            append(sb, remark[0], remark[1], null, translate);
+                            sb.append(token, remark[0].length(), token.length());
+                        }
+                    }
+                    break;
+                default:
+                    String word[] = find(WORDS, token, false);
+                    append(sb, token, null == word ? null : word[1], null, translate);
+                    break;
+            }
+            last = token;
         }
-        output = output.replaceAll("VRB", "VRB" + (translate ? "(Variable)" : ""));
-        return output;
+
+        return sb.toString();
     }
-    
+
     /**
      * Color code PIREPs
      * @param weather
@@ -422,98 +606,6 @@ public class WeatherHelper {
         return weather;
     }
     
-    /**
-     * Color code winds
-     * @param weather
-     * @return
-     */
-    public static String formatVisibilityHTML(String weather) {
-        /*
-         * Read wind as XXKT
-         */
-        int start;
-        String output = "";
-        String original = weather;
-        /*
-         * Cannot crash if transmission from HTTP has a bug
-         */
-        try {
-            while((start = weather.indexOf("SM")) >= 0) {
-                String portion = weather.substring(0, start);
-                int portionlen = portion.length();
-                int vis;
-                int visstart;
-                String visString;
-                boolean P6 = false;
-                String subportion = portion.substring(portionlen - 8);
-                /*
-                 * Too hard to parse this nonsense. Brute force.
-                 */
-                if(subportion.matches(".* P6")) {
-                    visstart = portionlen - 2;
-                    vis = 6;  
-                    P6 = true;
-                }
-                else if(subportion.matches(".* [1-9]{1} [1-3]{1}\\/[2-4]{1}")) {
-                    /*
-                     * Like " 1 1/4"
-                     */
-                    visstart = portionlen - 5;
-                    vis = Integer.parseInt(portion.substring(visstart, visstart + 1));  
-                }
-                else if(subportion.matches(".* [1]{1}[1-3]{1}\\/[2-4]{1}")) {
-                    /*
-                     * Like " 11/4"
-                     */
-                    visstart = portionlen - 4;
-                    vis = Integer.parseInt(portion.substring(visstart, visstart + 1));  
-                }
-                else if(subportion.matches(".* [1-3]{1}\\/[2-4]{1}")) {
-                    /*
-                     * Like " 3/4"
-                     */
-                    visstart = portionlen - 3;
-                    vis = 0;  
-                }
-                else {
-                    /*
-                     * Like " 3"
-                     */
-                    visstart = portionlen - 1;
-                    vis = Integer.parseInt(portion.substring(visstart, visstart + 1));  
-                }
-
-                visString = portion.substring(visstart);
-                
-                if(P6) {
-                    portion = portion.substring(0, visstart) + "<font color='green'>" + "P6" + "<font color='black'>" + "SM";                    
-                }
-                else if(vis >= 5) {
-                    portion = portion.substring(0, visstart) + "<font color='green'>" + visString + "<font color='black'>" + "SM";
-                }
-                else if(vis >= 3) {
-                    portion = portion.substring(0, visstart) + "<font color='blue'>" + visString + "<font color='black'>" + "SM";
-                }
-                else if(vis >= 1) {
-                    portion = portion.substring(0, visstart) + "<font color='red'>" + visString + "<font color='black'>" + "SM";
-                }
-                else {
-                    portion = portion.substring(0, visstart) + "<font color='magenta'>" + visString + "<font color='black'>" + "SM";
-                }
-                output += portion;
-                weather = weather.substring(start + 2, weather.length());
-            }
-            output += weather;
-        }
-        catch (Exception e) {
-            /*
-             * Mark magenta as we do not know whats in it
-             */
-            output = "<font color='magenta'>" + original + "<font color='black'>";
-        }
-        return output;
-    }
-
     /**
      * Wind decoder
      * @param wind
@@ -610,15 +702,8 @@ public class WeatherHelper {
      * @param metar
      * @return
      */
-    public static String getMetarTime(String metar) {
-        String time = "";
-        // parse time, temp, altitude setting 
-        String tokens[] = metar.split(" ");
-        if(tokens.length > 1) {
-            time = tokens[1];
-        }
-        
-        return time;
+    public static String getMetarTime(Metar metar) {
+        return metar.observationTime;
     }
 
     /**
@@ -627,76 +712,40 @@ public class WeatherHelper {
      * @param elevation
      * @return
      */
-    public static String getDensityAltitude(String metar, String elev) {
+    public static String getDensityAltitude(Metar metar, String elev) {
         
         if(null == elev || null == metar) {
             return "";
         }
         
-        double da = 0;
-        double temp = 0;
-        double as = 0;
-        
-        double st = 0;
-        double at = 0;
-       
-        double pa = 0;
-        double elevation = 0;
-        
-        boolean tmpset = false;
-        boolean aset = false;
-        boolean melev = false;
-        
-        // parse time, temp, altitude setting 
-        String tokens[] = metar.split(" ");
+        if(!metar.temperatureSet || metar.altimeter == 0) {
+            return "";
+        }
         
+        double elevation;
         try {
-            for(int i = 0; i < tokens.length; i++) {
-                if(tokens[i].equals("RMK")) {
-                    break;
-                }
-                if(tokens[i].matches("M?[0-9]*/M?[0-9]*")) {
-                    String t = tokens[i].split("/")[0];
-                    if(t.startsWith("M")) {
-                        t = t.substring(1);
-                    }
-                    temp = Double.parseDouble(t);
-                    tmpset = true;
-                    continue;
-                }
-                if(tokens[i].matches("A[0-9][0-9][0-9][0-9]")) {
-                    as = Double.parseDouble(tokens[i].split("A")[1]) / 100;
-                    aset = true;
-                    continue;
-                }
-            }
             elevation = Double.parseDouble(elev);
-            melev = true;
         }
         catch (Exception e) {
+            return "";
         }
         
-        if(tmpset && aset && melev) {
-            
-            // pressure altitude, correct for non standard
-            pa = elevation + (29.92 - as) * 1000.0;
-            
-            // standard temp Kelvin
-            st = 273.15 - (15 - 0.0019812 * pa);
-
-            // reported temp Kelvin
-            at = 273.15 - temp;
+        // pressure altitude, correct for non standard
+        double pa = elevation + (29.92 - metar.altimeter) * 1000.0;
+        
+        // standard temp Kelvin
+        double st = 273.15 - (15 - 0.0019812 * pa);
 
-            // density altitude, aviation formulary
-            da = pa + 118.6 * (st - at);
-            
-            // round to nearest 100
-            da = ((int)(da / 100)) * 100;
-            
-            return "" + (int)da + " ft";
-        }
+        // reported temp Kelvin
+        double at = 273.15 - metar.temperature;
 
-        return "";
+        // density altitude, aviation formulary
+        double da = pa + 118.6 * (st - at);
+        
+        // round to nearest 100
+        da = ((int)(da / 100)) * 100;
+        
+        return "" + (int)da + " ft";
     }
     
     /**
@@ -705,101 +754,62 @@ public class WeatherHelper {
      * @param elevation
      * @return
      */
-    public static String getBestRunway(String metar, LinkedList<String> runways) {
+    public static String getBestRunway(Metar metar, LinkedList<String> runways) {
         
-        if(null == runways || null == metar) {
+        if(null == runways || null == metar || !metar.windSet) {
             return "";
         }
         
-        String wind = "";
-        double dir = 0;
-        double spd0 = 0;
-        double spd1 = 0;
-        
-        boolean windset = false;
-        
-        // parse time, temp, altitude setting 
-        String tokens[] = metar.split(" ");
-        
-        try {
-            for(int i = 0; i < tokens.length; i++) {
-                if(tokens[i].equals("RMK")) {
-                    break;
-                }
-                if(tokens[i].matches(".*KT")) {
-                    wind = tokens[i];
-                    // first 3 digits are direction true, or VRB.
-                    String tmp = wind.substring(0, 3);
-                    if(tmp.equals("VRB")) {
-                        // variable, almost calm
-                        tmp = "000";
-                    }
-                    dir = Double.parseDouble(tmp);
-                    // next 2 digits are speed
-                    spd0 = Double.parseDouble(wind.substring(3, 5));
-                    // could be gusting
-                    if(wind.contains("G")) {
-                        // gusting to
-                        spd1 = Double.parseDouble(wind.substring(6, 8));
-                    }
-                    windset = true;
-                    continue;
-                }
-            }
-        }
-        catch (Exception e) {
-        }
+        double dir = metar.windDirection;
+        double spd0 = metar.windSpeed;
+        double spd1 = metar.windGust;
         
         double head1 = 0;
         double head0 = 0;
         double cross1 = 0;
         double cross0 = 0;
         
-        if(windset) {
-            /*
-             * Find best wind aligned runway
-             */
-            double maxW = -1E10;
-            String best = "";
-            for(String s : runways) {
-                String run[] = s.split(",");
-                try {
-                    double rhead = Double.parseDouble(run[1]);
-                    // find cross and head wind components
-                    // aviation formulary
-                    head0 = spd0 * Math.cos(Math.toRadians(dir - rhead));
-                    if(head0 > maxW) {
-                        // find runway with max headwind component
-                        maxW = head0;
-                        cross0 = spd0 * Math.sin(Math.toRadians(dir - rhead));
-                        if(spd1 != 0) {
-                            head1 = spd1 * Math.cos(Math.toRadians(dir - rhead));
-                            cross1 = spd1 * Math.sin(Math.toRadians(dir - rhead));
-                        }
-                        best = run[0];
-                        best += "\n " + Math.abs((int)head0);
-                        if(spd1 != 0) {
-                            best += "G" + Math.abs((int)head1);
-                        }
-                        // T = tail, H = head, L = left, R = right
-                        best += (head0 < 0 ? "T KT" : "H KT");
-                        best += "\n " + Math.abs((int)cross0);
-                        if(spd1 != 0) {
-                            best += "G" + Math.abs((int)cross1);
-                        }
-                        
-                        best += (cross0 < 0 ? "LX KT" : "RX KT");
+        /*
+         * Find best wind aligned runway
+         */
+        double maxW = -1E10;
+        String best = "";
+        for(String s : runways) {
+            String run[] = s.split(",");
+            try {
+                double rhead = Double.parseDouble(run[1]);
+                // find cross and head wind components
+                // aviation formulary
+                head0 = spd0 * Math.cos(Math.toRadians(dir - rhead));
+                if(head0 > maxW) {
+                    // find runway with max headwind component
+                    maxW = head0;
+                    cross0 = spd0 * Math.sin(Math.toRadians(dir - rhead));
+                    if(spd1 != 0) {
+                        head1 = spd1 * Math.cos(Math.toRadians(dir - rhead));
+                        cross1 = spd1 * Math.sin(Math.toRadians(dir - rhead));
                     }
+                    best = run[0];
+                    best += "\n " + Math.abs((int)head0);
+                    if(spd1 != 0) {
+                        best += "G" + Math.abs((int)head1);
+                    }
+                    // T = tail, H = head, L = left, R = right
+                    best += (head0 < 0 ? "T KT" : "H KT");
+                    best += "\n " + Math.abs((int)cross0);
+                    if(spd1 != 0) {
+                        best += "G" + Math.abs((int)cross1);
+                    }
+                    
+                    best += (cross0 < 0 ? "LX KT" : "RX KT");
                 }
-                catch (Exception e) {
-                    return "";
-                }
-                
             }
-            return best;
+            catch (Exception e) {
+                return "";
+            }
+            
         }
-
-        return "";
+        return best;
     }
 
 }
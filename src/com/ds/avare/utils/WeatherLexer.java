@@ -0,0 +1,386 @@
+/*
+Copyright (c) 2012, Apps4Av Inc. (apps4av.com) 
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+    *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+    *
+    *     THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.ds.avare.utils;
+
+/**
+ * 
+ * @author zkhan
+ * Splits a METAR or TAF in groups in one pass, and tells what each group is.
+ * Reuse one lexer with reset() to avoid making new ones.
+ */
+public class WeatherLexer {
+
+    public static final int OTHER = 0;
+    public static final int WIND = 1;
+    public static final int VISIBILITY = 2;
+    public static final int WEATHER = 3;
+    public static final int CLOUD = 4;
+    public static final int TEMPERATURE = 5;
+    public static final int ALTIMETER = 6;
+    public static final int CHANGE = 7;
+    public static final int REMARK = 8;
+    
+    /*
+     * Two letter weather codes, descriptors, precipitation, obstruction, other
+     */
+    private static final String CODES = "MIBCDRBLSHTSFZPR" + "DZRASNSGICPLGRGSUP" + "BRFGFUDUSAHZPYVA" + "POSQFCSSDS";
+    
+    private String mText;
+    private int mLength;
+    private int mPos;
+    private int mStart;
+    private int mEnd;
+    private int mType;
+    private boolean mNewLine;
+    private boolean mRemarks;
+    
+    /**
+     * 
+     */
+    public WeatherLexer() {
+        reset("");
+    }
+
+    /**
+     * 
+     * @param text
+     */
+    public WeatherLexer(String text) {
+        reset(text);
+    }
+    
+    /**
+     * Start on a new report
+     * @param text
+     */
+    public void reset(String text) {
+        mText = text;
+        mLength = text.length();
+        mPos = 0;
+        mStart = 0;
+        mEnd = 0;
+        mType = OTHER;
+        mNewLine = false;
+        mRemarks = false;
+    }
+    
+    /**
+     * Move to next group
+     * @return false at end of report
+     */
+    public boolean next() {
+        mNewLine = false;
+        while(mPos < mLength && isSpace(mText.charAt(mPos))) {
+            if(mText.charAt(mPos) == '\n') {
+                mNewLine = true;
+            }
+            mPos++;
+        }
+        if(mPos >= mLength) {
+            return false;
+        }
+        mStart = mPos;
+        while(mPos < mLength && !isSpace(mText.charAt(mPos))) {
+            mPos++;
+        }
+        mEnd = mPos;
+        
+        if(mRemarks) {
+            mType = REMARK;
+            return true;
+        }
+        if(is(mStart, mEnd, "RMK")) {
+            /*
+             * All after this is remarks
+             */
+            mRemarks = true;
+            mType = REMARK;
+            return true;
+        }
+        
+        mType = classify(mStart, mEnd);
+        if(OTHER == mType && (mEnd - mStart) == 1 && isDigits(mStart, mEnd)) {
+            /*
+             * Visibility like 1 1/2SM is two groups, make it one
+             */
+            int pos = mPos;
+            while(pos < mLength && mText.charAt(pos) == ' ') {
+                pos++;
+            }
+            int start = pos;
+            while(pos < mLength && !isSpace(mText.charAt(pos))) {
+                pos++;
+            }
+            int slash = mText.indexOf('/', start);
+            if(slash >= 0 && slash < pos && VISIBILITY == classify(start, pos)) {
+                mEnd = pos;
+                mPos = pos;
+                mType = VISIBILITY;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * 
+     * @return type of group
+     */
+    public int getType() {
+        return mType;
+    }
+
+    /**
+     * 
+     * @return group
+     */
+    public String getText() {
+        return mText.substring(mStart, mEnd);
+    }
+
+    /**
+     * 
+     * @return start of group in report
+     */
+    public int getStart() {
+        return mStart;
+    }
+
+    /**
+     * 
+     * @return end of group in report
+     */
+    public int getEnd() {
+        return mEnd;
+    }
+
+    /**
+     * 
+     * @return true if group is first on a line
+     */
+    public boolean isNewLine() {
+        return mNewLine;
+    }
+    
+    /**
+     * 
+     * @param c
+     * @return
+     */
+    private static boolean isSpace(char c) {
+        return c == ' ' || c == '\n' || c == '\r' || c == '\t';
+    }
+
+    /**
+     * 
+     * @param start
+     * @param end
+     * @param s
+     * @return true if text from start to end is s
+     */
+    private boolean is(int start, int end, String s) {
+        return (end - start) == s.length() && mText.startsWith(s, start);
+    }
+
+    /**
+     * 
+     * @param start
+     * @param end
+     * @return true if all digits, and at least one
+     */
+    private boolean isDigits(int start, int end) {
+        if(start >= end) {
+            return false;
+        }
+        for(int i = start; i < end; i++) {
+            char c = mText.charAt(i);
+            if(c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * 
+     * @param start
+     * @param end
+     * @return digits from start, at most till end
+     */
+    private int countDigits(int start, int end) {
+        int i = start;
+        while(i < end && mText.charAt(i) >= '0' && mText.charAt(i) <= '9') {
+            i++;
+        }
+        return i - start;
+    }
+    
+    /**
+     * 
+     * @param text
+     * @param at
+     * @return true if two letters at position are a weather code
+     */
+    public static boolean isWeatherCode(String text, int at) {
+        for(int i = 0; i < CODES.length(); i += 2) {
+            if(CODES.charAt(i) == text.charAt(at) && CODES.charAt(i + 1) == text.charAt(at + 1)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * 
+     * @param start
+     * @param end
+     * @return type
+     */
+    private int classify(int start, int end) {
+        int len = end - start;
+        
+        /*
+         * Wind like 18010KT, VRB03KT, 27015G25KT
+         */
+        int unit = -1;
+        if(mText.startsWith("KT", end - 2)) {
+            unit = end - 2;
+        }
+        else if(mText.startsWith("MPS", end - 3)) {
+            unit = end - 3;
+        }
+        if(unit > start + 3 && (isDigits(start, start + 3) || mText.startsWith("VRB", start))) {
+            int p = start + 3;
+            int n = countDigits(p, unit);
+            if(n >= 2 && n <= 3) {
+                p += n;
+                if(p < unit && mText.charAt(p) == 'G') {
+                    n = countDigits(p + 1, unit);
+                    p += (n >= 2 && n <= 3) ? n + 1 : 0;
+                }
+                if(p == unit) {
+                    return WIND;
+                }
+            }
+        }
+        
+        /*
+         * Visibility like 10SM, P6SM, 1/2SM, M1/4SM, or 9999 for international
+         */
+        if(len > 2 && mText.startsWith("SM", end - 2)) {
+            int p = start;
+            if(mText.charAt(p) == 'P' || mText.charAt(p) == 'M') {
+                p++;
+            }
+            int n = countDigits(p, end - 2);
+            if(n > 0) {
+                p += n;
+                if(p < end - 2 && mText.charAt(p) == '/') {
+                    n = countDigits(p + 1, end - 2);
+                    p += n > 0 ? n + 1 : 0;
+                }
+                if(p == end - 2) {
+                    return VISIBILITY;
+                }
+            }
+        }
+        if(is(start, end, "9999")) {
+            return VISIBILITY;
+        }
+        
+        /*
+         * Clouds like SKC, BKN030, OVC010CB, VV002
+         */
+        int p = -1;
+        if(len >= 3 && (mText.startsWith("SKC", start) || mText.startsWith("CLR", start) || mText.startsWith("NSC", start) ||
+                mText.startsWith("FEW", start) || mText.startsWith("SCT", start) || mText.startsWith("BKN", start) ||
+                mText.startsWith("OVC", start))) {
+            p = start + 3;
+        }
+        else if(len > 2 && mText.startsWith("VV", start)) {
+            p = start + 2;
+        }
+        if(p >= 0) {
+            if(countDigits(p, end) == 3 || mText.startsWith("///", p)) {
+                p += 3;
+            }
+            if(mText.startsWith("CB", p)) {
+                p += 2;
+            }
+            else if(mText.startsWith("TCU", p)) {
+                p += 3;
+            }
+            if(p == end) {
+                return CLOUD;
+            }
+        }
+        
+        /*
+         * Temperature and dew point like 15/M02, M05/
+         */
+        p = start;
+        if(p < end && mText.charAt(p) == 'M') {
+            p++;
+        }
+        if(countDigits(p, end) == 2 && p + 2 < end && mText.charAt(p + 2) == '/') {
+            p += 3;
+            if(p < end && mText.charAt(p) == 'M') {
+                p++;
+            }
+            if(p == end || (countDigits(p, end) == 2 && p + 2 == end)) {
+                return TEMPERATURE;
+            }
+        }
+        
+        /*
+         * Altimeter like A2992, Q1013, QNH2992INS
+         */
+        if(len == 5 && (mText.charAt(start) == 'A' || mText.charAt(start) == 'Q') && isDigits(start + 1, end)) {
+            return ALTIMETER;
+        }
+        if(len == 10 && mText.startsWith("QNH", start) && isDigits(start + 3, start + 7) && mText.startsWith("INS", start + 7)) {
+            return ALTIMETER;
+        }
+        
+        /*
+         * Change like FM181200, BECMG, TEMPO, PROB30
+         */
+        if((len > 2 && mText.startsWith("FM", start) && isDigits(start + 2, end)) ||
+                is(start, end, "BECMG") || is(start, end, "TEMPO") ||
+                (len == 6 && mText.startsWith("PROB", start) && isDigits(start + 4, end))) {
+            return CHANGE;
+        }
+        
+        /*
+         * Weather like -SHRA, +TSRA, VCSH, BR
+         */
+        p = start;
+        if(mText.charAt(p) == '+' || mText.charAt(p) == '-') {
+            p++;
+        }
+        else if(len > 2 && mText.startsWith("VC", p)) {
+            p += 2;
+        }
+        if(p < end && ((end - p) % 2) == 0) {
+            for(; p < end; p += 2) {
+                if(!isWeatherCode(mText, p)) {
+                    break;
+                }
+            }
+            if(p == end) {
+                return WEATHER;
+            }
+        }
+        
+        return OTHER;
+    }
+}
@@ -13,13 +13,13 @@ package com.ds.avare.weather;
 
 import java.sql.Date;
 import java.text.SimpleDateFormat;
-import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.Locale;
+import java.util.PriorityQueue;
 import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
 
 import android.content.Context;
-import android.util.SparseArray;
 
 import com.ds.avare.adsb.NexradBitmap;
 import com.ds.avare.adsb.NexradImage;
@@ -31,6 +31,7 @@ import com.ds.avare.storage.Preferences;
 /**
  * 
  * This is where all ADSB weather is collected.
+ * Written from ADSB ingest, read from UI and background tasks. Writes are synchronized, reads take no lock.
  * @author zkhan
  *
  */
@@ -38,10 +39,40 @@ public class AdsbWeatherCache {
 
     private static final long EXPIRY_PERIOD = 1000L * 60L * 60L;
     
-    private HashMap<String, Taf> mTaf;
-    private HashMap<String, Metar> mMetar;
-    private HashMap<String, Airep> mAirep;
-    private HashMap<String, WindsAloft> mWinds;
+    private static final int KIND_TAF = 0;
+    private static final int KIND_METAR = 1;
+    private static final int KIND_AIREP = 2;
+    private static final int KIND_WINDS = 3;
+    
+    /**
+     * When a report expires, soonest first in queue
+     * @author zkhan
+     *
+     */
+    private static class Expiry implements Comparable<Expiry> {
+        long time;
+        int kind;
+        String key;
+        Object item;
+        
+        Expiry(long time, int kind, String key, Object item) {
+            this.time = time;
+            this.kind = kind;
+            this.key = key;
+            this.item = item;
+        }
+
+        @Override
+        public int compareTo(Expiry another) {
+            return time < another.time ? -1 : (time == another.time ? 0 : 1);
+        }
+    }
+    
+    private ConcurrentHashMap<String, Taf> mTaf;
+    private ConcurrentHashMap<String, Metar> mMetar;
+    private WeatherGrid<Airep> mAirep;
+    private WeatherGrid<WindsAloft> mWinds;
+    private PriorityQueue<Expiry> mExpiry;
     private NexradImage mNexrad;
     private NexradImageConus mNexradConus;
     private Preferences mPref;
@@ -51,10 +82,11 @@ public class AdsbWeatherCache {
      */
     public AdsbWeatherCache(Context context) {
         mPref = new Preferences(context);
-        mTaf = new HashMap<String, Taf>();
-        mMetar = new HashMap<String, Metar>();
-        mAirep = new HashMap<String, Airep>();
-        mWinds = new HashMap<String, WindsAloft>();
+        mTaf = new ConcurrentHashMap<String, Taf>();
+        mMetar = new ConcurrentHashMap<String, Metar>();
+        mAirep = new WeatherGrid<Airep>();
+        mWinds = new WeatherGrid<WindsAloft>();
+        mExpiry = new PriorityQueue<Expiry>();
         mNexrad = new NexradImage();
         mNexradConus = new NexradImageConus();
     }
@@ -94,8 +126,12 @@ public class AdsbWeatherCache {
         sdf.setTimeZone(TimeZone.getTimeZone("gmt"));
         m.time = sdf.format(dt) + "Z";
         m.flightCategory = "Unknown";
+        m.parse();
         m.timestamp = System.currentTimeMillis();
-        mMetar.put(location, m);
+        synchronized(this) {
+            mMetar.put(location, m);
+            mExpiry.add(new Expiry(m.timestamp + EXPIRY_PERIOD, KIND_METAR, location, m));
+        }
     }
 
     /**
@@ -116,7 +152,10 @@ public class AdsbWeatherCache {
         sdf.setTimeZone(TimeZone.getTimeZone("gmt"));
         f.time = sdf.format(dt) + "Z";
         f.timestamp = System.currentTimeMillis();
-        mTaf.put(location, f);        
+        synchronized(this) {
+            mTaf.put(location, f);
+            mExpiry.add(new Expiry(f.timestamp + EXPIRY_PERIOD, KIND_TAF, location, f));
+        }
     }
     
     /**
@@ -126,16 +165,28 @@ public class AdsbWeatherCache {
      * @param data
      */
     public void putAirep(long time, String location, String data, DataSource db) {
+        putAirep(location, makeAirep(time, location, data, db));
+    }
+
+    /**
+     * Make a PIREP, this looks up the database hence do not call from UI thread
+     * @param time
+     * @param location
+     * @param data
+     * @param db
+     * @return null if not found
+     */
+    public Airep makeAirep(long time, String location, String data, DataSource db) {
         if(!mPref.useAdsbWeather()) {
-            return;
+            return null;
         }    
         String lonlat = db.findLonLat(location, Destination.BASE);
         if(null == lonlat) {
-            return;
+            return null;
         }
         String tokens[] = lonlat.split(",");
         if(tokens.length != 2) {
-            return;
+            return null;
         }
         
         Airep a = new Airep();
@@ -148,8 +199,22 @@ public class AdsbWeatherCache {
         sdf.setTimeZone(TimeZone.getTimeZone("gmt"));
         a.time = sdf.format(dt) + "Z";
         a.timestamp = System.currentTimeMillis();
-        
-        mAirep.put(location, a);
+        return a;
+    }
+    
+    /**
+     * 
+     * @param location
+     * @param a from makeAirep
+     */
+    public void putAirep(String location, Airep a) {
+        if(null == a) {
+            return;
+        }
+        synchronized(this) {
+            mAirep.put(location, a.lon, a.lat, a);
+            mExpiry.add(new Expiry(a.timestamp + EXPIRY_PERIOD, KIND_AIREP, location, a));
+        }
     }
     
     /**
@@ -197,28 +262,63 @@ public class AdsbWeatherCache {
         w.lon = coords[0];
         w.lat = coords[1];
         w.timestamp = System.currentTimeMillis();
-        mWinds.put(location, w);
+        synchronized(this) {
+            mWinds.put(location, w.lon, w.lat, w);
+            mExpiry.add(new Expiry(w.timestamp + EXPIRY_PERIOD, KIND_WINDS, location, w));
+        }
     }
     
     /**
-     * 
+     * Make a block away from UI thread, put it with putImg()
      * @param time
      * @param block
-     * @param empty
      * @param isConus
      * @param data
      * @param cols
      * @param rows
+     * @return null if ADSB weather is not used
+     */
+    public NexradBitmap makeImg(long time, int block, boolean isConus, int data[], int cols, int rows) {
+        if(!mPref.useAdsbWeather()) {
+            return null;
+        }
+        if(isConus) {
+            return mNexradConus.makeImg(time, block, isConus, data, cols, rows);
+        }
+        return mNexrad.makeImg(time, block, isConus, data, cols, rows);
+    }
+
+    /**
+     * Give back a block made with makeImg() that will not be put
+     * @param isConus
+     * @param b
+     */
+    public void discardImg(boolean isConus, NexradBitmap b) {
+        if(isConus) {
+            mNexradConus.discardImg(b);
+        }
+        else {
+            mNexrad.discardImg(b);
+        }
+    }
+
+    /**
+     * Put a block made with makeImg(), on UI thread
+     * @param time
+     * @param block
+     * @param empty
+     * @param isConus
+     * @param b
      */
-    public void putImg(long time, int block, int empty[], boolean isConus, int data[], int cols, int rows) {
+    public void putImg(long time, int block, int empty[], boolean isConus, NexradBitmap b) {
         if(!mPref.useAdsbWeather()) {
             return;
         }
         if(isConus) {
-            mNexradConus.putImg(time, block, empty, isConus, data, cols, rows);            
+            mNexradConus.putImg(time, block, empty, b);
         }
         else {
-            mNexrad.putImg(time, block, empty, isConus, data, cols, rows);            
+            mNexrad.putImg(time, block, empty, b);
         }
     }
 
@@ -249,25 +349,17 @@ public class AdsbWeatherCache {
      */
     public LinkedList<Airep> getAireps(double lon, double lat) {
         
+        LinkedList<Airep> found = new LinkedList<Airep>();
         LinkedList<Airep> ret = new LinkedList<Airep>();
         
         /*
-         * Find closest aireps
+         * Find closest aireps, same box as in database helper
          */
-        for(Airep a : mAirep.values()) {
-            
-            /*
-             * Same formula as in database helper
-             */
-            if(
-                    (a.lat > (lat - Airep.RADIUS)) && (a.lat < (lat + Airep.RADIUS)) &&
-                    (a.lon > (lon - Airep.RADIUS)) && (a.lon < (lon + Airep.RADIUS))) {
-                Airep n = new Airep(a);
-                ret.add(n);
-            }
-            
+        mAirep.find(lon, lat, Airep.RADIUS, found);
+        for(Airep a : found) {
+            Airep n = new Airep(a);
+            ret.add(n);
         }
-
         
         return ret;
     }
@@ -280,24 +372,10 @@ public class AdsbWeatherCache {
      */
     public WindsAloft getWindsAloft(double lon, double lat) {
         
-        WindsAloft toret = null;
-        double oldDistance = 1E10;
-        
         /*
          * Find closest wind
          */
-        for(WindsAloft w : mWinds.values()) {
-            float mlon = w.lon;
-            float mlat = w.lat;
-            /*
-             * Distance less? use this one
-             */
-            double dis = (mlon - lon) * (mlon - lon) + (mlat - lat) * (mlat - lat);
-            if(oldDistance > dis) {
-                oldDistance = dis;
-                toret = w;
-            } 
-        }
+        WindsAloft toret = mWinds.findClosest(lon, lat);
 
         /*
          * Copy it because we change the title
@@ -313,89 +391,39 @@ public class AdsbWeatherCache {
     /*
      * ALL ADSB weather should be kaput after 1 hour / timeout of timestamp 
      */
-    public void sweep() {
+    public synchronized void sweep() {
         long now = System.currentTimeMillis();
 
         /*
-         * Go at them one by one
-         * LinkedList saves against concurrent modification exception
-         */
-        LinkedList<String> keys;
-        
-        /*
-         * Winds
-         */
-        keys = new LinkedList<String>();
-        for (String key : mWinds.keySet()) {
-            WindsAloft w = mWinds.get(key);
-            long diff = (now - w.timestamp) - (EXPIRY_PERIOD);
-            if(diff > 0) {
-                keys.add(key);
-            }
-        }
-        for(String key : keys) {
-            mWinds.remove(key);
-        }
-        
-        /*
-         * Taf
-         */
-        keys = new LinkedList<String>();
-        for (String key : mTaf.keySet()) {
-            Taf f = mTaf.get(key);
-            long diff = (now - f.timestamp) - (EXPIRY_PERIOD);
-            if(diff > 0) {
-                keys.add(key);
-            }
-        }
-        for(String key : keys) {
-            mTaf.remove(key);
-        }
-        
-        /*
-         * Metar
-         */
-        keys = new LinkedList<String>();
-        for (String key : mMetar.keySet()) {
-            Metar m = mMetar.get(key);
-            long diff = (now - m.timestamp) - (EXPIRY_PERIOD);
-            if(diff > 0) {
-                keys.add(key);
-            }
-        }
-        for(String key : keys) {
-            mMetar.remove(key);
-        }
-
-        /*
-         * Airep
+         * Only look at reports that have expired, soonest first.
+         * A report replaced since it was queued is left alone.
          */
-        keys = new LinkedList<String>();
-        for (String key : mAirep.keySet()) {
-            Airep a = mAirep.get(key);
-            long diff = (now - a.timestamp) - (EXPIRY_PERIOD);
-            if(diff > 0) {
-                keys.add(key);
+        while(!mExpiry.isEmpty() && mExpiry.peek().time < now) {
+            Expiry e = mExpiry.poll();
+            switch(e.kind) {
+                case KIND_TAF:
+                    if(mTaf.get(e.key) == e.item) {
+                        mTaf.remove(e.key);
+                    }
+                    break;
+                case KIND_METAR:
+                    if(mMetar.get(e.key) == e.item) {
+                        mMetar.remove(e.key);
+                    }
+                    break;
+                case KIND_AIREP:
+                    mAirep.remove(e.key, (Airep)e.item);
+                    break;
+                case KIND_WINDS:
+                    mWinds.remove(e.key, (WindsAloft)e.item);
+                    break;
             }
         }
-        for(String key : keys) {
-            mAirep.remove(key);
-        }
         
         /*
          * Nexrad
          */
-        LinkedList<Integer>keyi = new LinkedList<Integer>();
-        SparseArray<NexradBitmap> img = mNexrad.getImages();
-        for(int i = 0; i < img.size(); i++) {
-            NexradBitmap n = img.valueAt(i);
-            long diff = (now - n.timestamp) - (EXPIRY_PERIOD);
-            if(diff > 0) {
-                keyi.add(img.keyAt(i));
-            }
-        }
-        for(Integer key : keyi) {
-            img.remove(key);
-        }
+        mNexrad.removeOld(now, EXPIRY_PERIOD);
+        mNexradConus.removeOld(now, EXPIRY_PERIOD);
     }
 }
@@ -73,13 +73,12 @@ public class InternetWeatherCache {
                 /*
                  * Create a list of air/sigmets
                  */
-                mAirSig = mService.getDBResource().getAirSigMets();
+                LinkedList<AirSigMet> airsig = mService.getDBResource().getAirSigMets();
                 
                 /*
                  * Convert AIRMET/SIGMETS to shapes compatible coordinates
                  */
-                for(int i = 0; i < mAirSig.size(); i++) {
-                    AirSigMet asm = mAirSig.get(i);
+                for(AirSigMet asm : airsig) {
                     /*
                      * Discard none intensity
                      */
@@ -104,6 +103,11 @@ public class InternetWeatherCache {
                     }
                     asm.shape.makePolygon();
                 }
+                
+                /*
+                 * Show when all shapes are made
+                 */
+                mAirSig = airsig;
             }
             catch(Exception e) {
             }
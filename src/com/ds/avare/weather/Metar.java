@@ -12,6 +12,8 @@ Redistribution and use in source and binary forms, with or without modification,
 package com.ds.avare.weather;
 
 
+import com.ds.avare.utils.WeatherLexer;
+
 /**
  * 
  * @author zkhan
@@ -24,4 +26,174 @@ public class Metar {
     public String flightCategory;
     
     public long timestamp;
+    
+    /*
+     * Parsed from rawText once by parse(), so users only read fields
+     */
+    public String observationTime;
+    public boolean windSet;
+    public int windDirection;   // degrees true, 0 if variable
+    public int windSpeed;       // knots
+    public int windGust;        // knots, 0 if not gusting
+    public float visibility;    // statute miles, -1 if not known
+    public int ceiling;         // feet above ground, -1 if none
+    public boolean temperatureSet;
+    public int temperature;     // Celsius
+    public int dewPoint;        // Celsius
+    public float altimeter;     // inches of mercury, 0 if not known
+    
+    /**
+     * Parse raw text in fields, and find flight category if not known
+     */
+    public void parse() {
+        observationTime = "";
+        windSet = false;
+        windDirection = 0;
+        windSpeed = 0;
+        windGust = 0;
+        visibility = -1;
+        ceiling = -1;
+        temperatureSet = false;
+        temperature = 0;
+        dewPoint = 0;
+        altimeter = 0;
+        if(null == rawText) {
+            return;
+        }
+        
+        WeatherLexer lexer = new WeatherLexer(rawText);
+        int group = 0;
+        /*
+         * Cannot crash if transmission has a bug
+         */
+        try {
+            while(lexer.next()) {
+                String token = lexer.getText();
+                if(1 == group++) {
+                    observationTime = token;
+                }
+                int type = lexer.getType();
+                if(WeatherLexer.REMARK == type) {
+                    break;
+                }
+                else if(WeatherLexer.WIND == type && !windSet) {
+                    windDirection = token.startsWith("VRB") ? 0 : Integer.parseInt(token.substring(0, 3));
+                    int end = token.indexOf('G');
+                    if(end < 0) {
+                        end = token.endsWith("KT") ? token.length() - 2 : token.length() - 3;
+                    }
+                    else {
+                        windGust = Integer.parseInt(token.substring(end + 1, token.length() - (token.endsWith("KT") ? 2 : 3)));
+                    }
+                    windSpeed = Integer.parseInt(token.substring(3, end));
+                    if(!token.endsWith("KT")) {
+                        /*
+                         * Meters per second
+                         */
+                        windSpeed = Math.round(windSpeed * 1.944f);
+                        windGust = Math.round(windGust * 1.944f);
+                    }
+                    windSet = true;
+                }
+                else if(WeatherLexer.VISIBILITY == type && visibility < 0) {
+                    visibility = parseVisibility(token);
+                }
+                else if(WeatherLexer.CLOUD == type && ceiling < 0 && 
+                        (token.startsWith("BKN") || token.startsWith("OVC") || token.startsWith("VV"))) {
+                    int start = token.startsWith("VV") ? 2 : 3;
+                    if(token.length() >= start + 3 && Character.isDigit(token.charAt(start))) {
+                        ceiling = Integer.parseInt(token.substring(start, start + 3)) * 100;
+                    }
+                }
+                else if(WeatherLexer.TEMPERATURE == type && !temperatureSet) {
+                    String t[] = token.split("/");
+                    temperature = parseTemperature(t[0]);
+                    dewPoint = t.length > 1 ? parseTemperature(t[1]) : temperature;
+                    temperatureSet = true;
+                }
+                else if(WeatherLexer.ALTIMETER == type && altimeter == 0) {
+                    if(token.startsWith("A")) {
+                        altimeter = Integer.parseInt(token.substring(1)) / 100f;
+                    }
+                    else if(token.startsWith("Q") && !token.startsWith("QNH")) {
+                        /*
+                         * Hectopascal
+                         */
+                        altimeter = Integer.parseInt(token.substring(1)) * 0.02953f;
+                    }
+                }
+            }
+        }
+        catch (Exception e) {
+        }
+        
+        if(null == flightCategory || flightCategory.equals("Unknown")) {
+            flightCategory = getCategory();
+        }
+    }
+    
+    /**
+     * 
+     * @param t like M05
+     * @return
+     */
+    private static int parseTemperature(String t) {
+        if(t.startsWith("M")) {
+            return -Integer.parseInt(t.substring(1));
+        }
+        return Integer.parseInt(t);
+    }
+    
+    /**
+     * 
+     * @param vis like 1 1/2SM, P6SM, M1/4SM, 9999
+     * @return statute miles
+     */
+    private static float parseVisibility(String vis) {
+        if(vis.equals("9999")) {
+            /*
+             * 10 km or more
+             */
+            return 6.2f;
+        }
+        vis = vis.substring(0, vis.length() - 2);
+        if(vis.startsWith("P") || vis.startsWith("M")) {
+            vis = vis.substring(1);
+        }
+        float miles = 0;
+        String parts[] = vis.split(" ");
+        for(int i = 0; i < parts.length; i++) {
+            int slash = parts[i].indexOf('/');
+            if(slash < 0) {
+                miles += Integer.parseInt(parts[i]);
+            }
+            else {
+                miles += (float)Integer.parseInt(parts[i].substring(0, slash)) / 
+                        (float)Integer.parseInt(parts[i].substring(slash + 1));
+            }
+        }
+        return miles;
+    }
+    
+    /**
+     * Flight category from ceiling and visibility
+     * @return
+     */
+    private String getCategory() {
+        if(visibility < 0 && ceiling < 0) {
+            return "Unknown";
+        }
+        int ceil = ceiling < 0 ? Integer.MAX_VALUE : ceiling;
+        float vis = visibility < 0 ? Float.MAX_VALUE : visibility;
+        if(ceil < 500 || vis < 1) {
+            return "LIFR";
+        }
+        if(ceil < 1000 || vis < 3) {
+            return "IFR";
+        }
+        if(ceil <= 3000 || vis <= 5) {
+            return "MVFR";
+        }
+        return "VFR";
+    }
 }
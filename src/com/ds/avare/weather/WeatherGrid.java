@@ -0,0 +1,234 @@
+/*
+Copyright (c) 2012, Apps4Av Inc. (apps4av.com) 
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+    *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+    *
+    *     THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.ds.avare.weather;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 
+ * @author zkhan
+ * Weather reports by station, also indexed on a lon/lat grid.
+ * Writers are serialized by the caller, readers need no lock.
+ */
+public class WeatherGrid<T> {
+
+    /*
+     * Grid cell size in degrees
+     */
+    private static final float CELL = 5;
+    private static final int CELLS_LON = (int)(360 / CELL);
+    private static final int CELLS_LAT = (int)(180 / CELL);
+    
+    /**
+     * 
+     * @author zkhan
+     *
+     */
+    private static class Entry<T> {
+        T item;
+        float lon;
+        float lat;
+        int cell;
+    }
+    
+    private ConcurrentHashMap<String, Entry<T>> mEntries;
+    private ConcurrentHashMap<Integer, CopyOnWriteArrayList<Entry<T>>> mCells;
+    
+    /**
+     * 
+     */
+    public WeatherGrid() {
+        mEntries = new ConcurrentHashMap<String, Entry<T>>();
+        mCells = new ConcurrentHashMap<Integer, CopyOnWriteArrayList<Entry<T>>>();
+    }
+
+    /**
+     * 
+     * @param x
+     * @param y
+     * @return
+     */
+    private static int getCell(int x, int y) {
+        return y * CELLS_LON + x;
+    }
+
+    /**
+     * 
+     * @param lon
+     * @return
+     */
+    private static int getX(double lon) {
+        return Math.max(0, Math.min(CELLS_LON - 1, (int)Math.floor((lon + 180) / CELL)));
+    }
+
+    /**
+     * 
+     * @param lat
+     * @return
+     */
+    private static int getY(double lat) {
+        return Math.max(0, Math.min(CELLS_LAT - 1, (int)Math.floor((lat + 90) / CELL)));
+    }
+    
+    /**
+     * Add or replace report of a station
+     * @param key
+     * @param lon
+     * @param lat
+     * @param item
+     */
+    public void put(String key, float lon, float lat, T item) {
+        remove(key);
+        Entry<T> e = new Entry<T>();
+        e.item = item;
+        e.lon = lon;
+        e.lat = lat;
+        e.cell = getCell(getX(lon), getY(lat));
+        CopyOnWriteArrayList<Entry<T>> list = mCells.get(e.cell);
+        if(null == list) {
+            list = new CopyOnWriteArrayList<Entry<T>>();
+            mCells.put(e.cell, list);
+        }
+        list.add(e);
+        mEntries.put(key, e);
+    }
+    
+    /**
+     * 
+     * @param key
+     */
+    public void remove(String key) {
+        Entry<T> e = mEntries.remove(key);
+        if(null == e) {
+            return;
+        }
+        CopyOnWriteArrayList<Entry<T>> list = mCells.get(e.cell);
+        if(null != list) {
+            list.remove(e);
+        }
+    }
+
+    /**
+     * Remove only if not replaced since
+     * @param key
+     * @param item
+     */
+    public void remove(String key, T item) {
+        if(get(key) == item) {
+            remove(key);
+        }
+    }
+
+    /**
+     * 
+     * @param key
+     * @return
+     */
+    public T get(String key) {
+        Entry<T> e = mEntries.get(key);
+        if(null == e) {
+            return null;
+        }
+        return e.item;
+    }
+    
+    /**
+     * Reports in a box around a point
+     * @param lon
+     * @param lat
+     * @param radius half side of box in degrees
+     * @param out
+     */
+    public void find(double lon, double lat, double radius, List<T> out) {
+        int x0 = getX(lon - radius);
+        int x1 = getX(lon + radius);
+        int y0 = getY(lat - radius);
+        int y1 = getY(lat + radius);
+        for(int y = y0; y <= y1; y++) {
+            for(int x = x0; x <= x1; x++) {
+                CopyOnWriteArrayList<Entry<T>> list = mCells.get(getCell(x, y));
+                if(null == list) {
+                    continue;
+                }
+                for(Entry<T> e : list) {
+                    if(
+                            (e.lat > (lat - radius)) && (e.lat < (lat + radius)) &&
+                            (e.lon > (lon - radius)) && (e.lon < (lon + radius))) {
+                        out.add(e.item);
+                    }
+                }
+            }
+        }
+    }
+    
+    /**
+     * Closest report to a point, searching rings of cells outwards
+     * @param lon
+     * @param lat
+     * @return null if none
+     */
+    public T findClosest(double lon, double lat) {
+        if(mEntries.isEmpty()) {
+            return null;
+        }
+        int cx = getX(lon);
+        int cy = getY(lat);
+        Entry<T> closest = null;
+        double oldDistance = 1E10;
+        for(int ring = 0; ring < CELLS_LON; ring++) {
+            for(int y = cy - ring; y <= cy + ring; y++) {
+                if(y < 0 || y >= CELLS_LAT) {
+                    continue;
+                }
+                for(int x = cx - ring; x <= cx + ring; x++) {
+                    if(x < 0 || x >= CELLS_LON) {
+                        continue;
+                    }
+                    if(Math.abs(x - cx) != ring && Math.abs(y - cy) != ring) {
+                        /*
+                         * Inside, done in an earlier ring
+                         */
+                        continue;
+                    }
+                    CopyOnWriteArrayList<Entry<T>> list = mCells.get(getCell(x, y));
+                    if(null == list) {
+                        continue;
+                    }
+                    for(Entry<T> e : list) {
+                        /*
+                         * Distance less? use this one
+                         */
+                        double dis = (e.lon - lon) * (e.lon - lon) + (e.lat - lat) * (e.lat - lat);
+                        if(oldDistance > dis) {
+                            oldDistance = dis;
+                            closest = e;
+                        }
+                    }
+                }
+            }
+            /*
+             * Anything in next ring is at least this far
+             */
+            double edge = ring * CELL;
+            if(null != closest && oldDistance <= edge * edge) {
+                break;
+            }
+        }
+        if(null == closest) {
+            return null;
+        }
+        return closest.item;
+    }
+}